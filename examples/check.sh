@@ -0,0 +1,193 @@
+#!/usr/bin/env bash
+# Runs the example programs, and checks they still do exactly what they did when their expected output was written.
+#
+# For each example.he, example.out is what "-v i -i" prints after the code, minus the line about slots and the lines of
+# any Java stack trace, since those depend on what the optimiser did. Every example also gets run with each set of
+# flags in FLAGS, none of which should change what a program does. A first line of "//skip: -flag ..." leaves those
+# flags out for that example, and a first line of "//error" means it only gets run the once, since it's there for its
+# error message.
+# If there's an example.tokens, then the tokens ("-v t") have to match it too, and if there's an example.tree, then so
+# does the parse tree ("-v p"), before it gets checked or optimised. That gets built with each of TREE_FLAGS as well.
+#
+# Every example that isn't an error gets lowered to IR ("-v ir") with and without optimising, which the verifier has to
+# pass, and if there's an example.ir, then that has to match it.
+#
+# -cache gets run in a copy of the example in a new folder, once to fill the cache and then again to read from it, with
+# the tree checked from the cache too.
+#
+# Each folder is an example for -watch, with numbered files: 0.he gets watched, then the rest get saved over it in turn.
+# Everything it prints from then on has to match the folder's expected.out.
+#
+# Usage: examples/check.sh [classes], where classes is the compiled output folder (IntelliJ's by default)
+
+cd "$(dirname "$0")" || exit 1
+
+CLASSES=$(realpath "${1:-../out/production/Compiler}")
+JAVA=${JAVA:-java}
+
+FLAGS=(
+    -stream
+    -shuntingyard
+    -parallel
+    -lazy
+    "-lazy -checkall"
+    -share
+    -pipeline
+    -nocheck
+    -noopt
+    -inline=0
+    -inline=100
+)
+
+#The flags which change how the parse tree gets built, rather than what happens to it after.
+#Not -lazy, since that prints each body as it gets parsed in the middle of the tree
+TREE_FLAGS=(
+    -stream
+    -shuntingyard
+    -parallel
+    -share
+    -pipeline
+)
+
+failures=0
+
+#Always says there's more than one processor, since otherwise -pipeline would just turn itself back off
+helium() {
+    "$JAVA" -Dstdout.encoding=UTF-8 -XX:ActiveProcessorCount=4 --enable-preview -cp "$CLASSES" adsen.helium.Helium "$@" 2>&1
+}
+
+run() {
+    local file=$1
+    shift
+    helium "$file" -v i -i "$@" | sed -n '/^End of File$/,$p' | grep -v -e '^Resolved ' -e $'^\tat '
+}
+
+tokens() {
+    helium "$1" -v t -np | sed -n '/^Tokens (/,/^$/p'
+}
+
+tree() {
+    local file=$1
+    shift
+    helium "$file" -v p -nocheck -noopt "$@" | sed -n '/^program.functions =$/,$p' | grep -v '^Shared [0-9]* out of '
+}
+
+ir() {
+    local file=$1
+    shift
+    helium "$file" -v ir "$@" | sed -n '/^IR:$/,$p'
+}
+
+#Compares some output with what's expected, printing the difference if there is one
+expect() {
+    local name=$1 expected=$2 actual=$3
+
+    if [ "$actual" != "$(cat "$expected")" ]; then
+        echo "FAILED: $name"
+        diff <(echo "$actual") "$expected" | head -20
+        failures=$((failures + 1))
+    fi
+}
+
+for file in *.he; do
+    name=${file%.he}
+    header=$(head -n 1 "$file")
+
+    expect "$file" "$name.out" "$(run "$file")"
+
+    if [ -f "$name.tokens" ]; then
+        expect "$file (tokens)" "$name.tokens" "$(tokens "$file")"
+    fi
+
+    if [ -f "$name.tree" ]; then
+        expect "$file (tree)" "$name.tree" "$(tree "$file")"
+
+        for flags in "${TREE_FLAGS[@]}"; do
+            # shellcheck disable=SC2086
+            expect "$file (tree) $flags" "$name.tree" "$(tree "$file" $flags)"
+        done
+    fi
+
+    if [ "$header" != "//error" ]; then
+        for flags in "" -noopt; do
+            # shellcheck disable=SC2086
+            if helium "$file" -v ir $flags | grep -q -e 'to invalid IR' -e '^Exception in thread'; then
+                echo "FAILED: $file didn't lower to valid IR $flags"
+                failures=$((failures + 1))
+            fi
+        done
+
+        if [ -f "$name.ir" ]; then
+            expect "$file (ir)" "$name.ir" "$(ir "$file")"
+        fi
+
+        cached=$(mktemp -d)
+        cp "$file" "$cached"
+
+        #From inside the folder, since the file type comes from the first '.' in the whole path
+        expect "$file -cache (cold)" "$name.out" "$(cd "$cached" && run "$file" -cache)"
+        expect "$file -cache (warm)" "$name.out" "$(cd "$cached" && run "$file" -cache)"
+        if ! (cd "$cached" && helium "$file" -v t -cache | grep -q '^Program was cached'); then
+            echo "FAILED: $file -cache (warm) didn't read from the cache"
+            failures=$((failures + 1))
+        fi
+        if [ -f "$name.tree" ]; then
+            expect "$file (tree) -cache" "$name.tree" "$(cd "$cached" && tree "$file" -cache)"
+        fi
+
+        rm -r "$cached"
+    fi
+
+    [ "$header" = "//error" ] && continue
+
+    for flags in "${FLAGS[@]}"; do
+        [[ $header == //skip:* && " ${header#//skip:} " == *" $flags "* ]] && continue
+
+        # shellcheck disable=SC2086
+        expect "$file $flags" "$name.out" "$(run "$file" $flags)"
+    done
+done
+
+#Waits until the watched program has printed that it's watching for the given number of times, or stopped
+waitForWatching() {
+    local pid=$1 output=$2 times=$3
+
+    for _ in $(seq 300); do
+        [ "$(grep -c '^Watching ' "$output")" -ge "$times" ] && return 0
+        kill -0 "$pid" 2>/dev/null || return 1
+        sleep 0.1
+    done
+    return 1
+}
+
+for folder in */; do
+    name=${folder%/}
+    watched=$(mktemp -d)
+    cp "$folder/0.he" "$watched/main.he"
+
+    (cd "$watched" && exec "$JAVA" -Dstdout.encoding=UTF-8 --enable-preview -cp "$CLASSES" adsen.helium.Helium main.he -v i -i -watch > output 2>&1) &
+    pid=$!
+
+    times=1
+    waitForWatching $pid "$watched/output" $times
+    for edit in $(find "$folder" -name '[1-9]*.he' | sort -V); do
+        #Renamed into place, so it never gets read half written
+        cp "$edit" "$watched/next"
+        mv "$watched/next" "$watched/main.he"
+
+        times=$((times + 1))
+        waitForWatching $pid "$watched/output" $times || break
+    done
+
+    kill $pid 2>/dev/null
+    wait $pid 2>/dev/null
+
+    expect "$name (-watch)" "$folder/expected.out" "$(sed -n '/^End of File$/,$p' "$watched/output" | grep -v '^Resolved ')"
+    rm -r "$watched"
+done
+
+if [ $failures -gt 0 ]; then
+    echo "$failures checks failed"
+    exit 1
+fi
+echo "All examples passed"
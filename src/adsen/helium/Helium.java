@@ -1,28 +1,61 @@
 package adsen.helium;
 
+import adsen.helium.analysis.TypeChecker;
 import adsen.helium.error.ExpressionError;
 import adsen.helium.exec.imports.FileType;
 import adsen.helium.exec.interpreter.ImportInterpreter;
+import adsen.helium.ir.IrBuilder;
+import adsen.helium.ir.IrFunction;
+import adsen.helium.ir.IrVerifier;
+import adsen.helium.optimiser.ConstantFolder;
+import adsen.helium.optimiser.DeadCodeEliminator;
+import adsen.helium.optimiser.Inliner;
+import adsen.helium.optimiser.LoopInvariantHoister;
+import adsen.helium.optimiser.TailCallEliminator;
+import adsen.helium.parser.CompilationDatabase;
+import adsen.helium.parser.FrontEndPipeline;
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.ParallelParser;
 import adsen.helium.parser.Parser;
+import adsen.helium.parser.ProgramCache;
 import adsen.helium.parser.HeliumProgram;
+import adsen.helium.parser.expr.NodeFactory;
 import adsen.helium.parser.expr.primitives.IntPrimitive;
 import adsen.helium.parser.expr.primitives.NodePrimitive;
 import adsen.helium.exec.interpreter.Interpreter;
 import adsen.helium.parser.statement.HeliumStatement;
-import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.HeliumSource;
+import adsen.helium.tokeniser.SymbolTable;
+import adsen.helium.tokeniser.TokenBuffer;
+import adsen.helium.tokeniser.TokenSource;
+import adsen.helium.tokeniser.TokenStream;
 import adsen.helium.tokeniser.Tokeniser;
 
 import java.io.IOException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 @SuppressWarnings({"FieldCanBeLocal", "SpellCheckingInspection"})
 public class Helium {
+    /**
+     * Version of the compiler. Needs to change whenever the parser changes what it makes out of a file, so that programs
+     * cached by an older version don't get used
+     */
+    public static final String VERSION = "0.1.0";
+
     public static RuntimeException throwError(String message) {
         return new RuntimeException(message);
     }
@@ -39,6 +72,39 @@ public class Helium {
      * Flag to compile
      */
     private static boolean COMPILE;
+    /**
+     * Flag to tokenise while parsing, instead of tokenising the whole file first. Uses much less memory for big files,
+     * but means that tokeniser errors come out as parser errors
+     */
+    private static boolean STREAM_TOKENS;
+    /**
+     * Flag to parse function bodies in parallel, once the whole file has been tokenised
+     */
+    private static boolean PARALLEL_PARSE;
+    /**
+     * Flag to load the parsed program from {@link ProgramCache#DIRECTORY} if it's there, and put it there otherwise
+     */
+    private static boolean USE_CACHE;
+    /**
+     * Flag to keep running after the first run, reading the main file again (through a {@link CompilationDatabase})
+     * whenever it changes
+     */
+    private static boolean WATCH;
+    /**
+     * Flag to tokenise, parse and check the program on separate threads at the same time, with a {@link FrontEndPipeline}.
+     * Turned back off if there's only one processor to run them on
+     */
+    private static boolean PIPELINE;
+    /**
+     * Flag to check types with a {@link TypeChecker} before running, so the interpreter doesn't have to. On unless
+     * {@code -nocheck} is given, or function bodies are parsed lazily, since that would mean parsing them all anyways
+     */
+    private static boolean TYPE_CHECK = true;
+    /**
+     * Flag to run optimisation passes over the program before running it. On unless {@code -noopt} is given, or function
+     * bodies are parsed lazily
+     */
+    private static boolean OPTIMISE = true;
 
     /**
      * Flags for verbose messages
@@ -71,6 +137,7 @@ public class Helium {
                         case "p", "parser" -> VERBOSE_FLAGS.add("parser");
                         case "i", "interpreter" -> VERBOSE_FLAGS.add("interpreter");
                         case "g", "generator" -> VERBOSE_FLAGS.add("generator");
+                        case "ir" -> VERBOSE_FLAGS.add("ir");
                     }
                 }
             }
@@ -83,79 +150,183 @@ public class Helium {
             PARSE_PROGRAM = !(compilerArgs.contains("-noparse") || compilerArgs.contains("-np"));
             INTERPRET = compilerArgs.contains("-interpret") || compilerArgs.contains("-i");
             COMPILE = compilerArgs.contains("-compile") || compilerArgs.contains("-c");
+            STREAM_TOKENS = compilerArgs.contains("-stream");
+            PARALLEL_PARSE = compilerArgs.contains("-parallel");
+            USE_CACHE = compilerArgs.contains("-cache");
+            WATCH = compilerArgs.contains("-watch");
+            PIPELINE = compilerArgs.contains("-pipeline");
+            //-checkall is there to catch every syntax error up front, even if -lazy is on
+            Parser.LAZY = compilerArgs.contains("-lazy") && !compilerArgs.contains("-checkall");
+            Parser.SHUNTING_YARD = compilerArgs.contains("-shuntingyard");
+            NodeFactory.SHARE = compilerArgs.contains("-share");
+            TYPE_CHECK = !compilerArgs.contains("-nocheck") && !Parser.LAZY;
+            OPTIMISE = !compilerArgs.contains("-noopt") && !Parser.LAZY;
+
+            for (String arg : compilerArgs) {
+                if (!arg.startsWith("-inline=")) continue;
+
+                try {
+                    Inliner.BUDGET = Integer.parseInt(arg.substring("-inline=".length()));
+                } catch (NumberFormatException e) {
+                    throw throwError("Invalid inlining budget in " + arg);
+                }
+            }
         }
         if (INTERPRET && COMPILE)
             throw throwError("Invalid flags, cannot compile and interpret at the same time");
+        if (STREAM_TOKENS && PARALLEL_PARSE)
+            throw throwError("Invalid flags, cannot stream tokens and parse in parallel at the same time");
+        if (STREAM_TOKENS && Parser.LAZY)
+            throw throwError("Invalid flags, cannot stream tokens and parse lazily at the same time");
+        if (WATCH && STREAM_TOKENS)
+            throw throwError("Invalid flags, cannot watch and stream tokens at the same time");
+        if (WATCH && USE_CACHE)
+            throw throwError("Invalid flags, cannot watch and use the cache at the same time");
+        if (WATCH && !PARSE_PROGRAM)
+            throw throwError("Invalid flags, cannot watch without parsing");
+        if (PIPELINE && (STREAM_TOKENS || PARALLEL_PARSE || WATCH))
+            throw throwError("Invalid flags, cannot use the pipeline and stream tokens, parse in parallel or watch at the same time");
 
 
         if (!VERBOSE_FLAGS.isEmpty()) //If we have any verbose messages at all, then print out the file name
             System.out.println("Reading from file: " + fileName);
 
-        String input;
+        //With only one core the stages just take turns on it, which is slower than running them one after another
+        if (PIPELINE && Runtime.getRuntime().availableProcessors() == 1) {
+            PIPELINE = false;
+
+            if (VERBOSE_FLAGS.contains("parser"))
+                System.out.println("Only one processor available, so not using the pipeline");
+        }
+
+        HeliumSource input;
+        ProgramCache cache = null;
 
         try {
             Path mainPath = Paths.get(fileName);
 
-            input = Files.readString(mainPath);
+            //The file is going to change under us if we're watching it, so it can't be mapped
+            input = WATCH ? HeliumSource.read(mainPath) : HeliumSource.map(mainPath);
 
             Parser.ROOT_DIRECTORY = mainPath.getParent();
 
+            if (USE_CACHE)
+                cache = new ProgramCache(mainPath.toAbsolutePath().getParent().resolve(ProgramCache.DIRECTORY));
+
         } catch (IOException e) {
             throw throwError("Could not read from file " + fileName + " due to: " + e.getMessage());
         }
 
         if (!VERBOSE_FLAGS.isEmpty()) { //If we have any verbose messages at all, then print out the code
             System.out.println(fileName + ":");
-            System.out.println(input + "\nEnd of File\n");
+            System.out.println(input.asString() + "\nEnd of File\n");
+        }
+
+        //This definitely won't stay here in the future
+        //Maybe I'll add a flag to check whether we're importing for interpreting or not? idk
+        Parser.IMPORT_HANDLER = new ImportInterpreter();
+
+        //Only set here if it came from the cache, otherwise it gets made by the parser further down
+        HeliumProgram program = null;
+        CompilationDatabase database = WATCH ? new CompilationDatabase() : null;
+
+        if (cache != null && PARSE_PROGRAM) {
+            try {
+                program = cache.load(input);
+            } catch (ExpressionError expressionError) {
+                //Not using throwError here, since it's the programmer's fault, not compiler's fault
+                System.out.println("\nError in parsing:");
+                System.out.println(expressionError.getMessage());
+                System.exit(-1);
+                return;
+            }
         }
 
         if (VERBOSE_FLAGS.contains("tokeniser"))
             System.out.println("Initialising Tokeniser");
 
-        Tokeniser tokeniser = new Tokeniser(input);
+        //Shared by every stage of this compilation, so names get the same id everywhere
+        SymbolTable symbols = new SymbolTable();
 
-        try {
-            tokeniser.tokenise();
-        } catch (ExpressionError expressionError) {
-            //Not using throwError here, since it's the programmer's fault, not compiler's fault
-            System.out.println("Error in tokenisation:");
-            System.out.println(expressionError.getMessage());
-            System.exit(-1);
-            return;
-        }
+        TokenSource tokens;
+
+        if (program != null) {
+            tokens = null;
+
+            if (VERBOSE_FLAGS.contains("tokeniser"))
+                System.out.println("Program was cached, so there's nothing to tokenise\n");
+
+        } else if (PIPELINE && PARSE_PROGRAM) {
+            //Tokenised alongside the parser further down
+            tokens = null;
+
+            if (VERBOSE_FLAGS.contains("tokeniser"))
+                System.out.println("Tokenising in a pipeline with the parser\n");
+
+        } else if (STREAM_TOKENS) {
+            //Tokens get made as the parser reads them, so there's nothing to do or print here
+            tokens = new TokenStream(input, symbols);
+
+            if (VERBOSE_FLAGS.contains("tokeniser"))
+                System.out.println("Streaming tokens into the parser\n");
 
-        if (VERBOSE_FLAGS.contains("tokeniser")) {
-            System.out.println("Tokens (" + tokeniser.tokens().size() + "):");
-            for (Token token : tokeniser.tokens()) {
-                System.out.println(token);
+        } else {
+            Tokeniser tokeniser = new Tokeniser(input, symbols);
+
+            try {
+                tokeniser.tokenise();
+            } catch (ExpressionError expressionError) {
+                //Not using throwError here, since it's the programmer's fault, not compiler's fault
+                System.out.println("Error in tokenisation:");
+                System.out.println(expressionError.getMessage());
+                exitOrWatch(Paths.get(fileName), symbols, database);
+                return;
             }
-            System.out.println(); //Extra newline for separation
-        }
 
-        if (PARSE_PROGRAM) {
+            TokenBuffer buffer = tokeniser.tokens();
+            tokens = buffer;
 
-            //This definitely won't stay here in the future
-            //Maybe I'll add a flag to check whether we're importing for interpreting or not? idk
-            Parser.IMPORT_HANDLER = new ImportInterpreter();
+            if (VERBOSE_FLAGS.contains("tokeniser")) {
+                System.out.println("Tokens (" + buffer.size() + "):");
+                for (int i = 0; i < buffer.size(); i++) {
+                    System.out.println(buffer.token(i));
+                }
+                System.out.println(); //Extra newline for separation
+            }
+        }
 
-            HeliumProgram program = new HeliumProgram();
+        if (PARSE_PROGRAM && program == null) {
+            program = new HeliumProgram(symbols);
 
             if (VERBOSE_FLAGS.contains("parser"))
                 System.out.println("Initialising program Parser");
 
-            Parser parser = new Parser(program, tokeniser);
-
+            FrontEndPipeline pipeline = PIPELINE ? new FrontEndPipeline(program, input) : null;
+            //Flattening functions for the cache can happen while the rest are still being parsed
+            if (pipeline != null && cache != null) pipeline.addStage(HeliumFunction::arena);
 
             try {
-                parser.parse();
+                if (pipeline != null)
+                    pipeline.run();
+                else if (WATCH)
+                    database.update(program, tokens);
+                else if (PARALLEL_PARSE && !Parser.LAZY) //Nothing to do in parallel when bodies get skipped
+                    new ParallelParser(program, tokens).parse();
+                else
+                    new Parser(program, tokens).parse();
             } catch (ExpressionError expressionError) {
                 //Not using throwError here, since it's the programmer's fault, not compiler's fault
-                System.out.println("\nError in parsing:");
+                System.out.println(pipeline != null && pipeline.tokeniserFailed() ? "Error in tokenisation:" : "\nError in parsing:");
                 System.out.println(expressionError.getMessage());
-                System.exit(-1);
+                exitOrWatch(Paths.get(fileName), symbols, database);
                 return;
             }
 
+            if (cache != null) cache.store(input, program);
+        }
+
+        if (PARSE_PROGRAM) {
+
             if (VERBOSE_FLAGS.contains("parser")) {
                 System.out.println("\nprogram.functions =");
                 program.getFunctions().forEach(f -> {
@@ -165,30 +336,182 @@ public class Helium {
                     System.out.println(f.asString() + " (size: " + fakeSize + " -> " + realSize + ")");
                     f.getBody().forEach(s -> System.out.println("    " + s.asString()));
                 });
+
+                //After printing, since that's what makes lazy and cached bodies get built
+                if (NodeFactory.SHARE) System.out.println("\n" + program.nodes.stats());
             }
 
+            boolean typeChecked = !TYPE_CHECK || typeCheck(program, program.getFunctions());
+            //Before optimising, since that changes what the calls in a function are
+            if (WATCH && TYPE_CHECK && typeChecked) database.markChecked();
+            if (OPTIMISE && typeChecked) optimise(program);
+            if (VERBOSE_FLAGS.contains("ir") && typeChecked) printIr(program);
+
             //Run interpreter
-            if (INTERPRET) {
-                Interpreter interpreter = new Interpreter(program);
-                NodePrimitive exitValue;
+            if (INTERPRET && typeChecked) interpret(program);
+
+            if (WATCH)
+                watch(Paths.get(fileName), symbols, database);
+            else if (!typeChecked)
+                System.exit(-1);
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * Stops after the first version of the file failed to read, unless it's being watched, in which case it carries on
+     * watching with nothing in the database, the same as when a later version fails
+     */
+    private static void exitOrWatch(Path mainPath, SymbolTable symbols, CompilationDatabase database) {
+        if (WATCH) {
+            watch(mainPath, symbols, database);
+            System.exit(0);
+        }
+        System.exit(-1);
+    }
+
+    /**
+     * Type checks the given functions of the program, printing the error if there is one
+     *
+     * @return Whether they were all fine
+     */
+    private static boolean typeCheck(HeliumProgram program, Collection<HeliumFunction> functions) {
+        try {
+            new TypeChecker(program).check(functions);
+            return true;
+        } catch (ExpressionError expressionError) {
+            //Not using throwError here, since it's the programmer's fault, not compiler's fault
+            System.out.println("\nError in type checking:");
+            System.out.println(expressionError.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Runs the optimisation passes over the whole program
+     */
+    private static void optimise(HeliumProgram program) {
+        new Inliner(program).run();
+        new TailCallEliminator(program).run();
+        new ConstantFolder(program).run();
+        new DeadCodeEliminator(program).run();
+        new LoopInvariantHoister(program).run();
+    }
+
+    /**
+     * Lowers every function into the SSA IR, checks it with the {@link IrVerifier} and prints it out. Nothing runs off
+     * the IR yet, so this only happens when it's asked for
+     */
+    private static void printIr(HeliumProgram program) {
+        if (!program.isTypeChecked()) {
+            System.out.println("\nCan't lower to IR without type checking");
+            return;
+        }
+
+        List<HeliumFunction> functions = new ArrayList<>(program.getFunctions());
+        functions.sort(Comparator.comparingInt(f -> f.token.pos));
+
+        IrBuilder builder = new IrBuilder();
+        System.out.println("\nIR:");
+
+        for (HeliumFunction function : functions) {
+            IrFunction ir = builder.lower(function);
+
+            List<String> problems = new IrVerifier(ir).verify();
+            if (!problems.isEmpty())
+                throw throwError("Lowered function '" + function.name + "' to invalid IR:\n" + String.join("\n", problems) + "\n" + ir.asString());
+
+            System.out.println(ir.asString());
+        }
+    }
+
+    private static void interpret(HeliumProgram program) {
+        Interpreter interpreter = new Interpreter(program);
+        NodePrimitive exitValue;
+
+        try {
+            exitValue = interpreter.run();
+        } catch (ExpressionError error) {
+            System.out.println(error.getMessage());
+            exitValue = IntPrimitive.of(-1);
+        }
+
+        if (VERBOSE_FLAGS.contains("interpreter")) {
+            System.out.println("\nProgram variables:");
+            interpreter.variables().forEach((s, np) -> System.out.println(s + ": " + np.asString()));
+        }
+
+        System.out.println("\nProgram finished with exit value " + exitValue.asString());
+    }
+
+    /**
+     * Waits for the main file to change, then reads it again through the {@link CompilationDatabase} (so only the
+     * functions that changed get parsed) and runs it again if it's being interpreted. Only stops when it gets killed.
+     * Errors don't stop it either, since the whole point is that they can be fixed while it's running
+     */
+    private static void watch(Path mainPath, SymbolTable symbols, CompilationDatabase database) {
+        Path fileName = mainPath.getFileName();
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            mainPath.toAbsolutePath().getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            byte[] lastHash = HeliumSource.read(mainPath).sha256();
+
+            while (true) {
+                System.out.println("\nWatching " + mainPath + " for changes");
+
+                HeliumSource input;
+
+                //Saving a file tends to set off a few events, so this waits for it to actually be different from last time
+                while (true) {
+                    WatchKey key = watcher.take();
+                    boolean changed = key.pollEvents().stream().anyMatch(event -> fileName.equals(event.context()));
+                    key.reset();
+
+                    if (!changed || !Files.exists(mainPath)) continue;
+
+                    input = HeliumSource.read(mainPath);
+                    if (!Arrays.equals(input.sha256(), lastHash)) break;
+                }
+                lastHash = input.sha256();
+
+                long start = System.nanoTime();
+
+                HeliumProgram program = new HeliumProgram(symbols);
+                Parser.IMPORT_HANDLER = new ImportInterpreter(); //Otherwise the imports would pile up
 
                 try {
-                    exitValue = interpreter.run();
-                } catch (ExpressionError error) {
-                    System.out.println(error.getMessage());
-                    exitValue = IntPrimitive.of(-1);
+                    Tokeniser tokeniser = new Tokeniser(input, symbols);
+                    tokeniser.tokenise();
+                    database.update(program, tokeniser.tokens());
+                } catch (ExpressionError expressionError) {
+                    System.out.println("\nError in parsing:");
+                    System.out.println(expressionError.getMessage());
+                    continue;
                 }
 
-                if (VERBOSE_FLAGS.contains("interpreter")) {
-                    System.out.println("\nProgram variables:");
-                    interpreter.variables().forEach((s, np) -> System.out.println(s + ": " + np.asString()));
+                if (VERBOSE_FLAGS.contains("parser"))
+                    System.out.println("Read changes in " + (System.nanoTime() - start) / 1000000 + "ms");
+
+                if (TYPE_CHECK) {
+                    //Functions which didn't change, and don't call anything that did, can't have changed types either,
+                    //and the database has already bound their calls. If the last version didn't pass, they're all dirty
+                    Collection<HeliumFunction> toCheck = program.getFunctions().stream().filter(f -> database.dirty().contains(f.name)).toList();
+                    if (!typeCheck(program, toCheck)) continue;
+                    database.markChecked();
                 }
 
-                System.out.println("\nProgram finished with exit value " + exitValue.asString());
+                if (OPTIMISE) optimise(program);
+                if (VERBOSE_FLAGS.contains("ir")) printIr(program);
+
+                if (INTERPRET) interpret(program);
             }
 
+        } catch (IOException e) {
+            throw throwError("Could not watch file " + mainPath + " due to: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-
-        System.exit(0);
     }
 }
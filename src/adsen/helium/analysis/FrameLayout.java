@@ -0,0 +1,51 @@
+package adsen.helium.analysis;
+
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.tokeniser.SymbolTable;
+import adsen.helium.tokeniser.Token;
+
+import java.util.Map;
+
+/**
+ * Where each variable lives in the frame of the function it's in, as worked out by a {@link SlotResolver}.
+ * <p>
+ * A variable's slot only depends on its name (its {@link SymbolTable} id), not on the function it's in, so finding it is
+ * one array load, and it works even for identifiers which are shared between functions by the
+ * {@link adsen.helium.parser.expr.NodeFactory}. Two names only get the same slot if they never show up in the same
+ * function.
+ */
+public class FrameLayout {
+    /**
+     * Slot of each symbol, or {@link SymbolTable#NONE} if it's never used as a variable
+     */
+    private final int[] slots;
+
+    /**
+     * Name of the variable in each slot of a function's frame, which is {@code null} for slots it doesn't use
+     */
+    private final Map<HeliumFunction, String[]> frames;
+
+    FrameLayout(int[] slots, Map<HeliumFunction, String[]> frames) {
+        this.slots = slots;
+        this.frames = frames;
+    }
+
+    public int slot(NodeIdentifier identifier) {
+        return slots[identifier.symbol];
+    }
+
+    /**
+     * Slot of an argument, from the name token in the function's signature
+     */
+    public int slot(Token nameToken) {
+        return slots[nameToken.symbol];
+    }
+
+    /**
+     * Names of the variables in each slot of a function's frame, so the length of this is how big the frame needs to be
+     */
+    public String[] frame(HeliumFunction function) {
+        return frames.get(function);
+    }
+}
@@ -0,0 +1,65 @@
+package adsen.helium.analysis;
+
+import adsen.helium.error.ExpressionError;
+import adsen.helium.parser.expr.primitives.BoolPrimitive;
+import adsen.helium.parser.expr.primitives.CharPrimitive;
+import adsen.helium.parser.expr.primitives.FloatPrimitive;
+import adsen.helium.parser.expr.primitives.IntPrimitive;
+import adsen.helium.parser.expr.primitives.NodePrimitive;
+import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.TokenType;
+
+/**
+ * The types a value can have, for checking them before the program runs instead of comparing type strings while it
+ * does. Will need to become more than an enum once classes are a thing
+ */
+public enum HeliumType {
+    INT(IntPrimitive.TYPE_STRING),
+    FLOAT(FloatPrimitive.TYPE_STRING),
+    CHAR(CharPrimitive.TYPE_STRING),
+    BOOL(BoolPrimitive.TYPE_STRING),
+    VOID("void");
+
+    /**
+     * What the type is called in code, which is also what {@link NodePrimitive#getTypeString()} gives
+     */
+    public final String typeName;
+
+    HeliumType(String typeName) {
+        this.typeName = typeName;
+    }
+
+    /**
+     * Can be used with arithmetic operators
+     */
+    public boolean isNumeric() {
+        return this == INT || this == FLOAT || this == CHAR;
+    }
+
+    public static HeliumType of(NodePrimitive value) {
+        return switch (value) {
+            case IntPrimitive _ -> INT;
+            case FloatPrimitive _ -> FLOAT;
+            case CharPrimitive _ -> CHAR;
+            case BoolPrimitive _ -> BOOL;
+        };
+    }
+
+    /**
+     * The type written as this token, like a function's return type or a static declaration's type
+     */
+    public static HeliumType of(Token typeToken) {
+        if (typeToken.type == TokenType.VOID) return VOID;
+
+        for (HeliumType type : values()) {
+            if (type != VOID && type.typeName.equals(typeToken.value())) return type;
+        }
+
+        throw new ExpressionError("Unknown type '" + typeToken.value() + "'", typeToken);
+    }
+
+    @Override
+    public String toString() {
+        return typeName;
+    }
+}
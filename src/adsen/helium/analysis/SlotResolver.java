@@ -0,0 +1,189 @@
+package adsen.helium.analysis;
+
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.HeliumProgram;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.AssignStatement;
+import adsen.helium.parser.statement.atomic.DeclareStatement;
+import adsen.helium.parser.statement.atomic.ExitStatement;
+import adsen.helium.parser.statement.atomic.FunctionCallStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.tokeniser.SymbolTable;
+import adsen.helium.tokeniser.Token;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+import static adsen.helium.exec.Scope.MAIN_FUNCTION;
+
+/**
+ * Gives every variable a slot in its function's frame, so the interpreter can keep variables in an array instead of
+ * looking them up by name.
+ * <p>
+ * Helium doesn't let a variable shadow another one, so within a function a name always means the same variable, even
+ * if it's declared in a few different scopes one after another. That means a slot per name per function is enough, and
+ * scopes don't need frames of their own, they just empty the slots of whatever they declared once they end.
+ * <p>
+ * Slots are given out by name across the whole program (see {@link FrameLayout}), like colouring a graph where two names
+ * are connected if they're used in the same function, so each name gets the lowest slot none of its neighbours have.
+ * Only functions which can be reached from {@code main} get looked at, so lazily parsed functions which never get called
+ * are left alone.
+ */
+public class SlotResolver {
+    private final HeliumProgram program;
+
+    /**
+     * Names of the variables in each function, by symbol
+     */
+    private final Map<HeliumFunction, Map<Integer, String>> variables = new IdentityHashMap<>();
+
+    public SlotResolver(HeliumProgram program) {
+        this.program = program;
+    }
+
+    public FrameLayout resolve() {
+        Map<String, List<HeliumFunction>> byName = new HashMap<>();
+        for (HeliumFunction f : program.getFunctions()) byName.computeIfAbsent(f.name, n -> new ArrayList<>()).add(f);
+
+        //Finding every function that could get called, and what each of them uses
+        Deque<HeliumFunction> toVisit = new ArrayDeque<>(byName.getOrDefault(MAIN_FUNCTION, List.of()));
+        List<HeliumFunction> reached = new ArrayList<>();
+        Set<String> calledNames = new HashSet<>(Set.of(MAIN_FUNCTION));
+
+        while (!toVisit.isEmpty()) {
+            HeliumFunction f = toVisit.pop();
+            reached.add(f);
+
+            Map<Integer, String> names = new LinkedHashMap<>();
+            Set<String> callees = new HashSet<>();
+
+            List<Token> signature = f.getSignature();
+            for (int i = 1; i < signature.size(); i += 2) names.put(signature.get(i).symbol, signature.get(i).value());
+            for (HeliumStatement statement : f.getBody()) collect(statement, names, callees);
+
+            variables.put(f, names);
+
+            for (String callee : callees) {
+                if (calledNames.add(callee)) toVisit.addAll(byName.getOrDefault(callee, List.of()));
+            }
+        }
+
+        //Names used in the same function can't share a slot
+        Map<Integer, Set<Integer>> neighbours = new LinkedHashMap<>();
+        for (HeliumFunction f : reached) {
+            Set<Integer> names = variables.get(f).keySet();
+            for (int name : names) neighbours.computeIfAbsent(name, n -> new HashSet<>()).addAll(names);
+        }
+
+        int[] slots = new int[program.symbols.size()];
+        Arrays.fill(slots, SymbolTable.NONE);
+
+        for (Map.Entry<Integer, Set<Integer>> entry : neighbours.entrySet()) {
+            BitSet taken = new BitSet();
+            for (int neighbour : entry.getValue()) {
+                if (slots[neighbour] != SymbolTable.NONE) taken.set(slots[neighbour]);
+            }
+            slots[entry.getKey()] = taken.nextClearBit(0);
+        }
+
+        Map<HeliumFunction, String[]> frames = new IdentityHashMap<>();
+        int biggest = 0;
+
+        for (HeliumFunction f : reached) {
+            Map<Integer, String> names = variables.get(f);
+
+            int size = 0;
+            for (int name : names.keySet()) size = Math.max(size, slots[name] + 1);
+
+            String[] frame = new String[size];
+            names.forEach((symbol, name) -> frame[slots[symbol]] = name);
+            frames.put(f, frame);
+
+            biggest = Math.max(biggest, size);
+        }
+
+        if (VERBOSE_FLAGS.contains("interpreter"))
+            System.out.println("Resolved " + neighbours.size() + " variable names in " + reached.size() + " functions to slots, biggest frame has " + biggest);
+
+        return new FrameLayout(slots, frames);
+    }
+
+    private void collect(HeliumStatement statement, Map<Integer, String> names, Set<String> callees) {
+        switch (statement) {
+            case DeclareStatement declare -> {
+                collect(declare.identifier(), names, callees);
+                collect(declare.expr(), names, callees);
+            }
+            case AssignStatement assign -> {
+                collect(assign.identifier(), names, callees);
+                //Increments don't have an expression
+                if (assign.expr() != null) collect(assign.expr(), names, callees);
+            }
+            case ScopeStatement scope -> {
+                for (HeliumStatement inner : scope.statements) collect(inner, names, callees);
+            }
+            case IfStatement ifStmt -> {
+                collect(ifStmt.getCondition(), names, callees);
+                collect(ifStmt.thenStatement(), names, callees);
+                if (ifStmt.hasElse()) collect(ifStmt.elseStatement(), names, callees);
+            }
+            case WhileStatement whileStmt -> {
+                collect(whileStmt.condition(), names, callees);
+                collect(whileStmt.statement(), names, callees);
+            }
+            case ForStatement forStmt -> {
+                collect(forStmt.getAssigner(), names, callees);
+                collect(forStmt.condition(), names, callees);
+                collect(forStmt.statement(), names, callees);
+                collect(forStmt.getIncrementer(), names, callees);
+            }
+            case FunctionCallStatement call -> {
+                callees.add(call.name.value());
+                for (NodeExpr arg : call.args) collect(arg, names, callees);
+            }
+            case ReturnStatement ret -> {
+                if (!ret.empty) collect(ret.expr(), names, callees);
+            }
+            case ExitStatement exit -> collect(exit.expr(), names, callees);
+            default -> {
+            }
+        }
+    }
+
+    private void collect(NodeExpr expr, Map<Integer, String> names, Set<String> callees) {
+        switch (expr) {
+            case NodeIdentifier identifier -> names.put(identifier.symbol, identifier.asString());
+            case UnaryOperator unOp -> collect(unOp.operand(), names, callees);
+            case BinaryOperator binOp -> {
+                collect(binOp.left(), names, callees);
+                collect(binOp.right(), names, callees);
+            }
+            case FuncCallExpr call -> {
+                callees.add(call.name);
+                for (NodeExpr arg : call.arguments) collect(arg, names, callees);
+            }
+            default -> {
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package adsen.helium.analysis;
+
+import adsen.helium.error.ExpressionError;
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.HeliumProgram;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.expr.primitives.NodePrimitive;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.AssignStatement;
+import adsen.helium.parser.statement.atomic.DeclareStatement;
+import adsen.helium.parser.statement.atomic.ExitStatement;
+import adsen.helium.parser.statement.atomic.FunctionCallStatement;
+import adsen.helium.parser.statement.atomic.IncrementStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.parser.statement.atomic.StaticDeclareStatement;
+import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.TokenType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+
+/**
+ * Works out the type of every variable and expression in a program before it runs, and throws an error for anything
+ * the {@link adsen.helium.exec.interpreter.Interpreter} would have thrown a type error for.
+ * <p>
+ * Variables are scoped the same way the interpreter scopes them: a scope can see everything in the scopes around it,
+ * and whatever it declares is gone once it ends. {@code let} variables get the type of whatever they're first given,
+ * and that's their type for good. Once every function has been checked, the program is marked as
+ * {@link HeliumProgram#isTypeChecked()}, and the interpreter stops checking types itself. Every call also gets bound to
+ * the function it goes to, since the types of its arguments are known, so the interpreter doesn't have to look it up.
+ * <p>
+ * This is stricter than the interpreter in a few places, since it checks code whether or not it would ever run:
+ * arguments have to match the types in a function's signature even if it isn't overloaded, {@code exit} has to give
+ * the function's return type like {@code return} does, and both sides of {@code &&} and {@code ||} have to be bools.
+ */
+public class TypeChecker {
+    private final HeliumProgram program;
+
+    /**
+     * Types of the variables in each scope, innermost first
+     */
+    private final Deque<Map<String, HeliumType>> scopes = new ArrayDeque<>();
+    private HeliumFunction function;
+    private HeliumType returnType;
+
+    public TypeChecker(HeliumProgram program) {
+        this.program = program;
+    }
+
+    /**
+     * Checks every function in the program
+     */
+    public void check() {
+        check(program.getFunctions());
+    }
+
+    /**
+     * Checks some of the functions in the program, in the order they're in the file. The program only counts as type
+     * checked if every function in it has been checked, either here or before
+     */
+    public void check(Collection<HeliumFunction> functions) {
+        List<HeliumFunction> ordered = new ArrayList<>(functions);
+        ordered.sort(Comparator.comparingInt(f -> f.token.pos));
+
+        for (HeliumFunction f : ordered) checkFunction(f);
+
+        program.setTypeChecked(true);
+
+        if (VERBOSE_FLAGS.contains("parser"))
+            System.out.println("\nType checked " + ordered.size() + " functions");
+    }
+
+    private void checkFunction(HeliumFunction f) {
+        function = f;
+        returnType = HeliumType.of(f.returnType);
+
+        scopes.clear();
+        scopes.push(new HashMap<>());
+
+        List<Token> signature = f.getSignature();
+        for (int i = 0; i < signature.size(); i += 2) {
+            declare(signature.get(i + 1), HeliumType.of(signature.get(i)));
+        }
+
+        for (HeliumStatement statement : f.getBody()) check(statement);
+    }
+
+    private void check(HeliumStatement statement) {
+        switch (statement) {
+            case StaticDeclareStatement declare -> {
+                //Same order the interpreter finds things out in, so the same error comes first
+                checkNotDeclared(declare.identifier());
+
+                HeliumType required = HeliumType.of(declare.valueType);
+                HeliumType provided = typeOf(declare.expr());
+
+                if (required != provided)
+                    throw new ExpressionError("Cannot assign '" + provided + "' to '" + required + "' type", declare.identifier().token);
+
+                declare(declare.identifier().token, required);
+            }
+            case DeclareStatement declare -> {
+                checkNotDeclared(declare.identifier());
+                declare(declare.identifier().token, typeOf(declare.expr()));
+            }
+            case IncrementStatement inc -> {
+                HeliumType type = variable(inc.identifier());
+
+                if (type != HeliumType.INT)
+                    throw new ExpressionError("Cannot increment '" + type + "', only '" + HeliumType.INT + "' type", inc.identifier().token);
+            }
+            case AssignStatement assign -> {
+                HeliumType required = variable(assign.identifier());
+                HeliumType provided = typeOf(assign.expr());
+
+                if (required != provided)
+                    throw new ExpressionError("Cannot assign '" + provided + "' to '" + required + "' type", assign.identifier().token);
+            }
+            case ScopeStatement scope -> {
+                scopes.push(new HashMap<>());
+                for (HeliumStatement inner : scope.statements) check(inner);
+                scopes.pop();
+            }
+            case IfStatement ifStmt -> {
+                expect(ifStmt.getCondition(), HeliumType.BOOL, ifStmt.token);
+                checkBranch(ifStmt.thenStatement());
+                if (ifStmt.hasElse()) checkBranch(ifStmt.elseStatement());
+            }
+            case WhileStatement whileStmt -> {
+                expect(whileStmt.condition(), HeliumType.BOOL, whileStmt.token);
+                checkBranch(whileStmt.statement());
+            }
+            case ForStatement forStmt -> {
+                //The loop variable is only there until the loop ends
+                scopes.push(new HashMap<>());
+                check(forStmt.getAssigner());
+                expect(forStmt.condition(), HeliumType.BOOL, forStmt.token);
+                checkBranch(forStmt.statement());
+                check(forStmt.getIncrementer());
+                scopes.pop();
+            }
+            case FunctionCallStatement call -> call.bind(resolve(call.name, call.args));
+            case ReturnStatement ret -> {
+                HeliumType provided = ret.empty ? HeliumType.VOID : typeOf(ret.expr());
+
+                if (provided != returnType)
+                    throw new ExpressionError("Expected '" + returnType + "' return type from function '" + function.name + "', got '" + provided + "' instead", ret.token);
+            }
+            case ExitStatement exit -> {
+                HeliumType provided = typeOf(exit.expr());
+
+                if (provided != returnType)
+                    throw new ExpressionError("Expected '" + returnType + "' return type from function '" + function.name + "', got '" + provided + "' instead", exit.token);
+            }
+            //Break and continue don't have anything to check, and anything else is an unhandled statement
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Checks the body of an if, while or for. If it isn't a scope, anything it declares still only lasts as long as it
+     */
+    private void checkBranch(HeliumStatement statement) {
+        if (statement instanceof ScopeStatement) {
+            check(statement);
+        } else {
+            scopes.push(new HashMap<>());
+            check(statement);
+            scopes.pop();
+        }
+    }
+
+    /**
+     * The type an expression gives when it's evaluated
+     */
+    public HeliumType typeOf(NodeExpr expr) {
+        return switch (expr) {
+            case NodePrimitive primitive -> HeliumType.of(primitive);
+            case NodeIdentifier identifier -> variable(identifier);
+
+            case UnaryOperator unOp -> switch (unOp.type()) {
+                case NOT -> {
+                    expect(unOp.operand(), HeliumType.BOOL, null);
+                    yield HeliumType.BOOL;
+                }
+                case INCREMENT, DECREMENT -> {
+                    expect(unOp.operand(), HeliumType.INT, null);
+                    yield HeliumType.INT;
+                }
+                case POSITIVE, NEGATIVE -> {
+                    HeliumType operand = typeOf(unOp.operand());
+
+                    if (!operand.isNumeric())
+                        throw new ExpressionError("Expected numeric value, not '" + operand + "'", tokenOf(unOp));
+
+                    yield operand;
+                }
+                default -> throw new ExpressionError("Don't know how we got here, unknown unary operator", tokenOf(unOp));
+            };
+
+            case BinaryOperator binOp -> {
+                HeliumType left = typeOf(binOp.left());
+                HeliumType right = typeOf(binOp.right());
+
+                boolean valid = switch (binOp.type()) {
+                    case SUM, DIFFERENCE, PRODUCT, QUOTIENT, REMAINDER, EXPONENT -> left == right && left.isNumeric();
+                    case EQUAL, DIFFERENT, LESS, GREATER, LESS_EQ, GREATER_EQ -> left == right && left != HeliumType.VOID;
+                    case AND, OR -> left == HeliumType.BOOL && right == HeliumType.BOOL;
+                    default -> throw new ExpressionError("Don't know how we got here, unknown binary operator", tokenOf(binOp));
+                };
+
+                if (!valid)
+                    throw new ExpressionError("Undefined '%s' operator for '%s' and '%s'".formatted(binOp.type().value, left, right), tokenOf(binOp));
+
+                yield switch (binOp.type()) {
+                    case SUM, DIFFERENCE, PRODUCT, QUOTIENT, REMAINDER, EXPONENT -> left;
+                    default -> HeliumType.BOOL;
+                };
+            }
+
+            case FuncCallExpr call -> {
+                HeliumFunction callee = resolve(call.token, call.arguments);
+                call.bind(callee);
+
+                if (callee.returnType.type == TokenType.VOID)
+                    throw new ExpressionError("Tried to use void function in an expression", call.token);
+
+                yield HeliumType.of(callee.returnType);
+            }
+
+            //The interpreter evaluates anything it doesn't know to 0
+            default -> HeliumType.INT;
+        };
+    }
+
+    /**
+     * Finds the function a call goes to, and checks that it's being given the right arguments. There can't be more than
+     * one, since overloads have to match exactly and no two of them can have the same signature
+     */
+    private HeliumFunction resolve(Token name, List<NodeExpr> arguments) {
+        List<String> typeSignature = new ArrayList<>(arguments.size());
+        for (NodeExpr argument : arguments) typeSignature.add(typeOf(argument).typeName);
+
+        HeliumFunction callee = program.resolveFunction(name, typeSignature);
+
+        if (callee.argumentCount != arguments.size())
+            throw new ExpressionError("Incorrect number of arguments, expected " + callee.argumentCount + ", found " + arguments.size(), name);
+
+        //Overloaded functions were found by their signature, so this can only fail for ones which aren't
+        List<Token> signature = callee.getSignature();
+        for (int i = 0; i < arguments.size(); i++) {
+            String required = signature.get(i * 2).value();
+
+            if (!required.equals(typeSignature.get(i)))
+                throw new ExpressionError("Expected '" + required + "' for argument '" + signature.get(i * 2 + 1).value() + "' of function '" + callee.name + "', got '" + typeSignature.get(i) + "' instead", name);
+        }
+
+        return callee;
+    }
+
+    private void expect(NodeExpr expr, HeliumType required, Token fallback) {
+        HeliumType provided = typeOf(expr);
+
+        if (provided != required) {
+            Token token = tokenOf(expr);
+            throw new ExpressionError("Expected " + required + " value, not '" + provided + "'", token == null ? fallback : token);
+        }
+    }
+
+    private HeliumType variable(NodeIdentifier identifier) {
+        for (Map<String, HeliumType> scope : scopes) {
+            HeliumType type = scope.get(identifier.asString());
+            if (type != null) return type;
+        }
+
+        throw new ExpressionError("Unknown variable '" + identifier.asString() + "'", identifier.token);
+    }
+
+    private void checkNotDeclared(NodeIdentifier identifier) {
+        for (Map<String, HeliumType> scope : scopes) {
+            if (scope.containsKey(identifier.asString()))
+                throw new ExpressionError("Variable '" + identifier.asString() + "' is already defined in the scope", identifier.token);
+        }
+    }
+
+    private void declare(Token name, HeliumType type) {
+        scopes.peek().put(name.value(), type);
+    }
+
+    /**
+     * A token somewhere in an expression to point error messages at, which is its leftmost value
+     */
+    private static Token tokenOf(NodeExpr expr) {
+        return switch (expr) {
+            case NodePrimitive primitive -> primitive.getToken();
+            case NodeIdentifier identifier -> identifier.token;
+            case FuncCallExpr call -> call.token;
+            case UnaryOperator unOp -> tokenOf(unOp.operand());
+            case BinaryOperator binOp -> tokenOf(binOp.left());
+            default -> null;
+        };
+    }
+}
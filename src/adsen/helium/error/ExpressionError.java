@@ -13,8 +13,8 @@ public class ExpressionError extends RuntimeException {
         super(message);
         if (token != null) { //Token should not be null generally, this is for special cases
             this.token = token;
-            this.linepos = token.linepos;
-            this.colpos = token.colpos;
+            this.linepos = token.linepos();
+            this.colpos = token.colpos();
         } else {
             this.token = new Token("<empty>", VOID);
             this.linepos = 0;
@@ -25,6 +25,6 @@ public class ExpressionError extends RuntimeException {
     //todo better error messages, for eg if token is a string then wrapping with " + value + ", etc.
     public String getMessage() {
         //Adding 1 to linepos and colpos since they start from 0
-        return "Error: %s\n  At %d:%d \n--> %s".formatted(super.getMessage(), linepos + 1, colpos + 1, token.value);
+        return "Error: %s\n  At %d:%d \n--> %s".formatted(super.getMessage(), linepos + 1, colpos + 1, token.value());
     }
 }
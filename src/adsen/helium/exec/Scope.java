@@ -1,14 +1,24 @@
 package adsen.helium.exec;
 
+import adsen.helium.analysis.FrameLayout;
 import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.expr.NodeIdentifier;
 import adsen.helium.parser.expr.primitives.NodePrimitive;
 import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.tokeniser.Token;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * The variables and loop state of a function call, or of a scope within one.
+ * <p>
+ * Variables are kept in a frame with a slot for each of them, as given by a {@link FrameLayout}. Scopes within a
+ * function share its frame, so changing a variable from an outer scope just changes it, and a scope only has to
+ * remember what it declared, so that it can be emptied out again once it ends.
+ */
 public class Scope {
     /**
      * Name of the main function in the program
@@ -18,16 +28,30 @@ public class Scope {
     //TODO I'm using this as the name of the current function, but that doesn't work in a scope within the function
     //So I'll have a separate variable for the scope's function name, which will change from function to function
     public final String name;
-    final Map<String, NodePrimitive> variables;
+    private final FrameLayout layout;
+    /**
+     * Values of the variables, {@code null} where the variable hasn't been declared (yet, or anymore)
+     */
+    private final NodePrimitive[] frame;
+    /**
+     * Name of the variable in each slot of {@link Scope#frame}
+     */
+    private final String[] slotNames;
+    /**
+     * Slots of variables declared in this scope, which go away at the end of it
+     */
+    private final List<Integer> declared = new ArrayList<>();
     private final List<HeliumStatement> statements;
     private int pos;
     private LoopState loopState;
     private final LoopState initialLoopState;
     private final String returnType;
 
-    private Scope(String name, List<HeliumStatement> statements, String returnType) {
+    private Scope(String name, List<HeliumStatement> statements, String returnType, FrameLayout layout, String[] slotNames) {
         this.name = name;
-        this.variables = new HashMap<>();
+        this.layout = layout;
+        this.frame = new NodePrimitive[slotNames.length];
+        this.slotNames = slotNames;
         this.statements = statements;
         this.loopState = LoopState.NOT_LOOP;
         this.initialLoopState = loopState;
@@ -41,7 +65,9 @@ public class Scope {
 
     private Scope(String name, Scope existing, List<HeliumStatement> statements, boolean isLoop) {
         this.name = name;
-        this.variables = new HashMap<>(existing.variables);
+        this.layout = existing.layout;
+        this.frame = existing.frame;
+        this.slotNames = existing.slotNames;
         this.statements = statements; //Statements are part of new scope code
         this.loopState = isLoop ? LoopState.LOOP : LoopState.NOT_LOOP;
         this.initialLoopState = loopState;
@@ -49,10 +75,6 @@ public class Scope {
         pos = 0;
     }
 
-    public static Scope empty(String name, List<HeliumStatement> statements, String returnType) {
-        return new Scope(name, statements,returnType);
-    }
-
     public static Scope fromPrevious(String name, Scope existing, List<HeliumStatement> statements) {
         return new Scope(name, existing, statements);
     }
@@ -62,23 +84,19 @@ public class Scope {
     }
 
     /**
-     * Returns a blank {@link Scope} given a function with no arguments.
-     * Mostly only used for main function in the beginning
-     */
-    public static Scope fromFunction(HeliumFunction func) {
-        return fromFunction(func, Collections.emptyMap());
-    }
-
-    /**
-     * Returns a blank {@link Scope} from a function.
+     * Returns a {@link Scope} with a new frame for a function, with just its arguments in it.
      */
-    public static Scope fromFunction(HeliumFunction func, Map<String, NodePrimitive> arguments) {
+    public static Scope fromFunction(HeliumFunction func, FrameLayout layout, List<NodePrimitive> arguments) {
         //TODO Check this before we call this function, since that way we can call proper errors
         if (arguments.size() != func.argumentCount)
             throw new RuntimeException("Incorrect number of arguments, expected " + func.argumentCount + ", found " + arguments.size());
 
-        Scope newScope = Scope.empty(func.name, func.getBody(), func.returnType.value);
-        newScope.variables.putAll(arguments);
+        Scope newScope = new Scope(func.name, func.getBody(), func.returnType.value(), layout, layout.frame(func));
+
+        List<Token> signature = func.getSignature();
+        for (int i = 0; i < arguments.size(); i++) {
+            newScope.frame[layout.slot(signature.get(i * 2 + 1))] = arguments.get(i);
+        }
 
         return newScope;
     }
@@ -101,34 +119,57 @@ public class Scope {
     }
 
     //TODO figure out some way to set and get variables only from the scope they were declared in to allow for global vars etc.
-    public void setVariable(String varName, NodePrimitive value) {
-        variables.put(varName, value);
+    public void setVariable(NodeIdentifier variable, NodePrimitive value) {
+        frame[layout.slot(variable)] = value;
     }
 
-    public NodePrimitive getVariable(String varName) {
-        return variables.get(varName);
+    /**
+     * The value of a variable, or {@code null} if it isn't there
+     */
+    public NodePrimitive getVariable(NodeIdentifier variable) {
+        return frame[layout.slot(variable)];
     }
 
-    public NodePrimitive removeVariable(String varName) {
-        return variables.remove(varName);
+    public boolean hasVariable(NodeIdentifier variable) {
+        return frame[layout.slot(variable)] != null;
     }
 
-    public Map<String, NodePrimitive> getVariables() {
-        return variables;
+    /**
+     * Adds a new variable, which will be gone at the end of this scope
+     */
+    public void declareVariable(NodeIdentifier variable, NodePrimitive value) {
+        int slot = layout.slot(variable);
+        frame[slot] = value;
+        declared.add(slot);
     }
 
-    @Deprecated
-    public boolean hasVariable(String varName) {
-        return variables.containsKey(varName);
+    /**
+     * Gets rid of a variable before the end of the scope, like a for loop's variable
+     */
+    public void removeVariable(NodeIdentifier variable) {
+        int slot = layout.slot(variable);
+        frame[slot] = null;
+
+        int index = declared.lastIndexOf(slot);
+        if (index >= 0) declared.remove(index);
     }
 
-    public boolean hasVariableName(String varName) {
-        return variables.containsKey(varName);
+    /**
+     * Gets rid of everything declared in this scope, once it's done
+     */
+    public void end() {
+        for (int slot : declared) frame[slot] = null;
     }
 
-    //Todo test this cos it 90% does not work
-    public boolean hasVariableType(String varName, Class<? extends NodePrimitive> type) {
-        return variables.containsKey(varName) && variables.get(varName).getClass().equals(type);
+    /**
+     * Every variable there is right now, by name. Makes a new map, so it's only for verbose messages
+     */
+    public Map<String, NodePrimitive> getVariables() {
+        Map<String, NodePrimitive> variables = new HashMap<>();
+        for (int i = 0; i < frame.length; i++) {
+            if (frame[i] != null) variables.put(slotNames[i], frame[i]);
+        }
+        return variables;
     }
 
 
@@ -1,8 +1,9 @@
 package adsen.helium.exec.imports;
 
+import adsen.helium.tokeniser.HeliumSource;
+
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
@@ -18,7 +19,7 @@ public class ImportData {
     /**
      * Code contained within the file, if relevant
      */
-    private final String code;
+    private final HeliumSource source;
 
     public ImportData(ImportPath importPath, Path filePath) throws IOException {
         this.importPath = importPath;
@@ -40,21 +41,28 @@ public class ImportData {
 
         switch (type) {
             case STANDARD, LIBRARY -> {
-                code = Files.readString(filePath);
+                source = HeliumSource.map(filePath);
             }
             default -> {
-                code = null;
+                source = null;
             }
         }
     }
 
     public String getCode() {
-        return code != null ? code : "";
+        return source != null ? source.asString() : "";
+    }
+
+    /**
+     * The file's code as bytes, or {@code null} if it's not a code file
+     */
+    public HeliumSource getSource() {
+        return source;
     }
 
     public String toString() {
         //TODO change this when other filetypes are implemented
-        return "[" + type.name() + "] " + importPath.toString() + File.separator + importPath.file + ": " + code;
+        return "[" + type.name() + "] " + importPath.toString() + File.separator + importPath.file + ": " + getCode();
     }
 }
 
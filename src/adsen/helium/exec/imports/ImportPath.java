@@ -22,8 +22,8 @@ public class ImportPath {
 
     public ImportPath(List<Token> importTokens) {
         token = importTokens.getFirst();
-        path = importTokens.stream().skip(1).limit(importTokens.size() - 2).map(t -> t.value).toList();
-        file = importTokens.getLast().value;
+        path = importTokens.stream().skip(1).limit(importTokens.size() - 2).map(Token::value).toList();
+        file = importTokens.getLast().value();
     }
 
     public boolean isNative() {
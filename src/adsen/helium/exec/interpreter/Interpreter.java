@@ -1,5 +1,7 @@
 package adsen.helium.exec.interpreter;
 
+import adsen.helium.analysis.FrameLayout;
+import adsen.helium.analysis.SlotResolver;
 import adsen.helium.error.ExpressionError;
 import adsen.helium.parser.expr.FuncCallExpr;
 import adsen.helium.parser.expr.NodeExpr;
@@ -34,7 +36,6 @@ import adsen.helium.tokeniser.Token;
 
 import adsen.helium.tokeniser.TokenType;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -72,9 +73,21 @@ public class Interpreter {
      */
     public Stack<Scope> scopeStack;
 
+    /**
+     * Whether the program has already been through the {@link adsen.helium.analysis.TypeChecker}, so types don't need
+     * to be checked again as it runs
+     */
+    private final boolean typeChecked;
+
+    /**
+     * Where each variable goes in its function's frame, worked out once the program starts running
+     */
+    private FrameLayout layout;
+
 
     public Interpreter(HeliumProgram program) {
         this.program = program;
+        this.typeChecked = program.isTypeChecked();
     }
 
     /**
@@ -85,9 +98,10 @@ public class Interpreter {
             throw new RuntimeException("Program does not contain main function");
 
         HeliumFunction mainFunction = program.mainFunction();
+        layout = new SlotResolver(program).resolve();
 
         scopeStack = new Stack<>();
-        scopeStack.push(Scope.fromFunction(mainFunction));
+        scopeStack.push(Scope.fromFunction(mainFunction, layout, List.of()));
 
         Optional<NodePrimitive> retVal = Optional.empty();
 
@@ -123,15 +137,15 @@ public class Interpreter {
             case DeclareStatement declare -> {
                 NodeIdentifier identifier = declare.identifier();
 
-                if (scope().hasVariable(identifier.asString())) {
+                if (scope().hasVariable(identifier)) {
                     //Copy of Java error message
                     throw new ExpressionError("Variable '" + identifier.asString() + "' is already defined in the scope", identifier.token);
                 }
 
                 NodePrimitive value = evaluateExpr(declare.expr());
 
-                if (declare instanceof StaticDeclareStatement staticDeclare) {
-                    String requiredType = staticDeclare.valueType.value;
+                if (!typeChecked && declare instanceof StaticDeclareStatement staticDeclare) {
+                    String requiredType = staticDeclare.valueType.value();
                     String providedType = value.getTypeString();
 
                     if (!requiredType.equals(providedType)) {
@@ -139,35 +153,40 @@ public class Interpreter {
                     }
                 }
 
-                scope().setVariable(identifier.asString(), value);
+                scope().declareVariable(identifier, value);
             }
             case AssignStatement assign -> {
-                String variableName = assign.identifier().asString();
+                NodeIdentifier variable = assign.identifier();
+                NodePrimitive current = scope().getVariable(variable);
 
-                if (!scope().hasVariable(variableName)) {
-                    throw new ExpressionError("Unknown variable '" + variableName + "'", assign.identifier().token);
+                if (current == null) {
+                    throw new ExpressionError("Unknown variable '" + variable.asString() + "'", variable.token);
                 }
 
                 if (assign instanceof IncrementStatement inc) {
-                    String providedType = scope().getVariable(variableName).getTypeString();
-                    if (!providedType.equals(IntPrimitive.TYPE_STRING)) {
-                        throw new ExpressionError("Cannot increment '" + providedType + "', only '" + IntPrimitive.TYPE_STRING + "' type", assign.identifier().token);
+                    if (!typeChecked) {
+                        String providedType = current.getTypeString();
+                        if (!providedType.equals(IntPrimitive.TYPE_STRING)) {
+                            throw new ExpressionError("Cannot increment '" + providedType + "', only '" + IntPrimitive.TYPE_STRING + "' type", assign.identifier().token);
+                        }
                     }
-                    IntPrimitive value = ((IntPrimitive) scope().getVariable(variableName));
-                    scope().setVariable(variableName, value.setValue(value.getValue() + (inc.incrementor == OperatorType.INCREMENT ? 1 : -1)));
+                    IntPrimitive value = ((IntPrimitive) current);
+                    scope().setVariable(variable, value.setValue(value.getValue() + (inc.incrementor == OperatorType.INCREMENT ? 1 : -1)));
                     break;
                 }
 
                 NodePrimitive value = evaluateExpr(assign.expr());
 
-                String requiredType = scope().getVariable(variableName).getTypeString();
-                String providedType = value.getTypeString();
+                if (!typeChecked) {
+                    String requiredType = current.getTypeString();
+                    String providedType = value.getTypeString();
 
-                if (!requiredType.equals(providedType)) {
-                    throw new ExpressionError("Cannot assign '" + providedType + "' to '" + requiredType + "' type", assign.identifier().token);
+                    if (!requiredType.equals(providedType)) {
+                        throw new ExpressionError("Cannot assign '" + providedType + "' to '" + requiredType + "' type", assign.identifier().token);
+                    }
                 }
 
-                scope().setVariable(variableName, value);
+                scope().setVariable(variable, value);
             }
             case ScopeStatement scope -> { //todo test exit from within scopes
                 Scope newScope;
@@ -215,14 +234,9 @@ public class Interpreter {
                 //Idem for break
                 scope().inheritLoopState(newScope);
 
-                // If we modified a variable that was obtained from earlier scope, then remember the update
-                // This is possibly not the most efficient or correct way of doing things
-                // But this might be the most that can be done with an interpreted language
-                newScope.getVariables().forEach((s, np) -> {
-                    if (scope().hasVariable(s)) {
-                        scope().setVariable(s, np);
-                    }
-                });
+                // Variables from earlier scopes were changed in place, since it's the same frame, so all that's left is
+                // to get rid of the ones declared in here
+                newScope.end();
 
             }
             case IfStatement ifStmt -> {
@@ -266,27 +280,22 @@ public class Interpreter {
                 // If scope already contained a variable with that name, then the statement won't have executed properly
                 // So no need to worry about possibly removing an existing variable
                 if (forStmt.getAssigner() instanceof DeclareStatement declare) {
-                    scope().removeVariable(declare.identifier().asString());
+                    scope().removeVariable(declare.identifier());
                 }
             }
 
             case FunctionCallStatement fCallStmt -> {
 
-                Map<String, NodePrimitive> arguments = new HashMap<>();
-                List<NodePrimitive> typeSignature = new ArrayList<>();
+                List<NodePrimitive> typeSignature = new ArrayList<>(fCallStmt.args.size());
 
                 for (int i = 0; i < fCallStmt.args.size(); i++) {
                     NodePrimitive argValue = evaluateExpr(fCallStmt.args.get(i));
                     typeSignature.add(argValue);
                 }
 
-                HeliumFunction func = program.getFunction(fCallStmt.name, typeSignature);
-
-                for (int i = 0; i < typeSignature.size(); i++) {
-                    arguments.put(func.getSignature().get(i * 2 + 1).value, typeSignature.get(i));
-                }
+                HeliumFunction func = fCallStmt.target() != null ? fCallStmt.target() : program.getFunction(fCallStmt.name, typeSignature);
 
-                Scope newScope = Scope.fromFunction(func, arguments);
+                Scope newScope = Scope.fromFunction(func, layout, typeSignature);
 
                 scopeStack.push(newScope);
                 ReturnStatement funcRet = null;
@@ -306,8 +315,8 @@ public class Interpreter {
                 if (returnValue.isPresent()) {
                     NodePrimitive value = returnValue.get();
 
-                    if (!value.getTypeString().equals(func.returnType.value))
-                        throw new ExpressionError("Expected '" + func.returnType.value + "' return type in function '" + func.name + "', got '" + value.getTypeString() + "' instead",
+                    if (!typeChecked && !value.getTypeString().equals(func.returnType.value()))
+                        throw new ExpressionError("Expected '" + func.returnType.value() + "' return type in function '" + func.name + "', got '" + value.getTypeString() + "' instead",
                                 errorToken);
 
                     returnValue = Optional.empty(); //Discarding the return value, since it shouldn't matter
@@ -316,7 +325,7 @@ public class Interpreter {
                     //The return value would have been discarded anyway, but it is still a type error
 
                     if (!func.returnType.type.equals(TokenType.VOID))
-                        throw new ExpressionError("Expected '" + func.returnType.value + "' return type in function '" + func.name + "', got '" + TokenType.VOID.name().toLowerCase() + "' instead",
+                        throw new ExpressionError("Expected '" + func.returnType.value() + "' return type in function '" + func.name + "', got '" + TokenType.VOID.name().toLowerCase() + "' instead",
                                 errorToken
                         );
                 }
@@ -330,7 +339,7 @@ public class Interpreter {
 
                 //If the return statement is empty, we don't expect a result
                 if (retStmt.empty) {
-                    if (!scope.getReturnType().equalsIgnoreCase(TokenType.VOID.name())) {
+                    if (!typeChecked && !scope.getReturnType().equalsIgnoreCase(TokenType.VOID.name())) {
                         // We were expecting something from this function, not void
                         throw new ExpressionError("Expected '" + scope.getReturnType() + "' return type from function '" + scope().name + "', got '" + TokenType.VOID.name().toLowerCase() + "' instead", retStmt.token);
                     }
@@ -340,7 +349,7 @@ public class Interpreter {
 
                 NodePrimitive retValue = evaluateExpr(retStmt.expr());
 
-                if (!retValue.getTypeString().equals(scope.getReturnType()))
+                if (!typeChecked && !retValue.getTypeString().equals(scope.getReturnType()))
                     throw new ExpressionError("Expected '" + scope.getReturnType() + "' return type from function '" + scope.name + "', got '" + retValue.getTypeString() + "' instead", retStmt.token);
 
                 returnValue = Optional.of(retValue);
@@ -410,10 +419,12 @@ public class Interpreter {
             case NodePrimitive nodePrimitive -> nodePrimitive;
 
             case NodeIdentifier ident -> {
-                if (!scope().hasVariable(ident.asString()))
+                NodePrimitive value = scope().getVariable(ident);
+
+                if (value == null)
                     throw new ExpressionError("Unknown variable '" + ident.asString() + "'", ident.token);
 
-                yield scope().getVariable(ident.asString());
+                yield value;
             }
 
             case UnaryOperator unOp -> {
@@ -561,24 +572,19 @@ public class Interpreter {
 
             case FuncCallExpr fCall -> {
 
-                Map<String, NodePrimitive> arguments = new HashMap<>();
-                List<NodePrimitive> typeSignature = new ArrayList<>();
+                List<NodePrimitive> typeSignature = new ArrayList<>(fCall.getArgCount());
 
                 for (int i = 0; i < fCall.getArgCount(); i++) {
                     NodePrimitive argValue = evaluateExpr(fCall.arguments.get(i));
                     typeSignature.add(argValue);
                 }
 
-                HeliumFunction func = program.getFunction(fCall.token, typeSignature);
+                HeliumFunction func = fCall.target() != null ? fCall.target() : program.getFunction(fCall.token, typeSignature);
 
                 if (func.returnType.type == TokenType.VOID)
                     throw new ExpressionError("Tried to use void function in an expression", fCall.token);
 
-                for (int i = 0; i < typeSignature.size(); i++) {
-                    arguments.put(func.getSignature().get(i * 2 + 1).value, typeSignature.get(i));
-                }
-
-                Scope newScope = Scope.fromFunction(func, arguments);
+                Scope newScope = Scope.fromFunction(func, layout, typeSignature);
 
                 scopeStack.push(newScope);
 
@@ -600,6 +606,9 @@ public class Interpreter {
             default -> IntPrimitive.of(0);
         };
 
+        //Already known to be the right type
+        if (typeChecked) return retVal.copy();
+
         return (switch (context) {
             case NONE -> retVal;
 
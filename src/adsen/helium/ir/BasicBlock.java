@@ -0,0 +1,70 @@
+package adsen.helium.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A run of instructions which always runs from the start to the end, ending in a {@link Terminator}. Its
+ * {@link Phi}s come first
+ */
+public class BasicBlock {
+    final List<Instruction> instructions = new ArrayList<>();
+    /**
+     * Blocks whose terminators go here, once for each way they do, in the order the phis' operands are in
+     */
+    final List<BasicBlock> predecessors = new ArrayList<>();
+
+    /**
+     * Number this gets written with, given out once the whole function has been built
+     */
+    int id = -1;
+
+    public List<Instruction> instructions() {
+        return Collections.unmodifiableList(instructions);
+    }
+
+    public List<BasicBlock> predecessors() {
+        return Collections.unmodifiableList(predecessors);
+    }
+
+    /**
+     * @return {@code null} if the block isn't finished yet
+     */
+    public Terminator terminator() {
+        return !instructions.isEmpty() && instructions.getLast() instanceof Terminator terminator ? terminator : null;
+    }
+
+    public List<BasicBlock> successors() {
+        Terminator terminator = terminator();
+        return terminator == null ? List.of() : terminator.successors();
+    }
+
+    public List<Phi> phis() {
+        List<Phi> phis = new ArrayList<>();
+        for (Instruction instruction : instructions) {
+            if (!(instruction instanceof Phi phi)) break;
+            phis.add(phi);
+        }
+        return phis;
+    }
+
+    void addPhi(Phi phi) {
+        phi.block = this;
+        instructions.add(phis().size(), phi);
+    }
+
+    void add(Instruction instruction) {
+        instruction.block = this;
+        instructions.add(instruction);
+    }
+
+    void remove(Instruction instruction) {
+        instructions.remove(instruction);
+        instruction.block = null;
+    }
+
+    public String asString() {
+        return "b" + id;
+    }
+}
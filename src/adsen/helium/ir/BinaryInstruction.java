@@ -0,0 +1,43 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+import adsen.helium.parser.expr.operator.OperatorType;
+
+import java.util.List;
+
+/**
+ * Maths or a comparison on two values of the same type, which works the same way as the interpreter's operators. There
+ * are no {@code &&} or {@code ||} instructions, since those only work out their right side if they need to, so they
+ * turn into branches instead
+ */
+public final class BinaryInstruction extends Instruction {
+    public final OperatorType operator;
+
+    public BinaryInstruction(OperatorType operator, Value left, Value right) {
+        super(isArithmetic(operator) ? left.type() : HeliumType.BOOL, List.of(left, right));
+        this.operator = operator;
+    }
+
+    public Value left() {
+        return operands.get(0);
+    }
+
+    public Value right() {
+        return operands.get(1);
+    }
+
+    /**
+     * Whether the operator gives back the same type it's given, instead of a bool
+     */
+    public static boolean isArithmetic(OperatorType operator) {
+        return switch (operator) {
+            case SUM, DIFFERENCE, PRODUCT, QUOTIENT, REMAINDER, EXPONENT -> true;
+            default -> false;
+        };
+    }
+
+    @Override
+    public String asLine() {
+        return assigning(left().asString() + " " + operator.value + " " + right().asString());
+    }
+}
@@ -0,0 +1,24 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+import adsen.helium.parser.HeliumFunction;
+
+import java.util.List;
+
+/**
+ * A call to a function, which is void if the function is
+ */
+public final class CallInstruction extends Instruction {
+    public final HeliumFunction function;
+
+    public CallInstruction(HeliumFunction function, List<Value> arguments) {
+        super(HeliumType.of(function.returnType), arguments);
+        this.function = function;
+    }
+
+    @Override
+    public String asLine() {
+        String call = "call " + function.name + "(" + join(operands) + ")";
+        return type() == HeliumType.VOID ? call : assigning(call);
+    }
+}
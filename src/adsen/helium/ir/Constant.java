@@ -0,0 +1,38 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+import adsen.helium.parser.expr.primitives.BoolPrimitive;
+import adsen.helium.parser.expr.primitives.CharPrimitive;
+import adsen.helium.parser.expr.primitives.FloatPrimitive;
+import adsen.helium.parser.expr.primitives.IntPrimitive;
+import adsen.helium.parser.expr.primitives.NodePrimitive;
+
+/**
+ * A value that's known before the program runs
+ */
+public record Constant(NodePrimitive value) implements Value {
+
+    /**
+     * Copies the primitive, since the interpreter isn't above changing them in place
+     */
+    public static Constant of(NodePrimitive value) {
+        return new Constant(value.copy());
+    }
+
+    @Override
+    public HeliumType type() {
+        return HeliumType.of(value);
+    }
+
+    @Override
+    public String asString() {
+        return switch (value) {
+            case IntPrimitive intP -> Long.toString(intP.getValue());
+            case FloatPrimitive floatP -> Double.toString(floatP.getValue());
+            case CharPrimitive charP -> Character.isISOControl(charP.getValue())
+                    ? "'\\u%04x'".formatted((int) charP.getValue())
+                    : "'" + charP.getValue() + "'";
+            case BoolPrimitive boolP -> Boolean.toString(boolP.getValue());
+        };
+    }
+}
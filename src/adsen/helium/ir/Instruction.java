@@ -0,0 +1,70 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One step of a {@link BasicBlock}. Anything that isn't void is also the value it gives back, so other instructions
+ * use it by pointing straight at it
+ */
+public abstract sealed class Instruction implements Value permits Phi, UnaryInstruction, BinaryInstruction, CallInstruction, Terminator {
+    private final HeliumType type;
+    final List<Value> operands = new ArrayList<>();
+
+    /**
+     * The block this is in, or {@code null} if it's been taken out of it
+     */
+    BasicBlock block;
+    /**
+     * Number this gets written with, given out once the whole function has been built
+     */
+    int id = -1;
+
+    Instruction(HeliumType type, List<Value> operands) {
+        this.type = type;
+        this.operands.addAll(operands);
+    }
+
+    @Override
+    public HeliumType type() {
+        return type;
+    }
+
+    public BasicBlock block() {
+        return block;
+    }
+
+    public List<Value> operands() {
+        return Collections.unmodifiableList(operands);
+    }
+
+    void replaceOperand(Value from, Value to) {
+        operands.replaceAll(operand -> operand == from ? to : operand);
+    }
+
+    @Override
+    public String asString() {
+        return "%" + id;
+    }
+
+    /**
+     * The whole instruction, the way it gets written out in a dump of the function
+     */
+    public abstract String asLine();
+
+    /**
+     * Writes out an instruction which gives back a value
+     */
+    String assigning(String rest) {
+        return asString() + " = " + type + " " + rest;
+    }
+
+    static String join(List<Value> values) {
+        List<String> strings = new ArrayList<>();
+        for (Value value : values) strings.add(value.asString());
+        return String.join(", ", strings);
+    }
+}
@@ -0,0 +1,495 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+import adsen.helium.error.ExpressionError;
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.OperatorType;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.expr.primitives.BoolPrimitive;
+import adsen.helium.parser.expr.primitives.IntPrimitive;
+import adsen.helium.parser.expr.primitives.NodePrimitive;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.AssignStatement;
+import adsen.helium.parser.statement.atomic.BreakStatement;
+import adsen.helium.parser.statement.atomic.ContinueStatement;
+import adsen.helium.parser.statement.atomic.DeclareStatement;
+import adsen.helium.parser.statement.atomic.ExitStatement;
+import adsen.helium.parser.statement.atomic.FunctionCallStatement;
+import adsen.helium.parser.statement.atomic.IncrementStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.TokenType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static adsen.helium.exec.Scope.MAIN_FUNCTION;
+
+/**
+ * Lowers the body of a type checked function into an {@link IrFunction}. Calls have to be bound, and the types of
+ * variables have to be fine, so this can only be done once the program has been through the type checker.
+ * <p>
+ * Variables get turned into SSA values as the body is walked, the way Braun et al. do it in <i>Simple and Efficient
+ * Construction of Static Single Assignment Form</i>: each block remembers the last value each variable was given in it,
+ * and reading a variable a block hasn't given a value looks back through its predecessors, putting a {@link Phi} in
+ * wherever there's more than one. A block is sealed once all of its predecessors are known, and until then, phis in it
+ * are left without operands. Phis which turn out to always give the same value get taken back out straight away.
+ * <p>
+ * It works the same way the interpreter does, not the way it might look like it should: an empty return only ends a
+ * function right at the top of the body of a void function which isn't {@code main}, getting to the end of {@code main}
+ * returns nothing, and {@code break} or {@code continue} outside of a loop is a {@link Terminator.Trap}. Nothing is put
+ * in for code after something which always leaves the block, since that can never run.
+ */
+public class IrBuilder {
+    private static final Constant ONE = Constant.of(IntPrimitive.of(1));
+    private static final Constant TRUE = Constant.of(BoolPrimitive.of(true));
+    private static final Constant FALSE = Constant.of(BoolPrimitive.of(false));
+
+    private IrFunction function;
+    /**
+     * The block instructions are going into, or {@code null} if wherever's being lowered can never run
+     */
+    private BasicBlock current;
+    /**
+     * Whether an empty return at the top of the body ends the function
+     */
+    private boolean returnStops;
+
+    /**
+     * Variables in each scope, innermost first
+     */
+    private final Deque<Map<String, Variable>> scopes = new ArrayDeque<>();
+    /**
+     * Loops around what's being lowered, innermost first
+     */
+    private final Deque<Loop> loops = new ArrayDeque<>();
+
+    /**
+     * The value each variable has at the end of each block, as far as it's been lowered
+     */
+    private final Map<Variable, Map<BasicBlock, Value>> definitions = new IdentityHashMap<>();
+    private final Set<BasicBlock> sealed = new HashSet<>();
+    /**
+     * Phis in blocks which haven't been sealed, which get their operands once they are
+     */
+    private final Map<BasicBlock, Map<Variable, Phi>> incompletePhis = new HashMap<>();
+    /**
+     * Instructions which use each phi, so they can use something else if the phi gets taken out
+     */
+    private final Map<Phi, List<Instruction>> phiUsers = new IdentityHashMap<>();
+    /**
+     * What each phi that's been taken out was replaced with
+     */
+    private final Map<Phi, Value> replaced = new IdentityHashMap<>();
+
+    public IrFunction lower(HeliumFunction source) {
+        scopes.clear();
+        loops.clear();
+        definitions.clear();
+        sealed.clear();
+        incompletePhis.clear();
+        phiUsers.clear();
+        replaced.clear();
+
+        scopes.push(new HashMap<>());
+
+        List<Parameter> parameters = new ArrayList<>();
+        List<Token> signature = source.getSignature();
+        for (int i = 0; i < signature.size(); i += 2) {
+            parameters.add(new Parameter(i / 2, signature.get(i + 1).value(), HeliumType.of(signature.get(i))));
+        }
+
+        function = new IrFunction(source, parameters);
+        boolean isMain = source.name.equals(MAIN_FUNCTION);
+        returnStops = source.returnType.type == TokenType.VOID && !isMain;
+
+        BasicBlock entry = new BasicBlock();
+        start(entry);
+        seal(entry);
+
+        for (Parameter parameter : parameters) {
+            write(declare(signature.get(2 * parameter.index() + 1), parameter.type()), parameter);
+        }
+
+        lower(source.getBody(), true);
+
+        if (current != null) {
+            //The interpreter exits with 0 when it gets to the end of main
+            terminate(returnStops || isMain
+                    ? new Terminator.Return(null)
+                    : new Terminator.Trap("Did not return a value from function '" + source.name + "'"));
+        }
+
+        function.number();
+        return function;
+    }
+
+    /**
+     * @param top Whether these are the statements right in the function's body
+     */
+    private void lower(List<HeliumStatement> statements, boolean top) {
+        for (HeliumStatement statement : statements) {
+            if (current == null) return;
+            lower(statement, top);
+        }
+    }
+
+    private void lower(HeliumStatement statement, boolean top) {
+        switch (statement) {
+            case DeclareStatement declare -> {
+                Value value = lower(declare.expr());
+                write(declare(declare.identifier().token, value.type()), value);
+            }
+            case IncrementStatement inc -> {
+                Variable variable = variable(inc.identifier());
+                OperatorType operator = inc.incrementor == OperatorType.INCREMENT ? OperatorType.SUM : OperatorType.DIFFERENCE;
+                write(variable, emit(new BinaryInstruction(operator, read(variable), ONE)));
+            }
+            case AssignStatement assign -> write(variable(assign.identifier()), lower(assign.expr()));
+            case ScopeStatement scope -> {
+                scopes.push(new HashMap<>());
+                lower(scope.statements, false);
+                scopes.pop();
+            }
+            case IfStatement ifStmt -> {
+                Value condition = lower(ifStmt.getCondition());
+
+                BasicBlock thenBlock = new BasicBlock();
+                BasicBlock elseBlock = ifStmt.hasElse() ? new BasicBlock() : null;
+                BasicBlock join = new BasicBlock();
+                terminate(new Terminator.Branch(condition, thenBlock, elseBlock != null ? elseBlock : join));
+
+                continueIn(thenBlock);
+                lowerBranch(ifStmt.thenStatement());
+                jump(join);
+
+                if (elseBlock != null) {
+                    continueIn(elseBlock);
+                    lowerBranch(ifStmt.elseStatement());
+                    jump(join);
+                }
+
+                continueIn(join);
+            }
+            case WhileStatement whileStmt -> {
+                BasicBlock header = new BasicBlock();
+                BasicBlock body = new BasicBlock();
+                BasicBlock exit = new BasicBlock();
+
+                //Not sealed until everything that goes back to it has been lowered
+                jump(header);
+                start(header);
+                terminate(new Terminator.Branch(lower(whileStmt.condition()), body, exit));
+
+                continueIn(body);
+                loops.push(new Loop(exit, header));
+                lowerBranch(whileStmt.statement());
+                loops.pop();
+                jump(header);
+
+                seal(header);
+                continueIn(exit);
+            }
+            case ForStatement forStmt -> {
+                //The loop variable is only there until the loop ends
+                scopes.push(new HashMap<>());
+                lower(forStmt.getAssigner(), false);
+
+                BasicBlock header = new BasicBlock();
+                BasicBlock body = new BasicBlock();
+                BasicBlock step = new BasicBlock();
+                BasicBlock exit = new BasicBlock();
+
+                jump(header);
+                start(header);
+                terminate(new Terminator.Branch(lower(forStmt.condition()), body, exit));
+
+                continueIn(body);
+                loops.push(new Loop(exit, step));
+                lowerBranch(forStmt.statement());
+                loops.pop();
+                jump(step);
+
+                continueIn(step);
+                if (current != null) {
+                    lower(forStmt.getIncrementer(), false);
+                    jump(header);
+                }
+
+                seal(header);
+                scopes.pop();
+                continueIn(exit);
+            }
+            case FunctionCallStatement call -> emit(new CallInstruction(call.target(), lower(call.args)));
+            case ReturnStatement ret -> {
+                if (!ret.empty) terminate(new Terminator.Return(lower(ret.expr())));
+                //Anywhere else, the interpreter just carries on
+                else if (top && returnStops) terminate(new Terminator.Return(null));
+            }
+            case ExitStatement exit -> terminate(new Terminator.Return(lower(exit.expr())));
+            case BreakStatement _ -> terminate(loops.isEmpty()
+                    ? new Terminator.Trap("Unexpected 'break' outside of loop")
+                    : new Terminator.Jump(loops.peek().breakTarget));
+            case ContinueStatement _ -> terminate(loops.isEmpty()
+                    ? new Terminator.Trap("Unexpected 'continue' outside of loop")
+                    : new Terminator.Jump(loops.peek().continueTarget));
+            //Anything else doesn't do anything in the interpreter either
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Lowers the body of an if, while or for. If it isn't a scope, anything it declares still only lasts as long as it
+     */
+    private void lowerBranch(HeliumStatement statement) {
+        scopes.push(new HashMap<>());
+        lower(statement, false);
+        scopes.pop();
+    }
+
+    private List<Value> lower(List<NodeExpr> exprs) {
+        List<Value> values = new ArrayList<>();
+        for (NodeExpr expr : exprs) values.add(lower(expr));
+        return values;
+    }
+
+    private Value lower(NodeExpr expr) {
+        return switch (expr) {
+            case NodePrimitive primitive -> Constant.of(primitive);
+            case NodeIdentifier identifier -> read(variable(identifier));
+            case UnaryOperator unOp -> switch (unOp.type()) {
+                case POSITIVE -> lower(unOp.operand());
+                case INCREMENT -> emit(new BinaryInstruction(OperatorType.SUM, lower(unOp.operand()), ONE));
+                case DECREMENT -> emit(new BinaryInstruction(OperatorType.DIFFERENCE, lower(unOp.operand()), ONE));
+                default -> emit(new UnaryInstruction(unOp.type(), lower(unOp.operand())));
+            };
+            case BinaryOperator binOp when binOp.type() == OperatorType.AND || binOp.type() == OperatorType.OR ->
+                    shortCircuit(binOp);
+            case BinaryOperator binOp -> {
+                Value left = lower(binOp.left());
+                Value right = lower(binOp.right());
+                yield emit(new BinaryInstruction(binOp.type(), left, right));
+            }
+            case FuncCallExpr call -> emit(new CallInstruction(call.target(), lower(call.arguments)));
+            //The interpreter evaluates anything it doesn't know to 0
+            default -> Constant.of(IntPrimitive.of(0));
+        };
+    }
+
+    /**
+     * {@code &&} and {@code ||}, which only work out their right side if the left side doesn't already give the answer
+     */
+    private Value shortCircuit(BinaryOperator binOp) {
+        boolean isAnd = binOp.type() == OperatorType.AND;
+        Value left = lower(binOp.left());
+
+        BasicBlock rightBlock = new BasicBlock();
+        BasicBlock join = new BasicBlock();
+        terminate(isAnd ? new Terminator.Branch(left, rightBlock, join) : new Terminator.Branch(left, join, rightBlock));
+
+        continueIn(rightBlock);
+        Value right = lower(binOp.right());
+        jump(join);
+
+        //Coming straight from the left side means it already gave the answer
+        continueIn(join);
+        Phi phi = new Phi(HeliumType.BOOL);
+        join.addPhi(phi);
+        addIncoming(phi, isAnd ? FALSE : TRUE);
+        addIncoming(phi, right);
+        return tryRemoveTrivialPhi(phi);
+    }
+
+    //Blocks
+
+    private void start(BasicBlock block) {
+        function.blocks.add(block);
+        current = block;
+    }
+
+    /**
+     * Seals a block, and carries on in it, unless nothing goes to it, in which case nothing after it can run
+     */
+    private void continueIn(BasicBlock block) {
+        seal(block);
+        if (block.predecessors.isEmpty()) current = null;
+        else start(block);
+    }
+
+    private void jump(BasicBlock target) {
+        if (current != null) terminate(new Terminator.Jump(target));
+    }
+
+    private void terminate(Terminator terminator) {
+        emit(terminator);
+        for (BasicBlock successor : terminator.successors()) successor.predecessors.add(current);
+        current = null;
+    }
+
+    private Value emit(Instruction instruction) {
+        instruction.operands.replaceAll(this::resolve);
+        current.add(instruction);
+        for (Value operand : instruction.operands) {
+            if (operand instanceof Phi phi) phiUsers.computeIfAbsent(phi, p -> new ArrayList<>()).add(instruction);
+        }
+        return instruction;
+    }
+
+    //Variables
+
+    private Variable declare(Token name, HeliumType type) {
+        Variable variable = new Variable(name, type);
+        scopes.peek().put(name.value(), variable);
+        return variable;
+    }
+
+    private Variable variable(NodeIdentifier identifier) {
+        for (Map<String, Variable> scope : scopes) {
+            Variable variable = scope.get(identifier.asString());
+            if (variable != null) return variable;
+        }
+
+        throw new ExpressionError("Unknown variable '" + identifier.asString() + "'", identifier.token);
+    }
+
+    private void write(Variable variable, Value value) {
+        write(variable, current, value);
+    }
+
+    private void write(Variable variable, BasicBlock block, Value value) {
+        definitions.computeIfAbsent(variable, v -> new HashMap<>()).put(block, resolve(value));
+    }
+
+    private Value read(Variable variable) {
+        return read(variable, current);
+    }
+
+    private Value read(Variable variable, BasicBlock block) {
+        Value value = definitions.getOrDefault(variable, Map.of()).get(block);
+        return value != null ? resolve(value) : readRecursive(variable, block);
+    }
+
+    private Value readRecursive(Variable variable, BasicBlock block) {
+        Value value;
+
+        if (!sealed.contains(block)) {
+            Phi phi = new Phi(variable.type);
+            block.addPhi(phi);
+            incompletePhis.computeIfAbsent(block, b -> new HashMap<>()).put(variable, phi);
+            value = phi;
+        } else if (block.predecessors.size() == 1) {
+            value = read(variable, block.predecessors.getFirst());
+        } else if (block.predecessors.isEmpty()) {
+            //Type checking makes sure every variable is declared before it's read, so this can't happen
+            throw new ExpressionError("Variable '" + variable.name.value() + "' has no value here", variable.name);
+        } else {
+            Phi phi = new Phi(variable.type);
+            block.addPhi(phi);
+            //Before looking at the predecessors, since they might loop back here
+            write(variable, block, phi);
+            value = addOperands(variable, phi);
+        }
+
+        write(variable, block, value);
+        return value;
+    }
+
+    private void seal(BasicBlock block) {
+        Map<Variable, Phi> incomplete = incompletePhis.remove(block);
+        if (incomplete != null) incomplete.forEach(this::addOperands);
+        sealed.add(block);
+    }
+
+    private Value addOperands(Variable variable, Phi phi) {
+        for (BasicBlock predecessor : phi.block.predecessors) addIncoming(phi, read(variable, predecessor));
+        return tryRemoveTrivialPhi(phi);
+    }
+
+    private void addIncoming(Phi phi, Value value) {
+        value = resolve(value);
+        phi.addIncoming(value);
+        if (value instanceof Phi operand) phiUsers.computeIfAbsent(operand, p -> new ArrayList<>()).add(phi);
+    }
+
+    /**
+     * Takes a phi out if it only ever gives one value (apart from itself), using that instead
+     */
+    private Value tryRemoveTrivialPhi(Phi phi) {
+        Value same = null;
+        for (Value operand : phi.operands) {
+            if (operand == same || operand == phi) continue;
+            if (same != null) return phi;
+            same = operand;
+        }
+
+        if (same == null) throw new RuntimeException("Phi in " + function.source.name + " doesn't have any values");
+
+        replaced.put(phi, same);
+        phi.block.remove(phi);
+
+        List<Instruction> users = phiUsers.getOrDefault(phi, List.of());
+        phiUsers.remove(phi);
+
+        for (Instruction user : users) {
+            user.replaceOperand(phi, same);
+            if (same instanceof Phi samePhi) phiUsers.computeIfAbsent(samePhi, p -> new ArrayList<>()).add(user);
+        }
+        for (Map<BasicBlock, Value> values : definitions.values()) {
+            Value finalSame = same;
+            values.replaceAll((block, value) -> value == phi ? finalSame : value);
+        }
+
+        //Anything that used it might only give one value now as well
+        for (Instruction user : users) {
+            if (user != phi && user instanceof Phi userPhi && userPhi.block != null) tryRemoveTrivialPhi(userPhi);
+        }
+
+        return resolve(same);
+    }
+
+    /**
+     * What a value has turned into, if it was a phi that got taken out
+     */
+    private Value resolve(Value value) {
+        while (value instanceof Phi phi && replaced.containsKey(phi)) value = replaced.get(phi);
+        return value;
+    }
+
+    /**
+     * One declaration of a variable. Two variables can have the same name if one's scope ends before the other is
+     * declared, and they don't even need to have the same type, so names aren't enough
+     */
+    private static final class Variable {
+        final Token name;
+        final HeliumType type;
+
+        Variable(Token name, HeliumType type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    /**
+     * @param breakTarget    Where {@code break} goes
+     * @param continueTarget Where {@code continue} goes, which is the condition for a while loop, and the incrementer
+     *                       for a for loop
+     */
+    private record Loop(BasicBlock breakTarget, BasicBlock continueTarget) {
+    }
+}
@@ -0,0 +1,73 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+import adsen.helium.parser.HeliumFunction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A function lowered into basic blocks of SSA instructions by the {@link IrBuilder}, starting from the first block
+ */
+public class IrFunction {
+    /**
+     * The function this was lowered from
+     */
+    public final HeliumFunction source;
+    public final HeliumType returnType;
+    final List<Parameter> parameters;
+    final List<BasicBlock> blocks = new ArrayList<>();
+
+    IrFunction(HeliumFunction source, List<Parameter> parameters) {
+        this.source = source;
+        this.returnType = HeliumType.of(source.returnType);
+        this.parameters = parameters;
+    }
+
+    public List<Parameter> parameters() {
+        return Collections.unmodifiableList(parameters);
+    }
+
+    public List<BasicBlock> blocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    public BasicBlock entry() {
+        return blocks.getFirst();
+    }
+
+    /**
+     * Gives out numbers to the blocks and to the instructions which give back values, in the order they're in
+     */
+    void number() {
+        int values = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            blocks.get(i).id = i;
+            for (Instruction instruction : blocks.get(i).instructions) {
+                instruction.id = instruction.type() == HeliumType.VOID ? -1 : values++;
+            }
+        }
+    }
+
+    public String asString() {
+        List<String> parameterStrings = new ArrayList<>();
+        for (Parameter parameter : parameters) parameterStrings.add(parameter.type() + " " + parameter.asString());
+
+        StringBuilder builder = new StringBuilder(returnType + " " + source.name + "(" + String.join(", ", parameterStrings) + ") {\n");
+
+        for (BasicBlock block : blocks) {
+            builder.append(block.asString()).append(':');
+            if (!block.predecessors.isEmpty()) {
+                List<String> from = new ArrayList<>();
+                for (BasicBlock predecessor : block.predecessors) from.add(predecessor.asString());
+                builder.append(" (from ").append(String.join(", ", from)).append(')');
+            }
+            builder.append('\n');
+
+            for (Instruction instruction : block.instructions) builder.append("    ").append(instruction.asLine()).append('\n');
+        }
+
+        return builder.append('}').toString();
+    }
+}
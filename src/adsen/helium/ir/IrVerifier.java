@@ -0,0 +1,262 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+import adsen.helium.tokeniser.Token;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static adsen.helium.exec.Scope.MAIN_FUNCTION;
+
+/**
+ * Checks that an {@link IrFunction} makes sense, so that anything which changes it can be checked straight after. That
+ * means every block ends in exactly one terminator with its phis at the start, blocks and their predecessors agree with
+ * each other, every block can be got to, the types of every instruction's operands fit it, and every value is defined
+ * somewhere that dominates everywhere it's used (for a phi, that's the end of the predecessor it comes from).
+ */
+public class IrVerifier {
+    private final IrFunction function;
+    private final List<String> problems = new ArrayList<>();
+
+    /**
+     * Where each instruction is, as the block it's in and how far into it it is
+     */
+    private final Map<Instruction, Integer> positions = new IdentityHashMap<>();
+    private final Map<BasicBlock, BasicBlock> immediateDominators = new IdentityHashMap<>();
+
+    public IrVerifier(IrFunction function) {
+        this.function = function;
+    }
+
+    /**
+     * @return Everything that's wrong with the function, which is empty if it's fine
+     */
+    public List<String> verify() {
+        problems.clear();
+
+        if (function.blocks.isEmpty()) {
+            problems.add("there are no blocks");
+            return problems;
+        }
+        if (!function.entry().predecessors.isEmpty()) problems.add("the entry block " + function.entry().asString() + " has predecessors");
+
+        Set<BasicBlock> blocks = Collections.newSetFromMap(new IdentityHashMap<>());
+        blocks.addAll(function.blocks);
+
+        for (BasicBlock block : function.blocks) {
+            checkStructure(block, blocks);
+            for (int i = 0; i < block.instructions.size(); i++) positions.put(block.instructions.get(i), i);
+        }
+
+        //Everything after this needs the blocks to be joined up properly
+        if (!problems.isEmpty()) return problems;
+
+        List<BasicBlock> order = reversePostorder();
+        if (order.size() != function.blocks.size()) {
+            for (BasicBlock block : function.blocks) {
+                if (!order.contains(block)) problems.add(block.asString() + " can't be got to");
+            }
+            return problems;
+        }
+        findDominators(order);
+
+        for (BasicBlock block : function.blocks) {
+            for (Instruction instruction : block.instructions) {
+                checkTypes(instruction);
+                checkOperands(instruction);
+            }
+        }
+
+        return problems;
+    }
+
+    private void checkStructure(BasicBlock block, Set<BasicBlock> blocks) {
+        String name = block.asString();
+
+        if (block.terminator() == null) problems.add(name + " doesn't end in a terminator");
+
+        boolean pastPhis = false;
+        for (int i = 0; i < block.instructions.size(); i++) {
+            Instruction instruction = block.instructions.get(i);
+
+            if (instruction.block != block) problems.add("'" + instruction.asLine() + "' in " + name + " thinks it's in another block");
+            if (instruction instanceof Terminator && i != block.instructions.size() - 1)
+                problems.add("'" + instruction.asLine() + "' in " + name + " isn't at the end of it");
+
+            if (instruction instanceof Phi phi) {
+                if (pastPhis) problems.add("'" + phi.asLine() + "' in " + name + " comes after something that isn't a phi");
+                if (phi.operands.size() != block.predecessors.size())
+                    problems.add("'" + phi.asLine() + "' in " + name + " has " + phi.operands.size() + " operands, but the block has " + block.predecessors.size() + " predecessors");
+            } else {
+                pastPhis = true;
+            }
+        }
+
+        //Each way a block goes to another has to be one of the other's predecessors, and the other way round
+        for (BasicBlock successor : block.successors()) {
+            if (!blocks.contains(successor)) problems.add(name + " goes to a block that isn't in the function");
+            else if (count(successor.predecessors, block) != count(block.successors(), successor))
+                problems.add(name + " goes to " + successor.asString() + " a different number of times than it's a predecessor of it");
+        }
+        for (BasicBlock predecessor : block.predecessors) {
+            if (!blocks.contains(predecessor)) problems.add(name + " has a predecessor that isn't in the function");
+            else if (!predecessor.successors().contains(block))
+                problems.add(name + " has " + predecessor.asString() + " as a predecessor, but it doesn't go there");
+        }
+    }
+
+    private void checkTypes(Instruction instruction) {
+        List<HeliumType> types = new ArrayList<>();
+        for (Value operand : instruction.operands) types.add(operand.type());
+
+        String problem = switch (instruction) {
+            case Phi phi -> phi.type() == HeliumType.VOID || types.stream().anyMatch(type -> type != phi.type())
+                    ? "its operands aren't all " + phi.type() : null;
+            case UnaryInstruction unary -> switch (unary.operator) {
+                case NOT -> types.getFirst() == HeliumType.BOOL ? null : "it needs a bool";
+                case NEGATIVE -> types.getFirst().isNumeric() && unary.type() == types.getFirst() ? null : "it needs a number";
+                default -> "there's no unary '" + unary.operator.value + "' instruction";
+            };
+            case BinaryInstruction binary -> {
+                HeliumType left = types.get(0);
+                HeliumType right = types.get(1);
+
+                if (left != right) yield "its operands are " + left + " and " + right;
+                if (BinaryInstruction.isArithmetic(binary.operator))
+                    yield left.isNumeric() && binary.type() == left ? null : "it needs numbers";
+
+                yield switch (binary.operator) {
+                    case EQUAL, DIFFERENT, LESS, GREATER, LESS_EQ, GREATER_EQ ->
+                            left != HeliumType.VOID && binary.type() == HeliumType.BOOL ? null : "it can't compare " + left;
+                    default -> "there's no binary '" + binary.operator.value + "' instruction";
+                };
+            }
+            case CallInstruction call -> {
+                List<Token> signature = call.function.getSignature();
+                List<HeliumType> required = new ArrayList<>();
+                for (int i = 0; i < signature.size(); i += 2) required.add(HeliumType.of(signature.get(i)));
+
+                if (!required.equals(types)) yield "its arguments should be " + required;
+                yield call.type() == HeliumType.of(call.function.returnType) ? null : "it gives back the wrong type";
+            }
+            case Terminator.Branch _ -> types.getFirst() == HeliumType.BOOL ? null : "it needs a bool";
+            case Terminator.Return ret -> {
+                //Getting to the end of main returns nothing, whatever it was meant to return
+                if (ret.value() == null)
+                    yield function.returnType == HeliumType.VOID || function.source.name.equals(MAIN_FUNCTION) ? null : "it needs a value";
+                yield ret.value().type() == function.returnType ? null : "it gives back " + ret.value().type() + " instead of " + function.returnType;
+            }
+            case Terminator.Jump _, Terminator.Trap _ -> null;
+        };
+
+        if (problem != null) problems.add("'" + instruction.asLine() + "' in " + instruction.block.asString() + " is wrong, since " + problem);
+    }
+
+    private void checkOperands(Instruction instruction) {
+        BasicBlock block = instruction.block;
+
+        for (int i = 0; i < instruction.operands.size(); i++) {
+            Value operand = instruction.operands.get(i);
+            String where = "'" + instruction.asLine() + "' in " + block.asString();
+
+            switch (operand) {
+                case Constant _ -> {
+                }
+                case Parameter parameter -> {
+                    if (!function.parameters.contains(parameter)) problems.add(where + " uses a parameter from another function");
+                }
+                case Instruction definition -> {
+                    if (!positions.containsKey(definition) || !function.blocks.contains(definition.block)) {
+                        problems.add(where + " uses something that isn't in the function");
+                    } else if (definition.type() == HeliumType.VOID) {
+                        problems.add(where + " uses something void");
+                    } else if (instruction instanceof Phi) {
+                        //Only has to be there by the end of the block it comes from
+                        if (!dominates(definition.block, block.predecessors.get(i)))
+                            problems.add(where + " uses " + definition.asString() + ", which isn't always defined coming from " + block.predecessors.get(i).asString());
+                    } else if (definition.block == block
+                            ? positions.get(definition) >= positions.get(instruction)
+                            : !dominates(definition.block, block)) {
+                        problems.add(where + " uses " + definition.asString() + ", which isn't always defined before it");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks in reverse postorder, which only has the ones that can be got to from the entry
+     */
+    private List<BasicBlock> reversePostorder() {
+        List<BasicBlock> order = new ArrayList<>();
+        Set<BasicBlock> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        visit(function.entry(), seen, order);
+        Collections.reverse(order);
+        return order;
+    }
+
+    private static void visit(BasicBlock block, Set<BasicBlock> seen, List<BasicBlock> order) {
+        if (!seen.add(block)) return;
+        for (BasicBlock successor : block.successors()) visit(successor, seen, order);
+        order.add(block);
+    }
+
+    /**
+     * Works out the immediate dominator of every block, the way Cooper, Harvey and Kennedy do it in <i>A Simple, Fast
+     * Dominance Algorithm</i>
+     */
+    private void findDominators(List<BasicBlock> order) {
+        Map<BasicBlock, Integer> index = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) index.put(order.get(i), i);
+
+        BasicBlock entry = order.getFirst();
+        immediateDominators.clear();
+        immediateDominators.put(entry, entry);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (BasicBlock block : order.subList(1, order.size())) {
+                BasicBlock dominator = null;
+                for (BasicBlock predecessor : block.predecessors) {
+                    if (!immediateDominators.containsKey(predecessor)) continue;
+                    dominator = dominator == null ? predecessor : intersect(dominator, predecessor, index);
+                }
+
+                if (immediateDominators.get(block) != dominator) {
+                    immediateDominators.put(block, dominator);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private BasicBlock intersect(BasicBlock a, BasicBlock b, Map<BasicBlock, Integer> index) {
+        while (a != b) {
+            while (index.get(a) > index.get(b)) a = immediateDominators.get(a);
+            while (index.get(b) > index.get(a)) b = immediateDominators.get(b);
+        }
+        return a;
+    }
+
+    private boolean dominates(BasicBlock dominator, BasicBlock block) {
+        Set<BasicBlock> seen = new HashSet<>();
+        for (BasicBlock b = block; seen.add(b); b = immediateDominators.get(b)) {
+            if (b == dominator) return true;
+        }
+        return false;
+    }
+
+    private static int count(List<BasicBlock> blocks, BasicBlock block) {
+        int count = 0;
+        for (BasicBlock b : blocks) if (b == block) count++;
+        return count;
+    }
+}
@@ -0,0 +1,15 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+
+/**
+ * One of the arguments a function gets called with
+ *
+ * @param index Where it is in the function's signature
+ */
+public record Parameter(int index, String name, HeliumType type) implements Value {
+    @Override
+    public String asString() {
+        return "%" + name;
+    }
+}
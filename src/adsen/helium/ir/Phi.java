@@ -0,0 +1,37 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks a value depending on which block control came from. There's one operand for each of its block's
+ * {@link BasicBlock#predecessors()}, in the same order, and phis always come before anything else in a block
+ */
+public final class Phi extends Instruction {
+    public Phi(HeliumType type) {
+        super(type, List.of());
+    }
+
+    /**
+     * The value given when coming from the {@code i}th predecessor
+     */
+    public Value incoming(int i) {
+        return operands.get(i);
+    }
+
+    void addIncoming(Value value) {
+        operands.add(value);
+    }
+
+    @Override
+    public String asLine() {
+        List<String> incoming = new ArrayList<>();
+        for (int i = 0; i < operands.size(); i++) {
+            BasicBlock from = block == null || i >= block.predecessors.size() ? null : block.predecessors.get(i);
+            incoming.add("[" + (from == null ? "?" : from.asString()) + ": " + operands.get(i).asString() + "]");
+        }
+        return assigning("phi " + String.join(", ", incoming));
+    }
+}
@@ -0,0 +1,114 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+
+import java.util.List;
+
+/**
+ * The last instruction of every {@link BasicBlock}, which says where to go after it
+ */
+public abstract sealed class Terminator extends Instruction permits Terminator.Jump, Terminator.Branch, Terminator.Return, Terminator.Trap {
+    Terminator(List<Value> operands) {
+        super(HeliumType.VOID, operands);
+    }
+
+    /**
+     * Blocks this can go to, in order, and with repeats if it goes to the same one more than one way
+     */
+    public abstract List<BasicBlock> successors();
+
+    public static final class Jump extends Terminator {
+        public final BasicBlock target;
+
+        public Jump(BasicBlock target) {
+            super(List.of());
+            this.target = target;
+        }
+
+        @Override
+        public List<BasicBlock> successors() {
+            return List.of(target);
+        }
+
+        @Override
+        public String asLine() {
+            return "jmp " + target.asString();
+        }
+    }
+
+    public static final class Branch extends Terminator {
+        public final BasicBlock ifTrue;
+        public final BasicBlock ifFalse;
+
+        public Branch(Value condition, BasicBlock ifTrue, BasicBlock ifFalse) {
+            super(List.of(condition));
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+
+        public Value condition() {
+            return operands.getFirst();
+        }
+
+        @Override
+        public List<BasicBlock> successors() {
+            return List.of(ifTrue, ifFalse);
+        }
+
+        @Override
+        public String asLine() {
+            return "br " + condition().asString() + ", " + ifTrue.asString() + ", " + ifFalse.asString();
+        }
+    }
+
+    /**
+     * Leaves the function, with a value unless it's void. {@code exit} is the same thing as far as the interpreter's
+     * concerned, so it turns into this as well
+     */
+    public static final class Return extends Terminator {
+        public Return(Value value) {
+            super(value == null ? List.of() : List.of(value));
+        }
+
+        /**
+         * @return {@code null} for an empty return
+         */
+        public Value value() {
+            return operands.isEmpty() ? null : operands.getFirst();
+        }
+
+        @Override
+        public List<BasicBlock> successors() {
+            return List.of();
+        }
+
+        @Override
+        public String asLine() {
+            return operands.isEmpty() ? "ret" : "ret " + value().asString();
+        }
+    }
+
+    /**
+     * Somewhere the interpreter would throw an error if it got to, like a {@code break} outside of a loop, or the end
+     * of a function that should have returned something. The type checker lets those through, since they're only
+     * errors if they run
+     */
+    public static final class Trap extends Terminator {
+        public final String message;
+
+        public Trap(String message) {
+            super(List.of());
+            this.message = message;
+        }
+
+        @Override
+        public List<BasicBlock> successors() {
+            return List.of();
+        }
+
+        @Override
+        public String asLine() {
+            return "trap \"" + message + "\"";
+        }
+    }
+}
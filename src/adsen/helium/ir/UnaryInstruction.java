@@ -0,0 +1,28 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+import adsen.helium.parser.expr.operator.OperatorType;
+
+import java.util.List;
+
+/**
+ * {@code !} on a bool or {@code -} on a number. Unary {@code +} doesn't do anything, and {@code ++} and {@code --} in
+ * expressions are just adding or taking away 1, so those don't get their own instructions
+ */
+public final class UnaryInstruction extends Instruction {
+    public final OperatorType operator;
+
+    public UnaryInstruction(OperatorType operator, Value operand) {
+        super(operator == OperatorType.NOT ? HeliumType.BOOL : operand.type(), List.of(operand));
+        this.operator = operator;
+    }
+
+    public Value operand() {
+        return operands.getFirst();
+    }
+
+    @Override
+    public String asLine() {
+        return assigning((operator == OperatorType.NOT ? "!" : "-") + operand().asString());
+    }
+}
@@ -0,0 +1,16 @@
+package adsen.helium.ir;
+
+import adsen.helium.analysis.HeliumType;
+
+/**
+ * Anything an {@link Instruction} can take as an operand: a constant, one of the function's parameters, or whatever
+ * another instruction gives back. Every value is only ever given once, which is what makes the IR SSA
+ */
+public sealed interface Value permits Constant, Parameter, Instruction {
+    HeliumType type();
+
+    /**
+     * How the value gets written when it's an operand
+     */
+    String asString();
+}
@@ -0,0 +1,454 @@
+package adsen.helium.optimiser;
+
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.HeliumProgram;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.OperatorType;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.expr.primitives.BoolPrimitive;
+import adsen.helium.parser.expr.primitives.CharPrimitive;
+import adsen.helium.parser.expr.primitives.FloatPrimitive;
+import adsen.helium.parser.expr.primitives.IntPrimitive;
+import adsen.helium.parser.expr.primitives.NodePrimitive;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.AssignStatement;
+import adsen.helium.parser.statement.atomic.DeclareStatement;
+import adsen.helium.parser.statement.atomic.ExitStatement;
+import adsen.helium.parser.statement.atomic.FunctionCallStatement;
+import adsen.helium.parser.statement.atomic.IncrementStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.parser.statement.atomic.StaticDeclareStatement;
+import adsen.helium.tokeniser.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+import static adsen.helium.optimiser.Trees.cannotFail;
+
+/**
+ * Works out anything in a program that doesn't depend on variables, so that it isn't worked out again every time it
+ * runs. Only changes the tree, so it works the same whatever ends up running it.
+ * <p>
+ * Constants are folded exactly the way the {@link adsen.helium.exec.interpreter.Interpreter} would evaluate them (so
+ * ints overflow, chars wrap around and ints are divided with rounding towards 0), and anything it would throw an error
+ * for, like dividing by 0 or adding a bool, is left for it to throw. An {@code if} or {@code while} whose condition
+ * turns out to be constant gets replaced by whatever it would have run.
+ * <p>
+ * Once a program has been type checked, the types of variables are known from what they're used with, so things like
+ * {@code x + 0}, {@code x * 1}, {@code !!b}, {@code true && b} and {@code f ** 2.0} (to {@code f * f}) get simplified
+ * too. Anything that would be left out has to not call any functions or divide by 0, since those could still error or
+ * never return. Int {@code ** 2} is left alone, since the interpreter does it with doubles, so it doesn't overflow the
+ * same way.
+ */
+public class ConstantFolder {
+    private final HeliumProgram program;
+
+    /**
+     * Whether types are known, which is what simplifying anything that isn't constant relies on
+     */
+    private final boolean typed;
+
+    private int foldedExpressions = 0;
+    private int simplifiedExpressions = 0;
+    private int simplifiedStatements = 0;
+
+    public ConstantFolder(HeliumProgram program) {
+        this.program = program;
+        this.typed = program.isTypeChecked();
+    }
+
+    public void run() {
+        for (HeliumFunction function : program.getFunctions()) {
+            List<HeliumStatement> body = foldAll(function.getBody());
+            if (body != function.getBody()) function.replaceBody(body);
+        }
+
+        if (VERBOSE_FLAGS.contains("parser"))
+            System.out.println("Folded " + foldedExpressions + " constant expressions, simplified " + simplifiedExpressions + " expressions and " + simplifiedStatements + " statements");
+    }
+
+    /**
+     * Folds a list of statements, giving back the same list if nothing changed
+     */
+    private List<HeliumStatement> foldAll(List<HeliumStatement> statements) {
+        List<HeliumStatement> folded = null;
+
+        for (int i = 0; i < statements.size(); i++) {
+            HeliumStatement statement = statements.get(i);
+            HeliumStatement result = fold(statement);
+
+            if (result != statement && folded == null) folded = new ArrayList<>(statements.subList(0, i));
+            if (folded != null && result != null) folded.add(result);
+        }
+
+        return folded == null ? statements : folded;
+    }
+
+    /**
+     * Folds a statement, giving back {@code null} if it doesn't do anything anymore
+     */
+    private HeliumStatement fold(HeliumStatement statement) {
+        return switch (statement) {
+            case ScopeStatement scope -> {
+                List<HeliumStatement> statements = foldAll(scope.statements);
+                if (statements == scope.statements) yield scope;
+
+                ScopeStatement folded = new ScopeStatement(statements, scope.name, scope.token);
+                yield scope.isLoop() ? folded.asLoop() : folded;
+            }
+            case StaticDeclareStatement declare -> {
+                NodeExpr expr = fold(declare.expr());
+                yield expr == declare.expr() ? declare : new StaticDeclareStatement(declare.valueType, declare.identifier(), declare.primaryToken(), expr);
+            }
+            case DeclareStatement declare -> {
+                NodeExpr expr = fold(declare.expr());
+                yield expr == declare.expr() ? declare : new DeclareStatement(declare.identifier(), declare.primaryToken(), expr);
+            }
+            case IncrementStatement increment -> increment;
+            case AssignStatement assign -> {
+                NodeExpr expr = fold(assign.expr());
+                yield expr == assign.expr() ? assign : new AssignStatement(assign.identifier(), assign.primaryToken(), expr);
+            }
+            case IfStatement ifStmt -> {
+                NodeExpr condition = fold(ifStmt.getCondition());
+                HeliumStatement thenStatement = branch(ifStmt.thenStatement(), ifStmt.token);
+                HeliumStatement elseStatement = ifStmt.hasElse() ? branch(ifStmt.elseStatement(), ifStmt.elseToken()) : null;
+
+                if (condition instanceof BoolPrimitive bool) {
+                    HeliumStatement taken = bool.getValue() ? thenStatement : elseStatement;
+
+                    //An empty return only stops a function from the top of its body, so it can't be taken out of the if
+                    if (!(taken instanceof ReturnStatement ret && ret.empty)) {
+                        simplifiedStatements++;
+                        yield taken;
+                    }
+                }
+
+                if (condition == ifStmt.getCondition() && thenStatement == ifStmt.thenStatement() && elseStatement == (ifStmt.hasElse() ? ifStmt.elseStatement() : null))
+                    yield ifStmt;
+
+                yield ifStmt.hasElse()
+                        ? new IfStatement(ifStmt.token, condition, thenStatement, ifStmt.elseToken(), elseStatement)
+                        : new IfStatement(ifStmt.token, condition, thenStatement);
+            }
+            case WhileStatement whileStmt -> {
+                NodeExpr condition = fold(whileStmt.condition());
+
+                if (condition instanceof BoolPrimitive bool && !bool.getValue()) {
+                    simplifiedStatements++;
+                    yield null;
+                }
+
+                HeliumStatement body = branch(whileStmt.statement(), whileStmt.token);
+
+                yield condition == whileStmt.condition() && body == whileStmt.statement()
+                        ? whileStmt
+                        : new WhileStatement(whileStmt.token, condition, body);
+            }
+            case ForStatement forStmt -> {
+                HeliumStatement assigner = branch(forStmt.getAssigner(), forStmt.token);
+                NodeExpr condition = fold(forStmt.condition());
+                HeliumStatement incrementer = branch(forStmt.getIncrementer(), forStmt.token);
+                HeliumStatement body = branch(forStmt.statement(), forStmt.token);
+
+                yield assigner == forStmt.getAssigner() && condition == forStmt.condition() && incrementer == forStmt.getIncrementer() && body == forStmt.statement()
+                        ? forStmt
+                        : new ForStatement(forStmt.token, assigner, condition, incrementer, body);
+            }
+            case FunctionCallStatement call -> {
+                List<NodeExpr> args = foldExprs(call.args);
+                if (args == call.args) yield call;
+
+                FunctionCallStatement folded = new FunctionCallStatement(call.name, args);
+                if (call.target() != null) folded.bind(call.target());
+                yield folded;
+            }
+            case ReturnStatement ret -> {
+                if (ret.empty) yield ret;
+
+                NodeExpr expr = fold(ret.expr());
+                yield expr == ret.expr() ? ret : new ReturnStatement(ret.token, expr);
+            }
+            case ExitStatement exit -> {
+                NodeExpr expr = fold(exit.expr());
+                yield expr == exit.expr() ? exit : new ExitStatement(exit.token, expr);
+            }
+            default -> statement;
+        };
+    }
+
+    /**
+     * Folds a statement which has to stay there, like the body of a loop, so if it doesn't do anything anymore it turns
+     * into an empty scope
+     */
+    private HeliumStatement branch(HeliumStatement statement, Token token) {
+        HeliumStatement folded = fold(statement);
+        return folded != null ? folded : new ScopeStatement(List.of(), token);
+    }
+
+    private List<NodeExpr> foldExprs(List<NodeExpr> exprs) {
+        List<NodeExpr> folded = null;
+
+        for (int i = 0; i < exprs.size(); i++) {
+            NodeExpr expr = exprs.get(i);
+            NodeExpr result = fold(expr);
+
+            if (result != expr && folded == null) folded = new ArrayList<>(exprs.subList(0, i));
+            if (folded != null) folded.add(result);
+        }
+
+        return folded == null ? exprs : folded;
+    }
+
+    private NodeExpr fold(NodeExpr expr) {
+        return switch (expr) {
+            case UnaryOperator unOp -> {
+                NodeExpr operand = fold(unOp.operand());
+
+                NodeExpr result = operand instanceof NodePrimitive value ? evaluate(unOp.type(), value) : null;
+                if (result != null) {
+                    foldedExpressions++;
+                    yield share(result);
+                }
+
+                result = simplify(unOp.type(), operand);
+                if (result != null) {
+                    simplifiedExpressions++;
+                    yield result;
+                }
+
+                yield operand == unOp.operand() ? unOp : share(new UnaryOperator(unOp.type(), operand));
+            }
+            case BinaryOperator binOp -> {
+                NodeExpr left = fold(binOp.left());
+                NodeExpr right = fold(binOp.right());
+
+                NodeExpr result = evaluate(binOp.type(), left, right);
+                if (result != null) {
+                    foldedExpressions++;
+                    yield share(result);
+                }
+
+                result = simplify(binOp.type(), left, right);
+                if (result != null) {
+                    simplifiedExpressions++;
+                    yield share(result);
+                }
+
+                yield left == binOp.left() && right == binOp.right() ? binOp : share(new BinaryOperator(left, binOp.type(), right));
+            }
+            case FuncCallExpr call -> {
+                List<NodeExpr> args = foldExprs(call.arguments);
+                if (args == call.arguments) yield call;
+
+                FuncCallExpr folded = new FuncCallExpr(call.token);
+                for (NodeExpr arg : args) folded.appendArgument(arg);
+
+                //The binding has to go on whichever node it ends up being, in case it was already there
+                FuncCallExpr shared = (FuncCallExpr) share(folded);
+                if (call.target() != null) shared.bind(call.target());
+                yield shared;
+            }
+            default -> expr;
+        };
+    }
+
+    /**
+     * The value of a unary operator on a constant, or {@code null} if the interpreter would throw an error for it
+     */
+    private static NodePrimitive evaluate(OperatorType type, NodePrimitive operand) {
+        return switch (type) {
+            case NOT -> operand instanceof BoolPrimitive bool ? BoolPrimitive.of(!bool.getValue()) : null;
+            case INCREMENT -> operand instanceof IntPrimitive intP ? IntPrimitive.of(intP.getValue() + 1) : null;
+            case DECREMENT -> operand instanceof IntPrimitive intP ? IntPrimitive.of(intP.getValue() - 1) : null;
+            case POSITIVE -> operand instanceof BoolPrimitive ? null : operand;
+            case NEGATIVE -> switch (operand) {
+                case IntPrimitive intP -> IntPrimitive.of(-intP.getValue());
+                case FloatPrimitive floatP -> FloatPrimitive.of(-floatP.getValue());
+                case CharPrimitive charP -> CharPrimitive.of((char) -charP.getValue());
+                case BoolPrimitive _ -> null;
+            };
+            default -> null;
+        };
+    }
+
+    /**
+     * The value of a binary operator, if it can be worked out without knowing the values of any variables, or
+     * {@code null} if it can't or if the interpreter would throw an error for it
+     */
+    private static NodePrimitive evaluate(OperatorType type, NodeExpr left, NodeExpr right) {
+        //Only needs the left side, since the right side never gets evaluated
+        if (type == OperatorType.AND && left instanceof BoolPrimitive leftB && !leftB.getValue())
+            return BoolPrimitive.of(false);
+        if (type == OperatorType.OR && left instanceof BoolPrimitive leftB && leftB.getValue())
+            return BoolPrimitive.of(true);
+
+        if (!(left instanceof NodePrimitive leftP) || !(right instanceof NodePrimitive rightP)) return null;
+
+        return switch (type) {
+            case SUM -> arithmetic(leftP, rightP, Double::sum, Long::sum);
+            case DIFFERENCE -> arithmetic(leftP, rightP, (d1, d2) -> d1 - d2, (l1, l2) -> l1 - l2);
+            case PRODUCT -> arithmetic(leftP, rightP, (d1, d2) -> d1 * d2, (l1, l2) -> l1 * l2);
+            //Would throw an ArithmeticException
+            case QUOTIENT -> isZero(rightP) ? null : arithmetic(leftP, rightP, (d1, d2) -> d1 / d2, (l1, l2) -> l1 / l2);
+            case REMAINDER -> isZero(rightP) ? null : arithmetic(leftP, rightP, (d1, d2) -> d1 % d2, (l1, l2) -> l1 % l2);
+            case EXPONENT -> arithmetic(leftP, rightP, Math::pow, (l1, l2) -> (long) Math.pow(l1, l2));
+
+            case EQUAL, DIFFERENT, LESS, GREATER, LESS_EQ, GREATER_EQ -> {
+                Integer comparison = switch (leftP) {
+                    case FloatPrimitive leftF when rightP instanceof FloatPrimitive rightF ->
+                            Double.compare(leftF.getValue(), rightF.getValue());
+                    case IntPrimitive leftI when rightP instanceof IntPrimitive rightI ->
+                            Long.compare(leftI.getValue(), rightI.getValue());
+                    case CharPrimitive leftC when rightP instanceof CharPrimitive rightC ->
+                            Character.compare(leftC.getValue(), rightC.getValue());
+                    case BoolPrimitive leftB when rightP instanceof BoolPrimitive rightB ->
+                            Boolean.compare(leftB.getValue(), rightB.getValue());
+                    default -> null;
+                };
+
+                if (comparison == null) yield null;
+
+                yield BoolPrimitive.of(switch (type) {
+                    case EQUAL -> comparison == 0;
+                    case DIFFERENT -> comparison != 0;
+                    case LESS -> comparison < 0;
+                    case GREATER -> comparison > 0;
+                    case LESS_EQ -> comparison <= 0;
+                    default -> comparison >= 0;
+                });
+            }
+
+            //The left side has to be true for AND, or false for OR, by now
+            case AND, OR -> leftP instanceof BoolPrimitive && rightP instanceof BoolPrimitive rightB ? rightB : null;
+            default -> null;
+        };
+    }
+
+    private static NodePrimitive arithmetic(NodePrimitive left, NodePrimitive right, DoubleBinaryOperator dbop, LongBinaryOperator lbop) {
+        return switch (left) {
+            case FloatPrimitive leftF when right instanceof FloatPrimitive rightF ->
+                    FloatPrimitive.of(dbop.applyAsDouble(leftF.getValue(), rightF.getValue()));
+            case IntPrimitive leftI when right instanceof IntPrimitive rightI ->
+                    IntPrimitive.of(lbop.applyAsLong(leftI.getValue(), rightI.getValue()));
+            case CharPrimitive leftC when right instanceof CharPrimitive rightC ->
+                    CharPrimitive.of((char) lbop.applyAsLong(leftC.getValue(), rightC.getValue()));
+            default -> null;
+        };
+    }
+
+    /**
+     * Simplifies a unary operator on something that isn't constant, or gives back {@code null}
+     */
+    private NodeExpr simplify(OperatorType type, NodeExpr operand) {
+        if (!typed) return null;
+
+        return switch (type) {
+            //Which has to be a bool
+            case NOT -> operand instanceof UnaryOperator inner && inner.type() == OperatorType.NOT ? inner.operand() : null;
+            //Which has to be a number, and + doesn't do anything to numbers
+            case POSITIVE -> operand;
+            default -> null;
+        };
+    }
+
+    /**
+     * Simplifies a binary operator where one side is a constant that doesn't change the other side, or which decides the
+     * result no matter what the other side is, or gives back {@code null}. The other side has the same type as the
+     * constant, since the program has been type checked
+     */
+    private NodeExpr simplify(OperatorType type, NodeExpr left, NodeExpr right) {
+        if (!typed) return null;
+
+        if (right instanceof NodePrimitive constant) {
+            NodeExpr result = switch (type) {
+                //x + 0.0 isn't x when x is -0.0, but x + -0.0 and x - 0.0 always are
+                case SUM -> isExactly(constant, 0) || isFloatZero(constant, true) ? left : null;
+                case DIFFERENCE -> isExactly(constant, 0) || isFloatZero(constant, false) ? left : null;
+                case PRODUCT, QUOTIENT -> isExactly(constant, 1) ? left : null;
+                case EXPONENT -> {
+                    if (constant instanceof FloatPrimitive exponent) {
+                        if (exponent.getValue() == 1) yield left;
+                        //Math.pow gives exactly the same as multiplying for this
+                        if (exponent.getValue() == 2 && (left instanceof NodeIdentifier || left instanceof NodePrimitive))
+                            yield new BinaryOperator(left, OperatorType.PRODUCT, left);
+                    }
+                    //Anything to the power of 0 is 1, even NaN
+                    yield (isExactly(constant, 0) || constant instanceof FloatPrimitive f && f.getValue() == 0) && cannotFail(left) ? sameTypeAs(constant, 1) : null;
+                }
+                case AND -> constant instanceof BoolPrimitive bool ? (bool.getValue() ? left : cannotFail(left) ? constant : null) : null;
+                case OR -> constant instanceof BoolPrimitive bool ? (bool.getValue() ? (cannotFail(left) ? constant : null) : left) : null;
+                default -> null;
+            };
+
+            if (result != null) return result;
+
+            //Anything times 0 is 0, and anything mod 1 is 0, as long as it's not a float
+            if (cannotFail(left) && (type == OperatorType.PRODUCT && isExactly(constant, 0) || type == OperatorType.REMAINDER && isExactly(constant, 1)
+                    && !(constant instanceof FloatPrimitive)))
+                return sameTypeAs(constant, 0);
+        }
+
+        if (left instanceof NodePrimitive constant) {
+            return switch (type) {
+                case SUM -> isExactly(constant, 0) || isFloatZero(constant, true) ? right : null;
+                case PRODUCT -> {
+                    if (isExactly(constant, 1)) yield right;
+                    yield isExactly(constant, 0) && cannotFail(right) ? constant : null;
+                }
+                //False && and true || were already folded
+                case AND, OR -> constant instanceof BoolPrimitive ? right : null;
+                default -> null;
+            };
+        }
+
+        return null;
+    }
+
+    /**
+     * Whether a number is exactly this. Float zeros never count, since which zero it is matters, and {@code 0.0 * x}
+     * isn't always {@code 0.0} either
+     */
+    private static boolean isExactly(NodePrimitive constant, long value) {
+        return switch (constant) {
+            case IntPrimitive intP -> intP.getValue() == value;
+            case CharPrimitive charP -> charP.getValue() == value;
+            case FloatPrimitive floatP -> value != 0 && floatP.getValue() == value;
+            case BoolPrimitive _ -> false;
+        };
+    }
+
+    private static boolean isFloatZero(NodePrimitive constant, boolean negative) {
+        return constant instanceof FloatPrimitive floatP && Double.doubleToRawLongBits(floatP.getValue()) == Double.doubleToRawLongBits(negative ? -0.0 : 0.0);
+    }
+
+    private static boolean isZero(NodePrimitive constant) {
+        return switch (constant) {
+            case IntPrimitive intP -> intP.getValue() == 0;
+            case CharPrimitive charP -> charP.getValue() == 0;
+            default -> false;
+        };
+    }
+
+    private static NodePrimitive sameTypeAs(NodePrimitive constant, long value) {
+        return switch (constant) {
+            case FloatPrimitive _ -> FloatPrimitive.of(value);
+            case CharPrimitive _ -> CharPrimitive.of((char) value);
+            default -> IntPrimitive.of(value);
+        };
+    }
+
+    private NodeExpr share(NodeExpr expr) {
+        return program.nodes.share(expr);
+    }
+}
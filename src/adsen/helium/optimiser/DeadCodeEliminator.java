@@ -0,0 +1,261 @@
+package adsen.helium.optimiser;
+
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.HeliumProgram;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.AssignStatement;
+import adsen.helium.parser.statement.atomic.BreakStatement;
+import adsen.helium.parser.statement.atomic.ContinueStatement;
+import adsen.helium.parser.statement.atomic.DeclareStatement;
+import adsen.helium.parser.statement.atomic.ExitStatement;
+import adsen.helium.parser.statement.atomic.FunctionCallStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.tokeniser.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+import static adsen.helium.exec.Scope.MAIN_FUNCTION;
+import static adsen.helium.optimiser.Trees.cannotFail;
+import static adsen.helium.optimiser.Trees.size;
+
+/**
+ * Takes out whatever in a program can never run or never makes a difference. Best run after the
+ * {@link ConstantFolder}, since that's what gets rid of {@code if}s with constant conditions.
+ * <p>
+ * Anything after a statement which always stops the statements around it gets taken out. That's a {@code return} with
+ * a value, an {@code exit}, a {@code break} or {@code continue} (which either stop the scope they're in, or error), and
+ * any {@code if} or scope which always does one of those. An empty {@code return} only stops a function when it's at the
+ * top of the body of a void function, anywhere else the interpreter just carries on, so that's the only place it counts.
+ * Empty scopes get taken out too.
+ * <p>
+ * Once a program has been type checked, variables which never get read are taken out as well, with every declaration
+ * and assignment of them, as long as none of those could call a function or divide by 0. Variables declared right in
+ * the body of {@code main} are left alone, since those get printed out at the end.
+ */
+public class DeadCodeEliminator {
+    private final HeliumProgram program;
+    private final boolean typed;
+
+    private int removedNodes = 0;
+
+    /**
+     * Variables which can be taken out of the function being looked at
+     */
+    private Set<String> deadVariables = Set.of();
+
+    public DeadCodeEliminator(HeliumProgram program) {
+        this.program = program;
+        this.typed = program.isTypeChecked();
+    }
+
+    public void run() {
+        for (HeliumFunction function : program.getFunctions()) {
+            //Since the interpreter carries on after an empty return at the top of main, or of anything called in an expression
+            boolean returnStops = function.returnType.type == TokenType.VOID && !function.name.equals(MAIN_FUNCTION);
+
+            List<HeliumStatement> body = sweep(function.getBody(), returnStops);
+
+            if (typed) {
+                deadVariables = deadVariables(function, body);
+                if (!deadVariables.isEmpty()) body = sweep(body, returnStops);
+                deadVariables = Set.of();
+            }
+
+            if (body != function.getBody()) {
+                removedNodes += size(function.getBody()) - size(body);
+                function.replaceBody(body);
+            }
+        }
+
+        if (VERBOSE_FLAGS.contains("parser"))
+            System.out.println("Removed " + removedNodes + " dead nodes");
+    }
+
+    /**
+     * Sweeps a list of statements, giving back the same list if nothing changed
+     *
+     * @param returnStops Whether this is the body of a function where an empty return stops it
+     */
+    private List<HeliumStatement> sweep(List<HeliumStatement> statements, boolean returnStops) {
+        List<HeliumStatement> swept = null;
+
+        for (int i = 0; i < statements.size(); i++) {
+            HeliumStatement statement = statements.get(i);
+            HeliumStatement result = sweep(statement);
+
+            if (result != statement && swept == null) swept = new ArrayList<>(statements.subList(0, i));
+            if (swept != null && result != null) swept.add(result);
+
+            if (result != null && stops(result, returnStops)) {
+                if (i + 1 < statements.size() && swept == null) swept = new ArrayList<>(statements.subList(0, i + 1));
+                break;
+            }
+        }
+
+        return swept == null ? statements : swept;
+    }
+
+    /**
+     * Sweeps a statement, giving back {@code null} if it can be taken out
+     */
+    private HeliumStatement sweep(HeliumStatement statement) {
+        return switch (statement) {
+            case ScopeStatement scope -> {
+                List<HeliumStatement> statements = sweep(scope.statements, false);
+                //Loop bodies can't just be taken out, but any other empty scope does nothing
+                if (statements.isEmpty() && !scope.isLoop()) yield null;
+                if (statements == scope.statements) yield scope;
+
+                ScopeStatement swept = new ScopeStatement(statements, scope.name, scope.token);
+                yield scope.isLoop() ? swept.asLoop() : swept;
+            }
+            case DeclareStatement declare -> deadVariables.contains(declare.identifier().asString()) ? null : declare;
+            case AssignStatement assign -> deadVariables.contains(assign.identifier().asString()) ? null : assign;
+            case IfStatement ifStmt -> {
+                HeliumStatement thenStatement = branch(ifStmt.thenStatement());
+                HeliumStatement elseStatement = ifStmt.hasElse() ? branch(ifStmt.elseStatement()) : null;
+
+                if (isEmpty(thenStatement) && (elseStatement == null || isEmpty(elseStatement)) && typed && cannotFail(ifStmt.getCondition()))
+                    yield null;
+
+                if (thenStatement == ifStmt.thenStatement() && elseStatement == (ifStmt.hasElse() ? ifStmt.elseStatement() : null))
+                    yield ifStmt;
+
+                yield ifStmt.hasElse()
+                        ? new IfStatement(ifStmt.token, ifStmt.getCondition(), thenStatement, ifStmt.elseToken(), elseStatement)
+                        : new IfStatement(ifStmt.token, ifStmt.getCondition(), thenStatement);
+            }
+            case WhileStatement whileStmt -> {
+                HeliumStatement body = branch(whileStmt.statement());
+                yield body == whileStmt.statement() ? whileStmt : new WhileStatement(whileStmt.token, whileStmt.condition(), body);
+            }
+            //The assigner and incrementer are left alone, since they're never dead if anything reads the loop variable
+            case ForStatement forStmt -> {
+                HeliumStatement body = branch(forStmt.statement());
+                yield body == forStmt.statement()
+                        ? forStmt
+                        : new ForStatement(forStmt.token, forStmt.getAssigner(), forStmt.condition(), forStmt.getIncrementer(), body);
+            }
+            default -> statement;
+        };
+    }
+
+    /**
+     * Sweeps a statement which has to stay there, like the body of a loop, so if it can be taken out it turns into an
+     * empty scope instead
+     */
+    private HeliumStatement branch(HeliumStatement statement) {
+        HeliumStatement swept = sweep(statement);
+        return swept != null ? swept : new ScopeStatement(List.of(), statement.primaryToken());
+    }
+
+    private static boolean isEmpty(HeliumStatement statement) {
+        return statement instanceof ScopeStatement scope && scope.statements.isEmpty();
+    }
+
+    /**
+     * Whether nothing after this statement will run, in the list of statements it's in
+     */
+    private static boolean stops(HeliumStatement statement, boolean returnStops) {
+        return switch (statement) {
+            case ReturnStatement ret -> !ret.empty || returnStops;
+            case ExitStatement _, BreakStatement _, ContinueStatement _ -> true;
+            //Anything after the statement that stops it has already been taken out
+            case ScopeStatement scope -> !scope.isLoop() && !scope.statements.isEmpty() && stops(scope.statements.getLast(), false);
+            case IfStatement ifStmt ->
+                    ifStmt.hasElse() && stops(ifStmt.thenStatement(), false) && stops(ifStmt.elseStatement(), false);
+            default -> false;
+        };
+    }
+
+    /**
+     * Variables in a function which never get read, and which are only ever declared or assigned to in lists of
+     * statements, with expressions that can't fail
+     */
+    private static Set<String> deadVariables(HeliumFunction function, List<HeliumStatement> body) {
+        Set<String> written = new HashSet<>();
+        Set<String> live = new HashSet<>();
+
+        for (HeliumStatement statement : body) {
+            collect(statement, true, written, live);
+
+            if (function.name.equals(MAIN_FUNCTION) && statement instanceof DeclareStatement declare)
+                live.add(declare.identifier().asString());
+        }
+
+        written.removeAll(live);
+        return written;
+    }
+
+    private static void collect(HeliumStatement statement, boolean inList, Set<String> written, Set<String> live) {
+        switch (statement) {
+            case DeclareStatement declare -> write(declare.identifier(), declare.expr(), inList, written, live);
+            case AssignStatement assign -> write(assign.identifier(), assign.expr(), inList, written, live);
+            case ScopeStatement scope -> {
+                for (HeliumStatement inner : scope.statements) collect(inner, true, written, live);
+            }
+            case IfStatement ifStmt -> {
+                collect(ifStmt.getCondition(), live);
+                collect(ifStmt.thenStatement(), false, written, live);
+                if (ifStmt.hasElse()) collect(ifStmt.elseStatement(), false, written, live);
+            }
+            case WhileStatement whileStmt -> {
+                collect(whileStmt.condition(), live);
+                collect(whileStmt.statement(), false, written, live);
+            }
+            case ForStatement forStmt -> {
+                collect(forStmt.getAssigner(), false, written, live);
+                collect(forStmt.condition(), live);
+                collect(forStmt.getIncrementer(), false, written, live);
+                collect(forStmt.statement(), false, written, live);
+            }
+            case FunctionCallStatement call -> {
+                for (NodeExpr arg : call.args) collect(arg, live);
+            }
+            case ReturnStatement ret -> {
+                if (!ret.empty) collect(ret.expr(), live);
+            }
+            case ExitStatement exit -> collect(exit.expr(), live);
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * @param expr {@code null} for increments
+     */
+    private static void write(NodeIdentifier identifier, NodeExpr expr, boolean inList, Set<String> written, Set<String> live) {
+        written.add(identifier.asString());
+        if (!inList || expr != null && !cannotFail(expr)) live.add(identifier.asString());
+        if (expr != null) collect(expr, live);
+    }
+
+    private static void collect(NodeExpr expr, Set<String> live) {
+        switch (expr) {
+            case NodeIdentifier identifier -> live.add(identifier.asString());
+            case UnaryOperator unOp -> collect(unOp.operand(), live);
+            case BinaryOperator binOp -> {
+                collect(binOp.left(), live);
+                collect(binOp.right(), live);
+            }
+            case FuncCallExpr call -> {
+                for (NodeExpr arg : call.arguments) collect(arg, live);
+            }
+            default -> {
+            }
+        }
+    }
+}
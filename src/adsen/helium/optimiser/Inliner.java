@@ -0,0 +1,455 @@
+package adsen.helium.optimiser;
+
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.HeliumProgram;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.expr.primitives.NodePrimitive;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.BreakStatement;
+import adsen.helium.parser.statement.atomic.ContinueStatement;
+import adsen.helium.parser.statement.atomic.DeclareStatement;
+import adsen.helium.parser.statement.atomic.ExitStatement;
+import adsen.helium.parser.statement.atomic.FunctionCallStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.TokenType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+import static adsen.helium.optimiser.Trees.cannotFail;
+import static adsen.helium.optimiser.Trees.size;
+
+/**
+ * Copies the bodies of small functions into the places they're called from, so they don't need a scope of their own
+ * every time. Only runs once a program has been type checked, since calls have to be bound to know what they call.
+ * <p>
+ * A function can be inlined if it doesn't call itself (even through other functions), its body is no bigger than
+ * {@link Inliner#BUDGET} nodes, it only returns at the very end, and it has no {@code exit}, or {@code break} or
+ * {@code continue} outside of a loop. Functions are done after the ones they call, so whatever they inline gets
+ * inlined along with them.
+ * <p>
+ * A call on its own as a statement becomes a scope which declares the arguments and then runs the body, with every
+ * variable in it renamed to a new temporary so that nothing clashes with the variables around it. A call in an
+ * expression can only be inlined if the function is just some declarations and a return, so it can be turned into one
+ * expression. Arguments get put in place of the parameters, as long as that doesn't change anything, so they have to
+ * be variables or constants, or not be able to fail and either be used once or be small enough to work out twice.
+ */
+public class Inliner {
+    /**
+     * Biggest a function's body can be (in nodes, see {@link Trees#size}) for it to be inlined. Set with
+     * {@code -inline=<budget>}, and {@code 0} turns inlining off
+     */
+    public static int BUDGET = 16;
+
+    private final HeliumProgram program;
+
+    /**
+     * Whether each function has been done yet, which is {@code false} while it's still being done
+     */
+    private final Map<HeliumFunction, Boolean> done = new IdentityHashMap<>();
+    private final Map<HeliumFunction, Decision> decisions = new IdentityHashMap<>();
+    /**
+     * Functions which have been called, in the order they were first seen, with how many times each one was inlined
+     * and how many times it was called
+     */
+    private final Map<HeliumFunction, int[]> calls = new LinkedHashMap<>();
+
+    public Inliner(HeliumProgram program) {
+        this.program = program;
+    }
+
+    public void run() {
+        if (!program.isTypeChecked() || BUDGET <= 0) return;
+
+        for (HeliumFunction function : program.getFunctions()) inline(function);
+
+        if (VERBOSE_FLAGS.contains("parser")) {
+            int inlined = 0;
+
+            for (Map.Entry<HeliumFunction, int[]> entry : calls.entrySet()) {
+                HeliumFunction function = entry.getKey();
+                //Functions can be overloaded, so the name's not enough
+                String name = function.name + "(" + String.join(", ", function.getTypeSignature()) + ")";
+                int[] count = entry.getValue();
+                String reason = decisions.get(function).reason;
+
+                if (reason != null) System.out.println("Not inlining " + name + ", since " + reason);
+                else System.out.println("Inlined " + name + " into " + count[0] + " of " + count[1] + " calls");
+
+                inlined += count[0];
+            }
+            System.out.println("Inlined " + inlined + " calls");
+        }
+    }
+
+    private void inline(HeliumFunction function) {
+        if (done.containsKey(function)) return;
+        done.put(function, false);
+
+        for (HeliumFunction callee : callees(function)) inline(callee);
+
+        List<HeliumStatement> body = inlineAll(Trees.mapExprs(function.getBody(), this::inline));
+        if (body != function.getBody()) function.replaceBody(body);
+
+        done.put(function, true);
+    }
+
+    private List<HeliumStatement> inlineAll(List<HeliumStatement> statements) {
+        List<HeliumStatement> inlined = null;
+
+        for (int i = 0; i < statements.size(); i++) {
+            HeliumStatement statement = statements.get(i);
+            HeliumStatement result = inline(statement);
+
+            if (result != statement && inlined == null) inlined = new ArrayList<>(statements.subList(0, i));
+            if (inlined != null) inlined.add(result);
+        }
+
+        return inlined == null ? statements : inlined;
+    }
+
+    /**
+     * Inlines calls which are statements, since calls in expressions have already been done by then
+     */
+    private HeliumStatement inline(HeliumStatement statement) {
+        return switch (statement) {
+            case FunctionCallStatement call -> {
+                Decision decision = decide(call.target());
+                if (decision == null) yield call;
+
+                calls.get(call.target())[1]++;
+                if (decision.reason != null) yield call;
+
+                calls.get(call.target())[0]++;
+                yield inlineCall(call.target(), call.args, call.name);
+            }
+            case ScopeStatement scope -> {
+                List<HeliumStatement> statements = inlineAll(scope.statements);
+                if (statements == scope.statements) yield scope;
+
+                ScopeStatement inlined = new ScopeStatement(statements, scope.name, scope.token);
+                yield scope.isLoop() ? inlined.asLoop() : inlined;
+            }
+            case IfStatement ifStmt -> {
+                HeliumStatement thenStatement = inline(ifStmt.thenStatement());
+                HeliumStatement elseStatement = ifStmt.hasElse() ? inline(ifStmt.elseStatement()) : null;
+
+                if (thenStatement == ifStmt.thenStatement() && elseStatement == (ifStmt.hasElse() ? ifStmt.elseStatement() : null))
+                    yield ifStmt;
+
+                yield ifStmt.hasElse()
+                        ? new IfStatement(ifStmt.token, ifStmt.getCondition(), thenStatement, ifStmt.elseToken(), elseStatement)
+                        : new IfStatement(ifStmt.token, ifStmt.getCondition(), thenStatement);
+            }
+            case WhileStatement whileStmt -> {
+                HeliumStatement body = inline(whileStmt.statement());
+                yield body == whileStmt.statement() ? whileStmt : new WhileStatement(whileStmt.token, whileStmt.condition(), body);
+            }
+            case ForStatement forStmt -> {
+                HeliumStatement body = inline(forStmt.statement());
+                yield body == forStmt.statement()
+                        ? forStmt
+                        : new ForStatement(forStmt.token, forStmt.getAssigner(), forStmt.condition(), forStmt.getIncrementer(), body);
+            }
+            default -> statement;
+        };
+    }
+
+    /**
+     * The body of a function as a scope, which declares its arguments first, and has every variable renamed
+     */
+    private ScopeStatement inlineCall(HeliumFunction function, List<NodeExpr> args, Token token) {
+        Map<Integer, NodeIdentifier> renamed = new HashMap<>();
+        List<HeliumStatement> statements = new ArrayList<>();
+
+        List<Token> signature = function.getSignature();
+        for (int i = 0; i < args.size(); i++) {
+            Token parameter = signature.get(2 * i + 1);
+            NodeIdentifier temp = Trees.temp(program, parameter.value());
+
+            renamed.put(parameter.symbol, temp);
+            statements.add(Trees.declare(temp, args.get(i)));
+        }
+
+        for (HeliumStatement statement : function.getBody()) {
+            if (statement instanceof ReturnStatement ret) {
+                //Which is always the last one, and the value is thrown away
+                if (!ret.empty) statements.add(Trees.declare(Trees.temp(program, "ret"), Trees.rename(program, ret.expr(), renamed)));
+            } else {
+                statements.add(Trees.rename(program, statement, renamed));
+            }
+        }
+
+        return new ScopeStatement(statements, token);
+    }
+
+    /**
+     * Inlines calls in an expression, starting with the innermost ones
+     */
+    private NodeExpr inline(NodeExpr expr) {
+        return switch (expr) {
+            case UnaryOperator unOp -> {
+                NodeExpr operand = inline(unOp.operand());
+                yield operand == unOp.operand() ? unOp : program.nodes.share(new UnaryOperator(unOp.type(), operand));
+            }
+            case BinaryOperator binOp -> {
+                NodeExpr left = inline(binOp.left());
+                NodeExpr right = inline(binOp.right());
+                yield left == binOp.left() && right == binOp.right() ? binOp : program.nodes.share(new BinaryOperator(left, binOp.type(), right));
+            }
+            case FuncCallExpr call -> {
+                List<NodeExpr> args = new ArrayList<>(call.arguments);
+                args.replaceAll(this::inline);
+
+                Decision decision = decide(call.target());
+                if (decision != null) {
+                    calls.get(call.target())[1]++;
+
+                    NodeExpr inlined = decision.reason == null && decision.expression != null ? substitute(decision, args) : null;
+                    if (inlined != null) {
+                        calls.get(call.target())[0]++;
+                        yield inlined;
+                    }
+                }
+
+                if (args.equals(call.arguments)) yield call;
+
+                FuncCallExpr replaced = new FuncCallExpr(call.token);
+                for (NodeExpr arg : args) replaced.appendArgument(arg);
+
+                FuncCallExpr shared = (FuncCallExpr) program.nodes.share(replaced);
+                if (call.target() != null) shared.bind(call.target());
+                yield shared;
+            }
+            default -> expr;
+        };
+    }
+
+    /**
+     * A function's expression with the arguments in place of the parameters, or {@code null} if that would change what
+     * gets evaluated
+     */
+    private NodeExpr substitute(Decision decision, List<NodeExpr> args) {
+        Map<Integer, NodeExpr> values = new HashMap<>();
+
+        for (int i = 0; i < args.size(); i++) {
+            int parameter = decision.parameters.get(i);
+            if (!canSubstitute(args.get(i), uses(decision.expression, parameter))) return null;
+            values.put(parameter, args.get(i));
+        }
+
+        return Trees.substitute(program, decision.expression, values);
+    }
+
+    /**
+     * Whether an expression can be put in place of a variable it's assigned to, which is used this many times. If it
+     * could fail it can't be moved at all, and if it's used more than once, it has to be small enough that working it
+     * out again is still cheaper than a call
+     */
+    private static boolean canSubstitute(NodeExpr expr, int uses) {
+        if (expr instanceof NodeIdentifier || expr instanceof NodePrimitive) return true;
+        return cannotFail(expr) && (uses <= 1 || size(expr) <= 3);
+    }
+
+    /**
+     * Whether a function can be inlined, and how, or {@code null} if it's not known what gets called
+     */
+    private Decision decide(HeliumFunction function) {
+        if (function == null) return null;
+
+        calls.computeIfAbsent(function, f -> new int[2]);
+        return decisions.computeIfAbsent(function, this::decision);
+    }
+
+    private Decision decision(HeliumFunction function) {
+        //It's still being done, which means it calls whatever's calling it
+        if (done.get(function) != Boolean.TRUE || calls(function, function, new HashSet<>()))
+            return Decision.not("it's recursive");
+
+        List<HeliumStatement> body = function.getBody();
+
+        int size = size(body);
+        if (size > BUDGET) return Decision.not("its size of " + size + " is over the budget of " + BUDGET);
+
+        if (escapes(body, false)) return Decision.not("it has an exit, or a break or continue outside of a loop");
+
+        int returns = 0;
+        for (HeliumStatement statement : body) returns += returns(statement);
+
+        boolean isVoid = function.returnType.type == TokenType.VOID;
+        boolean endsInReturn = !body.isEmpty() && body.getLast() instanceof ReturnStatement;
+        if (isVoid ? returns > 1 || returns == 1 && !endsInReturn : returns != 1 || !endsInReturn)
+            return Decision.not("it doesn't only return at the end");
+
+        List<Integer> parameters = new ArrayList<>();
+        List<Token> signature = function.getSignature();
+        for (int i = 1; i < signature.size(); i += 2) parameters.add(signature.get(i).symbol);
+
+        return new Decision(null, isVoid ? null : asExpression(body), parameters);
+    }
+
+    /**
+     * A function's body as one expression, if it's only declarations and then a return, and the declarations can be put
+     * in place of the variables they declare, or {@code null}
+     */
+    private NodeExpr asExpression(List<HeliumStatement> body) {
+        for (HeliumStatement statement : body.subList(0, body.size() - 1)) {
+            if (!(statement instanceof DeclareStatement)) return null;
+        }
+
+        Map<Integer, NodeExpr> values = new HashMap<>();
+
+        for (int i = 0; i < body.size() - 1; i++) {
+            DeclareStatement declare = (DeclareStatement) body.get(i);
+            NodeExpr value = Trees.substitute(program, declare.expr(), values);
+
+            int uses = 0;
+            for (HeliumStatement later : body.subList(i + 1, body.size())) {
+                uses += later instanceof DeclareStatement laterDeclare ? uses(laterDeclare.expr(), declare.identifier().symbol)
+                        : uses(((ReturnStatement) later).expr(), declare.identifier().symbol);
+            }
+            if (!canSubstitute(value, uses)) return null;
+
+            values.put(declare.identifier().symbol, value);
+        }
+
+        return Trees.substitute(program, ((ReturnStatement) body.getLast()).expr(), values);
+    }
+
+    private static int uses(NodeExpr expr, int symbol) {
+        return switch (expr) {
+            case NodeIdentifier identifier -> identifier.symbol == symbol ? 1 : 0;
+            case UnaryOperator unOp -> uses(unOp.operand(), symbol);
+            case BinaryOperator binOp -> uses(binOp.left(), symbol) + uses(binOp.right(), symbol);
+            case FuncCallExpr call -> call.arguments.stream().mapToInt(arg -> uses(arg, symbol)).sum();
+            default -> 0;
+        };
+    }
+
+    private static int returns(HeliumStatement statement) {
+        return switch (statement) {
+            case ReturnStatement _ -> 1;
+            case ScopeStatement scope -> scope.statements.stream().mapToInt(Inliner::returns).sum();
+            case IfStatement ifStmt -> returns(ifStmt.thenStatement()) + (ifStmt.hasElse() ? returns(ifStmt.elseStatement()) : 0);
+            case WhileStatement whileStmt -> returns(whileStmt.statement());
+            case ForStatement forStmt -> returns(forStmt.statement());
+            default -> 0;
+        };
+    }
+
+    /**
+     * Whether any of these statements would leave the function some other way than returning, or break out of a loop
+     * around the call once they're inlined
+     */
+    private static boolean escapes(List<HeliumStatement> statements, boolean inLoop) {
+        return statements.stream().anyMatch(statement -> escapes(statement, inLoop));
+    }
+
+    private static boolean escapes(HeliumStatement statement, boolean inLoop) {
+        return switch (statement) {
+            case ExitStatement _ -> true;
+            case BreakStatement _, ContinueStatement _ -> !inLoop;
+            case ScopeStatement scope -> escapes(scope.statements, inLoop);
+            case IfStatement ifStmt -> escapes(ifStmt.thenStatement(), inLoop) || ifStmt.hasElse() && escapes(ifStmt.elseStatement(), inLoop);
+            case WhileStatement whileStmt -> escapes(whileStmt.statement(), true);
+            case ForStatement forStmt -> escapes(forStmt.statement(), true);
+            default -> false;
+        };
+    }
+
+    /**
+     * Functions a function calls, or might call, if a call isn't bound
+     */
+    private Set<HeliumFunction> callees(HeliumFunction function) {
+        Set<HeliumFunction> callees = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<String> unbound = new HashSet<>();
+
+        Trees.mapExprs(function.getBody(), expr -> {
+            collectCallees(expr, callees, unbound);
+            return expr;
+        });
+        collectCallees(function.getBody(), callees, unbound);
+
+        for (HeliumFunction f : program.getFunctions()) {
+            if (unbound.contains(f.name)) callees.add(f);
+        }
+        return callees;
+    }
+
+    private static void collectCallees(NodeExpr expr, Set<HeliumFunction> callees, Set<String> unbound) {
+        switch (expr) {
+            case UnaryOperator unOp -> collectCallees(unOp.operand(), callees, unbound);
+            case BinaryOperator binOp -> {
+                collectCallees(binOp.left(), callees, unbound);
+                collectCallees(binOp.right(), callees, unbound);
+            }
+            case FuncCallExpr call -> {
+                if (call.target() != null) callees.add(call.target());
+                else unbound.add(call.name);
+
+                for (NodeExpr arg : call.arguments) collectCallees(arg, callees, unbound);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static void collectCallees(List<HeliumStatement> statements, Set<HeliumFunction> callees, Set<String> unbound) {
+        for (HeliumStatement statement : statements) {
+            switch (statement) {
+                case FunctionCallStatement call -> {
+                    if (call.target() != null) callees.add(call.target());
+                    else unbound.add(call.name.value());
+                }
+                case ScopeStatement scope -> collectCallees(scope.statements, callees, unbound);
+                case IfStatement ifStmt -> {
+                    collectCallees(List.of(ifStmt.thenStatement()), callees, unbound);
+                    if (ifStmt.hasElse()) collectCallees(List.of(ifStmt.elseStatement()), callees, unbound);
+                }
+                case WhileStatement whileStmt -> collectCallees(List.of(whileStmt.statement()), callees, unbound);
+                case ForStatement forStmt -> collectCallees(List.of(forStmt.statement()), callees, unbound);
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether {@code from} could end up calling {@code to}
+     */
+    private boolean calls(HeliumFunction from, HeliumFunction to, Set<HeliumFunction> seen) {
+        for (HeliumFunction callee : callees(from)) {
+            if (callee == to) return true;
+            if (seen.add(callee) && calls(callee, to, seen)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param reason     Why it can't be inlined, or {@code null} if it can
+     * @param expression The function as one expression, if calls to it in expressions can be inlined
+     * @param parameters Symbols of the function's parameters
+     */
+    private record Decision(String reason, NodeExpr expression, List<Integer> parameters) {
+        static Decision not(String reason) {
+            return new Decision(reason, null, List.of());
+        }
+    }
+}
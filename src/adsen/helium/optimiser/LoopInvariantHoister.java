@@ -0,0 +1,317 @@
+package adsen.helium.optimiser;
+
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.HeliumProgram;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.expr.primitives.BoolPrimitive;
+import adsen.helium.parser.expr.primitives.CharPrimitive;
+import adsen.helium.parser.expr.primitives.FloatPrimitive;
+import adsen.helium.parser.expr.primitives.IntPrimitive;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.AssignStatement;
+import adsen.helium.parser.statement.atomic.DeclareStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.tokeniser.TokenType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+import static adsen.helium.optimiser.Trees.cannotFail;
+import static adsen.helium.optimiser.Trees.mapExprs;
+
+/**
+ * Works out expressions in {@code while} and {@code for} loops that come out the same on every go round, once before
+ * the loop starts instead of every time. Only runs once a program has been type checked, since evaluating something
+ * before the loop means it has to be known not to error.
+ * <p>
+ * An expression can be moved out if none of the variables it reads get declared or assigned anywhere in the loop
+ * (functions can't change the variables of whatever called them, so calls in the loop don't matter), and if it can't
+ * fail, since it gets evaluated even if the loop never runs. Calls are fine too, as long as they're to functions known
+ * to be pure, which is ones with no loops, no statements other than declarations, assignments, {@code if}s and
+ * returns, and only calls to other pure functions, so they always return something and never change anything.
+ * <p>
+ * Each expression gets declared as a temporary (named with a {@code $}, so it can't clash with anything in the
+ * source) in a new scope around the loop, so it goes away once the loop is done. Inner loops are done first, so their
+ * temporaries can get moved further out by the loops around them.
+ */
+public class LoopInvariantHoister {
+    private final HeliumProgram program;
+
+    private final Set<HeliumFunction> pureFunctions = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private int hoistedExpressions = 0;
+    private int hoistedLoops = 0;
+
+    public LoopInvariantHoister(HeliumProgram program) {
+        this.program = program;
+    }
+
+    public void run() {
+        if (program.isTypeChecked()) {
+            findPureFunctions();
+
+            for (HeliumFunction function : program.getFunctions()) {
+                List<HeliumStatement> body = hoistAll(function.getBody());
+                if (body != function.getBody()) function.replaceBody(body);
+            }
+        }
+
+        if (VERBOSE_FLAGS.contains("parser"))
+            System.out.println("Hoisted " + hoistedExpressions + " invariant expressions out of " + hoistedLoops + " loops");
+    }
+
+    private List<HeliumStatement> hoistAll(List<HeliumStatement> statements) {
+        List<HeliumStatement> hoisted = null;
+
+        for (int i = 0; i < statements.size(); i++) {
+            HeliumStatement statement = statements.get(i);
+            HeliumStatement result = hoist(statement);
+
+            if (result != statement && hoisted == null) hoisted = new ArrayList<>(statements.subList(0, i));
+            if (hoisted != null) hoisted.add(result);
+        }
+
+        return hoisted == null ? statements : hoisted;
+    }
+
+    private HeliumStatement hoist(HeliumStatement statement) {
+        return switch (statement) {
+            case ScopeStatement scope -> {
+                List<HeliumStatement> statements = hoistAll(scope.statements);
+                if (statements == scope.statements) yield scope;
+
+                ScopeStatement hoisted = new ScopeStatement(statements, scope.name, scope.token);
+                yield scope.isLoop() ? hoisted.asLoop() : hoisted;
+            }
+            case IfStatement ifStmt -> {
+                HeliumStatement thenStatement = hoist(ifStmt.thenStatement());
+                HeliumStatement elseStatement = ifStmt.hasElse() ? hoist(ifStmt.elseStatement()) : null;
+
+                if (thenStatement == ifStmt.thenStatement() && elseStatement == (ifStmt.hasElse() ? ifStmt.elseStatement() : null))
+                    yield ifStmt;
+
+                yield ifStmt.hasElse()
+                        ? new IfStatement(ifStmt.token, ifStmt.getCondition(), thenStatement, ifStmt.elseToken(), elseStatement)
+                        : new IfStatement(ifStmt.token, ifStmt.getCondition(), thenStatement);
+            }
+            case WhileStatement whileStmt -> {
+                //Inner loops first, which might add temporaries that this one has to count as written
+                HeliumStatement inner = hoist(whileStmt.statement());
+
+                Set<Integer> written = new HashSet<>();
+                writes(inner, written);
+
+                List<DeclareStatement> temps = new ArrayList<>();
+                NodeExpr condition = replace(whileStmt.condition(), written, temps);
+                HeliumStatement body = mapExprs(inner, expr -> replace(expr, written, temps));
+
+                if (condition == whileStmt.condition() && body == whileStmt.statement()) yield whileStmt;
+
+                yield around(new WhileStatement(whileStmt.token, condition, body), temps);
+            }
+            //The assigner only runs once anyway
+            case ForStatement forStmt -> {
+                HeliumStatement inner = hoist(forStmt.statement());
+
+                Set<Integer> written = new HashSet<>();
+                writes(forStmt.getAssigner(), written);
+                writes(forStmt.getIncrementer(), written);
+                writes(inner, written);
+
+                List<DeclareStatement> temps = new ArrayList<>();
+                NodeExpr condition = replace(forStmt.condition(), written, temps);
+                HeliumStatement incrementer = mapExprs(forStmt.getIncrementer(), expr -> replace(expr, written, temps));
+                HeliumStatement body = mapExprs(inner, expr -> replace(expr, written, temps));
+
+                if (condition == forStmt.condition() && incrementer == forStmt.getIncrementer() && body == forStmt.statement())
+                    yield forStmt;
+
+                yield around(new ForStatement(forStmt.token, forStmt.getAssigner(), condition, incrementer, body), temps);
+            }
+            default -> statement;
+        };
+    }
+
+    /**
+     * Puts the temporaries a loop needs in front of it, in a scope of their own so they get cleared after the loop
+     */
+    private HeliumStatement around(HeliumStatement loop, List<DeclareStatement> temps) {
+        if (temps.isEmpty()) return loop;
+
+        hoistedLoops++;
+        hoistedExpressions += temps.size();
+
+        List<HeliumStatement> statements = new ArrayList<>(temps);
+        statements.add(loop);
+        return new ScopeStatement(statements, loop.primaryToken());
+    }
+
+    /**
+     * Swaps the biggest bits of an expression which can be hoisted for temporaries
+     */
+    private NodeExpr replace(NodeExpr expr, Set<Integer> written, List<DeclareStatement> temps) {
+        boolean worthIt = expr instanceof UnaryOperator || expr instanceof BinaryOperator || expr instanceof FuncCallExpr;
+        if (worthIt && isInvariant(expr, written) && cannotFail(expr, pureFunctions)) return temp(expr, temps);
+
+        return switch (expr) {
+            case UnaryOperator unOp -> {
+                NodeExpr operand = replace(unOp.operand(), written, temps);
+                yield operand == unOp.operand() ? unOp : program.nodes.share(new UnaryOperator(unOp.type(), operand));
+            }
+            case BinaryOperator binOp -> {
+                NodeExpr left = replace(binOp.left(), written, temps);
+                NodeExpr right = replace(binOp.right(), written, temps);
+                yield left == binOp.left() && right == binOp.right() ? binOp : program.nodes.share(new BinaryOperator(left, binOp.type(), right));
+            }
+            case FuncCallExpr call -> {
+                List<NodeExpr> args = new ArrayList<>(call.arguments);
+                args.replaceAll(arg -> replace(arg, written, temps));
+                if (args.equals(call.arguments)) yield call;
+
+                FuncCallExpr replaced = new FuncCallExpr(call.token);
+                for (NodeExpr arg : args) replaced.appendArgument(arg);
+
+                FuncCallExpr shared = (FuncCallExpr) program.nodes.share(replaced);
+                if (call.target() != null) shared.bind(call.target());
+                yield shared;
+            }
+            default -> expr;
+        };
+    }
+
+    /**
+     * The temporary holding an expression, reusing one if the same expression has already been hoisted
+     */
+    private NodeIdentifier temp(NodeExpr expr, List<DeclareStatement> temps) {
+        for (DeclareStatement temp : temps) {
+            if (same(temp.expr(), expr)) return temp.identifier();
+        }
+
+        NodeIdentifier identifier = Trees.temp(program, "inv");
+        temps.add(Trees.declare(identifier, expr));
+        return identifier;
+    }
+
+    private static boolean same(NodeExpr a, NodeExpr b) {
+        if (a == b) return true;
+
+        return switch (a) {
+            case NodeIdentifier idA -> b instanceof NodeIdentifier idB && idA.symbol == idB.symbol;
+            case IntPrimitive intA -> b instanceof IntPrimitive intB && intA.getValue() == intB.getValue();
+            case CharPrimitive charA -> b instanceof CharPrimitive charB && charA.getValue() == charB.getValue();
+            case BoolPrimitive boolA -> b instanceof BoolPrimitive boolB && boolA.getValue() == boolB.getValue();
+            case FloatPrimitive floatA ->
+                    b instanceof FloatPrimitive floatB && Double.doubleToRawLongBits(floatA.getValue()) == Double.doubleToRawLongBits(floatB.getValue());
+            case UnaryOperator unA -> b instanceof UnaryOperator unB && unA.type() == unB.type() && same(unA.operand(), unB.operand());
+            case BinaryOperator binA -> b instanceof BinaryOperator binB && binA.type() == binB.type()
+                    && same(binA.left(), binB.left()) && same(binA.right(), binB.right());
+            case FuncCallExpr callA -> {
+                if (!(b instanceof FuncCallExpr callB) || callA.target() != callB.target() || callA.arguments.size() != callB.arguments.size())
+                    yield false;
+
+                for (int i = 0; i < callA.arguments.size(); i++) {
+                    if (!same(callA.arguments.get(i), callB.arguments.get(i))) yield false;
+                }
+                yield true;
+            }
+            default -> false;
+        };
+    }
+
+    private static boolean isInvariant(NodeExpr expr, Set<Integer> written) {
+        return switch (expr) {
+            case NodeIdentifier identifier -> !written.contains(identifier.symbol);
+            case UnaryOperator unOp -> isInvariant(unOp.operand(), written);
+            case BinaryOperator binOp -> isInvariant(binOp.left(), written) && isInvariant(binOp.right(), written);
+            case FuncCallExpr call -> call.arguments.stream().allMatch(arg -> isInvariant(arg, written));
+            default -> true;
+        };
+    }
+
+    /**
+     * Collects the symbols of every variable a statement declares or assigns
+     */
+    private static void writes(HeliumStatement statement, Set<Integer> written) {
+        switch (statement) {
+            case DeclareStatement declare -> written.add(declare.identifier().symbol);
+            case AssignStatement assign -> written.add(assign.identifier().symbol);
+            case ScopeStatement scope -> {
+                for (HeliumStatement inner : scope.statements) writes(inner, written);
+            }
+            case IfStatement ifStmt -> {
+                writes(ifStmt.thenStatement(), written);
+                if (ifStmt.hasElse()) writes(ifStmt.elseStatement(), written);
+            }
+            case WhileStatement whileStmt -> writes(whileStmt.statement(), written);
+            case ForStatement forStmt -> {
+                writes(forStmt.getAssigner(), written);
+                writes(forStmt.getIncrementer(), written);
+                writes(forStmt.statement(), written);
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Finds every function that's pure, going round until no more turn out to be, since a function calling another
+     * one is only pure once that one is known to be
+     */
+    private void findPureFunctions() {
+        boolean found = true;
+
+        while (found) {
+            found = false;
+
+            for (HeliumFunction function : program.getFunctions()) {
+                if (!pureFunctions.contains(function) && function.returnType.type != TokenType.VOID
+                        && function.getBody().stream().allMatch(this::isPure) && returns(function.getBody())) {
+                    pureFunctions.add(function);
+                    found = true;
+                }
+            }
+        }
+    }
+
+    private boolean isPure(HeliumStatement statement) {
+        return switch (statement) {
+            //Includes increments, which have no expression
+            case AssignStatement assign -> assign.expr() == null || cannotFail(assign.expr(), pureFunctions);
+            case DeclareStatement declare -> cannotFail(declare.expr(), pureFunctions);
+            case ScopeStatement scope -> scope.statements.stream().allMatch(this::isPure);
+            case IfStatement ifStmt -> cannotFail(ifStmt.getCondition(), pureFunctions) && isPure(ifStmt.thenStatement())
+                    && (!ifStmt.hasElse() || isPure(ifStmt.elseStatement()));
+            case ReturnStatement ret -> !ret.empty && cannotFail(ret.expr(), pureFunctions);
+            default -> false;
+        };
+    }
+
+    /**
+     * Whether some statements always return a value, when there are no loops in them
+     */
+    private static boolean returns(List<HeliumStatement> statements) {
+        return statements.stream().anyMatch(LoopInvariantHoister::returns);
+    }
+
+    private static boolean returns(HeliumStatement statement) {
+        return switch (statement) {
+            case ReturnStatement ret -> !ret.empty;
+            case ScopeStatement scope -> returns(scope.statements);
+            case IfStatement ifStmt -> ifStmt.hasElse() && returns(ifStmt.thenStatement()) && returns(ifStmt.elseStatement());
+            default -> false;
+        };
+    }
+}
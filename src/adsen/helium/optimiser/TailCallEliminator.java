@@ -0,0 +1,278 @@
+package adsen.helium.optimiser;
+
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.HeliumProgram;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.primitives.BoolPrimitive;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.BreakStatement;
+import adsen.helium.parser.statement.atomic.ContinueStatement;
+import adsen.helium.parser.statement.atomic.ExitStatement;
+import adsen.helium.parser.statement.atomic.FunctionCallStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+import static adsen.helium.exec.Scope.MAIN_FUNCTION;
+import static adsen.helium.optimiser.Trees.size;
+
+/**
+ * Turns functions which call themselves as the last thing they do into loops, so that recursing deeply doesn't need a
+ * new scope (and a Java stack frame or several) for every call. Only runs once a program has been type checked, since
+ * calls have to be bound to know what they call.
+ * <p>
+ * A tail call is a {@code return} of a call to the function itself, or in a void function, a call to itself as a
+ * statement with nothing after it, as long as neither is inside a loop. The body gets wrapped in a {@code while (true)},
+ * and each tail call becomes assigning the arguments to the parameters and a {@code continue}. Getting to the end of the
+ * body, or an empty return right at the top of it, becomes a {@code break}, so functions with a {@code break} or
+ * {@code continue} outside of a loop (which would error) get left alone, and so does {@code main}, since its variables
+ * get printed out at the end.
+ * <p>
+ * If a function tail calls another one which tail calls it straight back, the other one's body gets copied in place of
+ * the call, with every variable renamed like the {@link Inliner} does, so that its calls back become tail calls too. That
+ * only happens if it's no bigger than {@link TailCallEliminator#MUTUAL_BUDGET} and always ends in a return, so it can
+ * never run off the end of the copy, and only if the copy really does end up jumping back. Two functions never get
+ * copied into each other: once one has the other's body, the other just calls it, which is only one call deep since
+ * the first one loops from then on. So each copy adds at most {@link TailCallEliminator#MUTUAL_BUDGET} nodes.
+ */
+public class TailCallEliminator {
+    /**
+     * Biggest a function's body can be (in nodes, see {@link Trees#size}) to be copied into one which tail calls it
+     */
+    private static final int MUTUAL_BUDGET = 64;
+
+    private final HeliumProgram program;
+
+    /**
+     * The function being looked at
+     */
+    private HeliumFunction function;
+    private List<NodeIdentifier> parameters;
+    private boolean isVoid;
+
+    private int tailCalls = 0;
+    private int copies = 0;
+    private int loops = 0;
+
+    /**
+     * The functions each function has been copied into
+     */
+    private final Map<HeliumFunction, Set<HeliumFunction>> copiedInto = new HashMap<>();
+
+    public TailCallEliminator(HeliumProgram program) {
+        this.program = program;
+    }
+
+    public void run() {
+        if (!program.isTypeChecked()) return;
+
+        for (HeliumFunction f : program.getFunctions()) {
+            if (f.name.equals(MAIN_FUNCTION) || breaksOut(f.getBody(), false)) continue;
+
+            function = f;
+            isVoid = f.returnType.type == TokenType.VOID;
+            parameters = new ArrayList<>();
+            List<Token> signature = f.getSignature();
+            for (int i = 1; i < signature.size(); i += 2) parameters.add(program.nodes.share(new NodeIdentifier(signature.get(i))));
+
+            int before = tailCalls;
+            List<HeliumStatement> body = rewrite(f.getBody(), true, true, true);
+
+            //Nothing to jump back to, so the body stays as it was
+            if (tailCalls == before) continue;
+
+            body = new ArrayList<>(body);
+            body.add(new BreakStatement(new Token("break", TokenType.BREAK)));
+
+            Token whileToken = new Token("while", TokenType.WHILE);
+            f.replaceBody(List.of(new WhileStatement(whileToken, BoolPrimitive.of(true), new ScopeStatement(body, f.token).asLoop())));
+            loops++;
+        }
+
+        if (VERBOSE_FLAGS.contains("parser"))
+            System.out.println("Turned " + tailCalls + " tail calls in " + loops + " functions into loops, copying in " + copies + " mutually recursive functions");
+    }
+
+    /**
+     * @param tail     Whether nothing runs after these statements in the function
+     * @param top      Whether these are the statements right in the function's body
+     * @param copyable Whether calls to other functions can be copied in, which is only when this isn't already a copy
+     */
+    private List<HeliumStatement> rewrite(List<HeliumStatement> statements, boolean tail, boolean top, boolean copyable) {
+        List<HeliumStatement> rewritten = null;
+
+        for (int i = 0; i < statements.size(); i++) {
+            HeliumStatement statement = statements.get(i);
+            HeliumStatement result = rewrite(statement, tail && i == statements.size() - 1, top, copyable);
+
+            if (result != statement && rewritten == null) rewritten = new ArrayList<>(statements.subList(0, i));
+            if (rewritten != null) rewritten.add(result);
+        }
+
+        return rewritten == null ? statements : rewritten;
+    }
+
+    private HeliumStatement rewrite(HeliumStatement statement, boolean tail, boolean top, boolean copyable) {
+        return switch (statement) {
+            case ReturnStatement ret when ret.empty -> top ? new BreakStatement(ret.token) : ret;
+            case ReturnStatement ret when ret.expr() instanceof FuncCallExpr call && call.target() != null -> {
+                if (call.target() == function) yield jump(call.arguments, ret.token);
+                if (copyable && canCopy(call.target())) {
+                    int before = tailCalls;
+                    HeliumStatement copy = rewrite(copy(call.target(), call.arguments, ret.token), true, false, false);
+
+                    //Not worth making the function bigger if it doesn't get to jump back from the copy
+                    if (tailCalls != before) {
+                        copies++;
+                        copiedInto.computeIfAbsent(call.target(), c -> new HashSet<>()).add(function);
+                        yield copy;
+                    }
+                }
+                yield ret;
+            }
+            case FunctionCallStatement call when isVoid && tail && call.target() == function -> jump(call.args, call.name);
+            //Loop bodies are left alone, since a continue in there would go to the wrong loop
+            case ScopeStatement scope when !scope.isLoop() -> {
+                List<HeliumStatement> statements = rewrite(scope.statements, tail, false, copyable);
+                yield statements == scope.statements ? scope : new ScopeStatement(statements, scope.name, scope.token);
+            }
+            case IfStatement ifStmt -> {
+                HeliumStatement thenStatement = rewrite(ifStmt.thenStatement(), tail, false, copyable);
+                HeliumStatement elseStatement = ifStmt.hasElse() ? rewrite(ifStmt.elseStatement(), tail, false, copyable) : null;
+
+                if (thenStatement == ifStmt.thenStatement() && elseStatement == (ifStmt.hasElse() ? ifStmt.elseStatement() : null))
+                    yield ifStmt;
+
+                yield ifStmt.hasElse()
+                        ? new IfStatement(ifStmt.token, ifStmt.getCondition(), thenStatement, ifStmt.elseToken(), elseStatement)
+                        : new IfStatement(ifStmt.token, ifStmt.getCondition(), thenStatement);
+            }
+            default -> statement;
+        };
+    }
+
+    /**
+     * Assigns the arguments of a tail call to the parameters, and goes back to the start of the body. All the arguments
+     * get worked out before any of them are assigned, since they can use the parameters they're replacing
+     */
+    private ScopeStatement jump(List<NodeExpr> args, Token token) {
+        tailCalls++;
+
+        List<HeliumStatement> statements = new ArrayList<>();
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            if (!(args.get(i) instanceof NodeIdentifier identifier && identifier.symbol == parameters.get(i).symbol))
+                changed.add(i);
+        }
+
+        if (changed.size() == 1) {
+            int i = changed.getFirst();
+            statements.add(Trees.assign(parameters.get(i), args.get(i)));
+        } else {
+            List<NodeIdentifier> temps = new ArrayList<>();
+            for (int i : changed) {
+                NodeIdentifier temp = Trees.temp(program, parameters.get(i).asString());
+                temps.add(temp);
+                statements.add(Trees.declare(temp, args.get(i)));
+            }
+            for (int j = 0; j < changed.size(); j++) statements.add(Trees.assign(parameters.get(changed.get(j)), temps.get(j)));
+        }
+
+        statements.add(new ContinueStatement(token));
+        return new ScopeStatement(statements, token);
+    }
+
+    /**
+     * Whether another function can be copied into the one being looked at, in place of a tail call to it
+     */
+    private boolean canCopy(HeliumFunction callee) {
+        List<HeliumStatement> body = callee.getBody();
+
+        //If this function has already been copied into the other one, then the other one is a loop which only needs calling
+        if (copiedInto.getOrDefault(function, Set.of()).contains(callee)) return false;
+
+        return !callee.name.equals(MAIN_FUNCTION) && size(body) <= MUTUAL_BUDGET && !breaksOut(body, false)
+                && alwaysReturns(body) && tailCalls(body, function);
+    }
+
+    /**
+     * The body of a function as a scope, which declares its arguments first, and has every variable renamed
+     */
+    private ScopeStatement copy(HeliumFunction callee, List<NodeExpr> args, Token token) {
+        Map<Integer, NodeIdentifier> renamed = new HashMap<>();
+        List<HeliumStatement> statements = new ArrayList<>();
+
+        List<Token> signature = callee.getSignature();
+        for (int i = 0; i < args.size(); i++) {
+            Token parameter = signature.get(2 * i + 1);
+            NodeIdentifier temp = Trees.temp(program, parameter.value());
+
+            renamed.put(parameter.symbol, temp);
+            statements.add(Trees.declare(temp, args.get(i)));
+        }
+
+        for (HeliumStatement statement : callee.getBody()) statements.add(Trees.rename(program, statement, renamed));
+
+        return new ScopeStatement(statements, token);
+    }
+
+    /**
+     * Whether any of these statements return a call to {@code target}, outside of a loop
+     */
+    private static boolean tailCalls(List<HeliumStatement> statements, HeliumFunction target) {
+        return statements.stream().anyMatch(statement -> switch (statement) {
+            case ReturnStatement ret -> !ret.empty && ret.expr() instanceof FuncCallExpr call && call.target() == target;
+            case ScopeStatement scope -> !scope.isLoop() && tailCalls(scope.statements, target);
+            case IfStatement ifStmt -> tailCalls(List.of(ifStmt.thenStatement()), target)
+                    || ifStmt.hasElse() && tailCalls(List.of(ifStmt.elseStatement()), target);
+            default -> false;
+        });
+    }
+
+    private static boolean alwaysReturns(List<HeliumStatement> statements) {
+        return !statements.isEmpty() && alwaysReturns(statements.getLast());
+    }
+
+    private static boolean alwaysReturns(HeliumStatement statement) {
+        return switch (statement) {
+            case ReturnStatement ret -> !ret.empty;
+            case ExitStatement _ -> true;
+            case ScopeStatement scope -> !scope.isLoop() && alwaysReturns(scope.statements);
+            case IfStatement ifStmt -> ifStmt.hasElse() && alwaysReturns(ifStmt.thenStatement()) && alwaysReturns(ifStmt.elseStatement());
+            default -> false;
+        };
+    }
+
+    /**
+     * Whether any of these statements have a {@code break} or {@code continue} outside of a loop, which would go to
+     * the new loop instead of erroring
+     */
+    private static boolean breaksOut(List<HeliumStatement> statements, boolean inLoop) {
+        return statements.stream().anyMatch(statement -> breaksOut(statement, inLoop));
+    }
+
+    private static boolean breaksOut(HeliumStatement statement, boolean inLoop) {
+        return switch (statement) {
+            case BreakStatement _, ContinueStatement _ -> !inLoop;
+            case ScopeStatement scope -> breaksOut(scope.statements, inLoop);
+            case IfStatement ifStmt -> breaksOut(ifStmt.thenStatement(), inLoop) || ifStmt.hasElse() && breaksOut(ifStmt.elseStatement(), inLoop);
+            case WhileStatement whileStmt -> breaksOut(whileStmt.statement(), true);
+            case ForStatement forStmt -> breaksOut(forStmt.statement(), true);
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,337 @@
+package adsen.helium.optimiser;
+
+import adsen.helium.parser.HeliumFunction;
+import adsen.helium.parser.HeliumProgram;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.OperatorType;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.expr.primitives.CharPrimitive;
+import adsen.helium.parser.expr.primitives.FloatPrimitive;
+import adsen.helium.parser.expr.primitives.IntPrimitive;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.AssignStatement;
+import adsen.helium.parser.statement.atomic.DeclareStatement;
+import adsen.helium.parser.statement.atomic.ExitStatement;
+import adsen.helium.parser.statement.atomic.FunctionCallStatement;
+import adsen.helium.parser.statement.atomic.IncrementStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.parser.statement.atomic.StaticDeclareStatement;
+
+import adsen.helium.tokeniser.SymbolTable;
+import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.TokenType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Things the optimisation passes need to know about bits of the tree
+ */
+final class Trees {
+    private Trees() {
+    }
+
+    /**
+     * Whether an expression in a type checked program can be left out without changing anything at all, which is as
+     * long as it doesn't call a function or divide by 0
+     */
+    static boolean cannotFail(NodeExpr expr) {
+        return cannotFail(expr, Set.of());
+    }
+
+    /**
+     * The same, but calls to any of these functions (which have to be bound) count as not failing either
+     */
+    static boolean cannotFail(NodeExpr expr, Set<HeliumFunction> safeFunctions) {
+        return switch (expr) {
+            case FuncCallExpr call -> call.target() != null && safeFunctions.contains(call.target())
+                    && call.arguments.stream().allMatch(arg -> cannotFail(arg, safeFunctions));
+            case UnaryOperator unOp -> cannotFail(unOp.operand(), safeFunctions);
+            case BinaryOperator binOp -> {
+                if ((binOp.type() == OperatorType.QUOTIENT || binOp.type() == OperatorType.REMAINDER) && !isNonZero(binOp.right()))
+                    yield false;
+
+                yield cannotFail(binOp.left(), safeFunctions) && cannotFail(binOp.right(), safeFunctions);
+            }
+            default -> true;
+        };
+    }
+
+    private static boolean isNonZero(NodeExpr expr) {
+        return switch (expr) {
+            case IntPrimitive intP -> intP.getValue() != 0;
+            case CharPrimitive charP -> charP.getValue() != 0;
+            //Floats don't throw for dividing by 0
+            case FloatPrimitive _ -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * How many nodes, statements and expressions, there are in some statements
+     */
+    static int size(List<HeliumStatement> statements) {
+        int size = 0;
+        for (HeliumStatement statement : statements) size += size(statement);
+        return size;
+    }
+
+    static int size(HeliumStatement statement) {
+        return 1 + switch (statement) {
+            case ScopeStatement scope -> size(scope.statements);
+            //Includes increments, which have no expression
+            case AssignStatement assign -> 1 + (assign.expr() == null ? 0 : size(assign.expr()));
+            case DeclareStatement declare -> 1 + size(declare.expr());
+            case IfStatement ifStmt ->
+                    size(ifStmt.getCondition()) + size(ifStmt.thenStatement()) + (ifStmt.hasElse() ? size(ifStmt.elseStatement()) : 0);
+            case WhileStatement whileStmt -> size(whileStmt.condition()) + size(whileStmt.statement());
+            case ForStatement forStmt ->
+                    size(forStmt.getAssigner()) + size(forStmt.condition()) + size(forStmt.getIncrementer()) + size(forStmt.statement());
+            case FunctionCallStatement call -> call.args.stream().mapToInt(Trees::size).sum();
+            case ReturnStatement ret -> ret.empty ? 0 : size(ret.expr());
+            case ExitStatement exit -> size(exit.expr());
+            default -> 0;
+        };
+    }
+
+    static int size(NodeExpr expr) {
+        return 1 + switch (expr) {
+            case UnaryOperator unOp -> size(unOp.operand());
+            case BinaryOperator binOp -> size(binOp.left()) + size(binOp.right());
+            case FuncCallExpr call -> call.arguments.stream().mapToInt(Trees::size).sum();
+            default -> 0;
+        };
+    }
+
+    /**
+     * Swaps every expression in some statements (but not the expressions inside them) for whatever {@code map} gives
+     * back, giving back the same list if nothing changed
+     */
+    static List<HeliumStatement> mapExprs(List<HeliumStatement> statements, Function<NodeExpr, NodeExpr> map) {
+        List<HeliumStatement> mapped = null;
+
+        for (int i = 0; i < statements.size(); i++) {
+            HeliumStatement statement = statements.get(i);
+            HeliumStatement result = mapExprs(statement, map);
+
+            if (result != statement && mapped == null) mapped = new ArrayList<>(statements.subList(0, i));
+            if (mapped != null) mapped.add(result);
+        }
+
+        return mapped == null ? statements : mapped;
+    }
+
+    static HeliumStatement mapExprs(HeliumStatement statement, Function<NodeExpr, NodeExpr> map) {
+        return switch (statement) {
+            case ScopeStatement scope -> {
+                List<HeliumStatement> statements = mapExprs(scope.statements, map);
+                if (statements == scope.statements) yield scope;
+
+                ScopeStatement mapped = new ScopeStatement(statements, scope.name, scope.token);
+                yield scope.isLoop() ? mapped.asLoop() : mapped;
+            }
+            case StaticDeclareStatement declare -> {
+                NodeExpr expr = map.apply(declare.expr());
+                yield expr == declare.expr() ? declare : new StaticDeclareStatement(declare.valueType, declare.identifier(), declare.primaryToken(), expr);
+            }
+            case DeclareStatement declare -> {
+                NodeExpr expr = map.apply(declare.expr());
+                yield expr == declare.expr() ? declare : new DeclareStatement(declare.identifier(), declare.primaryToken(), expr);
+            }
+            case IncrementStatement increment -> increment;
+            case AssignStatement assign -> {
+                NodeExpr expr = map.apply(assign.expr());
+                yield expr == assign.expr() ? assign : new AssignStatement(assign.identifier(), assign.primaryToken(), expr);
+            }
+            case IfStatement ifStmt -> {
+                NodeExpr condition = map.apply(ifStmt.getCondition());
+                HeliumStatement thenStatement = mapExprs(ifStmt.thenStatement(), map);
+                HeliumStatement elseStatement = ifStmt.hasElse() ? mapExprs(ifStmt.elseStatement(), map) : null;
+
+                if (condition == ifStmt.getCondition() && thenStatement == ifStmt.thenStatement() && elseStatement == (ifStmt.hasElse() ? ifStmt.elseStatement() : null))
+                    yield ifStmt;
+
+                yield ifStmt.hasElse()
+                        ? new IfStatement(ifStmt.token, condition, thenStatement, ifStmt.elseToken(), elseStatement)
+                        : new IfStatement(ifStmt.token, condition, thenStatement);
+            }
+            case WhileStatement whileStmt -> {
+                NodeExpr condition = map.apply(whileStmt.condition());
+                HeliumStatement body = mapExprs(whileStmt.statement(), map);
+
+                yield condition == whileStmt.condition() && body == whileStmt.statement()
+                        ? whileStmt
+                        : new WhileStatement(whileStmt.token, condition, body);
+            }
+            case ForStatement forStmt -> {
+                HeliumStatement assigner = mapExprs(forStmt.getAssigner(), map);
+                NodeExpr condition = map.apply(forStmt.condition());
+                HeliumStatement incrementer = mapExprs(forStmt.getIncrementer(), map);
+                HeliumStatement body = mapExprs(forStmt.statement(), map);
+
+                yield assigner == forStmt.getAssigner() && condition == forStmt.condition() && incrementer == forStmt.getIncrementer() && body == forStmt.statement()
+                        ? forStmt
+                        : new ForStatement(forStmt.token, assigner, condition, incrementer, body);
+            }
+            case FunctionCallStatement call -> {
+                List<NodeExpr> args = new ArrayList<>(call.args);
+                args.replaceAll(map::apply);
+                if (args.equals(call.args)) yield call;
+
+                FunctionCallStatement mapped = new FunctionCallStatement(call.name, args);
+                if (call.target() != null) mapped.bind(call.target());
+                yield mapped;
+            }
+            case ReturnStatement ret -> {
+                if (ret.empty) yield ret;
+
+                NodeExpr expr = map.apply(ret.expr());
+                yield expr == ret.expr() ? ret : new ReturnStatement(ret.token, expr);
+            }
+            case ExitStatement exit -> {
+                NodeExpr expr = map.apply(exit.expr());
+                yield expr == exit.expr() ? exit : new ExitStatement(exit.token, expr);
+            }
+            default -> statement;
+        };
+    }
+
+    /**
+     * An expression with some variables swapped for other expressions, keeping calls bound
+     */
+    static NodeExpr substitute(HeliumProgram program, NodeExpr expr, Map<Integer, NodeExpr> values) {
+        return switch (expr) {
+            case NodeIdentifier identifier -> values.getOrDefault(identifier.symbol, identifier);
+            case UnaryOperator unOp -> {
+                NodeExpr operand = substitute(program, unOp.operand(), values);
+                yield operand == unOp.operand() ? unOp : program.nodes.share(new UnaryOperator(unOp.type(), operand));
+            }
+            case BinaryOperator binOp -> {
+                NodeExpr left = substitute(program, binOp.left(), values);
+                NodeExpr right = substitute(program, binOp.right(), values);
+                yield left == binOp.left() && right == binOp.right() ? binOp : program.nodes.share(new BinaryOperator(left, binOp.type(), right));
+            }
+            case FuncCallExpr call -> {
+                FuncCallExpr replaced = new FuncCallExpr(call.token);
+                for (NodeExpr arg : call.arguments) replaced.appendArgument(substitute(program, arg, values));
+
+                FuncCallExpr shared = (FuncCallExpr) program.nodes.share(replaced);
+                if (call.target() != null) shared.bind(call.target());
+                yield shared;
+            }
+            default -> expr;
+        };
+    }
+
+    /**
+     * An expression with every variable in it renamed to a new temporary, which get added to {@code renamed} the first
+     * time each variable is seen
+     */
+    static NodeExpr rename(HeliumProgram program, NodeExpr expr, Map<Integer, NodeIdentifier> renamed) {
+        Map<Integer, NodeExpr> values = new HashMap<>();
+        collectNames(program, expr, renamed);
+        values.putAll(renamed);
+        return substitute(program, expr, values);
+    }
+
+    private static void collectNames(HeliumProgram program, NodeExpr expr, Map<Integer, NodeIdentifier> renamed) {
+        switch (expr) {
+            case NodeIdentifier identifier -> rename(program, identifier, renamed);
+            case UnaryOperator unOp -> collectNames(program, unOp.operand(), renamed);
+            case BinaryOperator binOp -> {
+                collectNames(program, binOp.left(), renamed);
+                collectNames(program, binOp.right(), renamed);
+            }
+            case FuncCallExpr call -> {
+                for (NodeExpr arg : call.arguments) collectNames(program, arg, renamed);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static NodeIdentifier rename(HeliumProgram program, NodeIdentifier identifier, Map<Integer, NodeIdentifier> renamed) {
+        return renamed.computeIfAbsent(identifier.symbol, symbol -> temp(program, identifier.asString()));
+    }
+
+    /**
+     * The same for a statement
+     */
+    static HeliumStatement rename(HeliumProgram program, HeliumStatement statement, Map<Integer, NodeIdentifier> renamed) {
+        return switch (statement) {
+            case ScopeStatement scope -> {
+                List<HeliumStatement> statements = new ArrayList<>();
+                for (HeliumStatement inner : scope.statements) statements.add(rename(program, inner, renamed));
+
+                ScopeStatement result = new ScopeStatement(statements, scope.name, scope.token);
+                yield scope.isLoop() ? result.asLoop() : result;
+            }
+            case StaticDeclareStatement declare ->
+                    new StaticDeclareStatement(declare.valueType, rename(program, declare.identifier(), renamed), declare.primaryToken(), rename(program, declare.expr(), renamed));
+            case DeclareStatement declare ->
+                    new DeclareStatement(rename(program, declare.identifier(), renamed), declare.primaryToken(), rename(program, declare.expr(), renamed));
+            case IncrementStatement increment ->
+                    new IncrementStatement(rename(program, increment.identifier(), renamed), increment.primaryToken(), increment.isPre);
+            case AssignStatement assign ->
+                    new AssignStatement(rename(program, assign.identifier(), renamed), assign.primaryToken(), rename(program, assign.expr(), renamed));
+            case IfStatement ifStmt -> ifStmt.hasElse()
+                    ? new IfStatement(ifStmt.token, rename(program, ifStmt.getCondition(), renamed), rename(program, ifStmt.thenStatement(), renamed), ifStmt.elseToken(), rename(program, ifStmt.elseStatement(), renamed))
+                    : new IfStatement(ifStmt.token, rename(program, ifStmt.getCondition(), renamed), rename(program, ifStmt.thenStatement(), renamed));
+            case WhileStatement whileStmt ->
+                    new WhileStatement(whileStmt.token, rename(program, whileStmt.condition(), renamed), rename(program, whileStmt.statement(), renamed));
+            case ForStatement forStmt -> {
+                //In the order they run, so that the loop variable gets its name from being declared
+                HeliumStatement assigner = rename(program, forStmt.getAssigner(), renamed);
+                NodeExpr condition = rename(program, forStmt.condition(), renamed);
+                HeliumStatement incrementer = rename(program, forStmt.getIncrementer(), renamed);
+                yield new ForStatement(forStmt.token, assigner, condition, incrementer, rename(program, forStmt.statement(), renamed));
+            }
+            case FunctionCallStatement call -> {
+                List<NodeExpr> args = new ArrayList<>();
+                for (NodeExpr arg : call.args) args.add(rename(program, arg, renamed));
+
+                FunctionCallStatement result = new FunctionCallStatement(call.name, args);
+                if (call.target() != null) result.bind(call.target());
+                yield result;
+            }
+            case ReturnStatement ret -> ret.empty ? ret : new ReturnStatement(ret.token, rename(program, ret.expr(), renamed));
+            case ExitStatement exit -> new ExitStatement(exit.token, rename(program, exit.expr(), renamed));
+            default -> statement;
+        };
+    }
+
+    /**
+     * A variable for an optimisation pass to use, with a name starting with {@code $} so that it can't clash with
+     * anything in the source, or with anything made earlier, in case a body gets optimised more than once
+     */
+    static NodeIdentifier temp(HeliumProgram program, String prefix) {
+        String name;
+        for (int i = 0; ; i++) {
+            name = "$" + prefix + i;
+            if (program.symbols.find(name) == SymbolTable.NONE) break;
+        }
+
+        Token token = new Token(name, TokenType.IDENTIFIER);
+        token.symbol = program.symbols.intern(name);
+        return new NodeIdentifier(token);
+    }
+
+    static DeclareStatement declare(NodeIdentifier identifier, NodeExpr expr) {
+        return new DeclareStatement(identifier, new Token("=", TokenType.DECLARATION_OPERATION), expr);
+    }
+
+    static AssignStatement assign(NodeIdentifier identifier, NodeExpr expr) {
+        return new AssignStatement(identifier, new Token("=", TokenType.DECLARATION_OPERATION), expr);
+    }
+}
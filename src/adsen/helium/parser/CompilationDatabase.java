@@ -0,0 +1,300 @@
+package adsen.helium.parser;
+
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.AssignStatement;
+import adsen.helium.parser.statement.atomic.DeclareStatement;
+import adsen.helium.parser.statement.atomic.ExitStatement;
+import adsen.helium.parser.statement.atomic.FunctionCallStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.tokeniser.HeliumSource;
+import adsen.helium.tokeniser.TokenSource;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+import static adsen.helium.tokeniser.TokenType.FUNCTION;
+
+/**
+ * Remembers every function of the last version of a file, so that when the file changes only the functions which
+ * actually changed get parsed again.
+ * <p>
+ * Each function is kept with where it was in the file, a hash of its code (header and body) and the names of the
+ * functions it calls. After an edit, the new file still gets tokenised, and its headers read, but a function whose code
+ * is exactly the same as before gets its old body moved to its new place (as an
+ * {@link adsen.helium.parser.arena.AstArena}) instead of being parsed again. Functions which changed, along with
+ * anything which calls them (however indirectly), end up in {@link CompilationDatabase#dirty()}, which is what anything
+ * checking the program needs to look at again.
+ * <p>
+ * A body that got moved is made from scratch though, so whatever checking the last version worked out about it would be
+ * lost. Once a version has been type checked, {@link CompilationDatabase#markChecked()} remembers which function every
+ * call in every function was bound to, and the next update binds the calls in each reused body to the new versions of
+ * those same functions. Until a version has been marked as checked, every function in the next one counts as dirty.
+ * <p>
+ * This is what {@code -watch} uses, but it only needs a {@link TokenSource}, so a REPL or an editor can use it the same
+ * way. Sources given to it must not change under it, so files should be {@link HeliumSource#read} rather than mapped.
+ */
+public class CompilationDatabase {
+    /**
+     * A function, as of the last update
+     *
+     * @param start   Position in {@code source} of the function's return type
+     * @param length  Length in bytes of the function, up to and including its closing '}'
+     * @param callees Names of the functions it calls
+     */
+    public record Entry(HeliumFunction function, HeliumSource source, int start, int length, long hash, Set<String> callees) {
+        boolean sameCode(HeliumSource otherSource, int otherStart, int otherLength) {
+            return length == otherLength && source.regionMatches(start, otherSource, otherStart, length);
+        }
+    }
+
+    private List<Entry> entries = List.of();
+    private Map<Long, List<Entry>> byHash = Map.of();
+    private Set<String> dirty = Set.of();
+    /**
+     * Whether the current version has been type checked, in which case {@link CompilationDatabase#bindings} has what
+     * every call in it was bound to
+     */
+    private boolean checked = false;
+    /**
+     * Functions every call in each function was bound to when it was checked, in the order {@link CompilationDatabase#calls}
+     * finds them
+     */
+    private Map<HeliumFunction, List<HeliumFunction>> bindings = Map.of();
+
+    /**
+     * Reads a new version of the file into {@code program}, reusing whatever it can from the last one. If reading it
+     * fails, then the database stays as it was, so the next version gets compared against the last one that worked
+     */
+    public void update(HeliumProgram program, TokenSource tokens) {
+        HeliumSource source = tokens.source();
+        Parser headerParser = new Parser(program, tokens);
+        headerParser.parseImports();
+
+        List<Entry> newEntries = new ArrayList<>();
+        Set<String> changed = new HashSet<>();
+        int reused = 0;
+        Set<Entry> unused = Collections.newSetFromMap(new IdentityHashMap<>());
+        unused.addAll(entries);
+        //The new version of each function that got reused
+        Map<HeliumFunction, HeliumFunction> moved = new IdentityHashMap<>();
+
+        while (tokens.has(headerParser.tokenPos)) {
+            int first = headerParser.tokenPos;
+            FunctionHeader header = headerParser.parseHeader();
+            int bodyStart = headerParser.tokenPos;
+            int end = headerParser.tokenPos = headerParser.skipBody(bodyStart);
+
+            int start = tokens.start(first);
+            int length = tokens.start(end - 1) + tokens.length(end - 1) - start;
+            long hash = source.hash(start, length);
+
+            Entry old = null;
+            for (Entry entry : byHash.getOrDefault(hash, List.of())) {
+                if (unused.contains(entry) && entry.sameCode(source, start, length)) {
+                    old = entry;
+                    break;
+                }
+            }
+
+            HeliumFunction function;
+            Set<String> callees;
+
+            if (old != null) {
+                unused.remove(old);
+                reused++;
+                function = new HeliumFunction(header.returnType(), header.name(), header.signature(),
+                        old.function.arena().moveTo(source, start - old.start).shareWith(program.nodes));
+                callees = old.callees;
+                moved.put(old.function, function);
+            } else {
+                changed.add(header.name().value());
+                function = Parser.LAZY
+                        ? header.toFunction(() -> new Parser(program, tokens).parseFunction(bodyStart))
+                        : header.toFunction(new Parser(program, tokens).parseFunction(bodyStart));
+
+                callees = new HashSet<>();
+                for (int i = bodyStart; i < end; i++) {
+                    if (tokens.type(i) == FUNCTION) callees.add(tokens.value(i));
+                }
+            }
+
+            program.addFunction(function);
+            newEntries.add(new Entry(function, source, start, length, hash, Collections.unmodifiableSet(callees)));
+        }
+
+        headerParser.loadImports();
+
+        //Anything that called a function which is gone needs checking again too
+        for (Entry entry : unused) changed.add(entry.function.name);
+
+        //Nothing that wasn't checked last time can be trusted to be fine now
+        if (!checked) {
+            for (Entry entry : newEntries) changed.add(entry.function.name);
+        } else {
+            for (Map.Entry<HeliumFunction, HeliumFunction> move : moved.entrySet()) {
+                if (!rebind(move.getValue(), bindings.get(move.getKey()), moved)) changed.add(move.getValue().name);
+            }
+        }
+        checked = false;
+        bindings = Map.of();
+
+        entries = Collections.unmodifiableList(newEntries);
+        byHash = new HashMap<>();
+        for (Entry entry : entries) byHash.computeIfAbsent(entry.hash, h -> new ArrayList<>()).add(entry);
+        dirty = Collections.unmodifiableSet(dependents(changed));
+
+        if (VERBOSE_FLAGS.contains("parser"))
+            System.out.println("Reused " + reused + " unchanged functions out of " + entries.size() + ", need to check again: " + dirty);
+    }
+
+    /**
+     * Marks the current version as type checked, remembering what each call was bound to so that functions which get
+     * reused by the next update don't need to be checked again. This has to be before anything replaces their bodies
+     */
+    public void markChecked() {
+        bindings = new IdentityHashMap<>();
+        for (Entry entry : entries) {
+            List<HeliumFunction> targets = new ArrayList<>();
+            for (Object call : calls(entry.function.getBody())) {
+                targets.add(call instanceof FuncCallExpr expr ? expr.target() : ((FunctionCallStatement) call).target());
+            }
+            bindings.put(entry.function, targets);
+        }
+        checked = true;
+    }
+
+    /**
+     * Binds every call in a reused function to the new version of whatever the old version's call was bound to. Anything
+     * a reused function calls was reused too (otherwise it would be dirty), so this only fails if something's gone wrong
+     *
+     * @return Whether every call got bound, if not then the function needs checking again
+     */
+    private static boolean rebind(HeliumFunction function, List<HeliumFunction> targets, Map<HeliumFunction, HeliumFunction> moved) {
+        List<Object> calls = calls(function.getBody());
+        if (targets == null || targets.size() != calls.size()) return false;
+
+        for (int i = 0; i < calls.size(); i++) {
+            //Calls that couldn't be bound before (see FuncCallExpr#bind) stay unbound
+            HeliumFunction target = targets.get(i) == null ? null : moved.get(targets.get(i));
+            if (target == null && targets.get(i) != null) return false;
+
+            if (calls.get(i) instanceof FuncCallExpr call) call.bind(target);
+            else ((FunctionCallStatement) calls.get(i)).bind(target);
+        }
+        return true;
+    }
+
+    /**
+     * Every {@link FuncCallExpr} and {@link FunctionCallStatement} in some statements. Bodies made from the same code
+     * always give them back in the same order
+     */
+    private static List<Object> calls(List<HeliumStatement> statements) {
+        List<Object> calls = new ArrayList<>();
+        for (HeliumStatement statement : statements) calls(statement, calls);
+        return calls;
+    }
+
+    private static void calls(HeliumStatement statement, List<Object> calls) {
+        switch (statement) {
+            case ScopeStatement scope -> {
+                for (HeliumStatement inner : scope.statements) calls(inner, calls);
+            }
+            //Includes increments, which have no expression
+            case AssignStatement assign -> calls(assign.expr(), calls);
+            case DeclareStatement declare -> calls(declare.expr(), calls);
+            case IfStatement ifStmt -> {
+                calls(ifStmt.getCondition(), calls);
+                calls(ifStmt.thenStatement(), calls);
+                if (ifStmt.hasElse()) calls(ifStmt.elseStatement(), calls);
+            }
+            case WhileStatement whileStmt -> {
+                calls(whileStmt.condition(), calls);
+                calls(whileStmt.statement(), calls);
+            }
+            case ForStatement forStmt -> {
+                calls(forStmt.getAssigner(), calls);
+                calls(forStmt.condition(), calls);
+                calls(forStmt.getIncrementer(), calls);
+                calls(forStmt.statement(), calls);
+            }
+            case FunctionCallStatement call -> {
+                for (NodeExpr arg : call.args) calls(arg, calls);
+                calls.add(call);
+            }
+            case ReturnStatement ret -> {
+                if (!ret.empty) calls(ret.expr(), calls);
+            }
+            case ExitStatement exit -> calls(exit.expr(), calls);
+            default -> {
+            }
+        }
+    }
+
+    private static void calls(NodeExpr expr, List<Object> calls) {
+        switch (expr) {
+            case UnaryOperator unOp -> calls(unOp.operand(), calls);
+            case BinaryOperator binOp -> {
+                calls(binOp.left(), calls);
+                calls(binOp.right(), calls);
+            }
+            case FuncCallExpr call -> {
+                for (NodeExpr arg : call.arguments) calls(arg, calls);
+                calls.add(call);
+            }
+            case null, default -> {
+            }
+        }
+    }
+
+    /**
+     * Every function, in the order they're in the file
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * Names of the functions which changed in the last update, and of every function which calls them, directly or not
+     */
+    public Set<String> dirty() {
+        return dirty;
+    }
+
+    /**
+     * The given functions, along with everything which calls them, directly or not
+     */
+    public Set<String> dependents(Set<String> names) {
+        Map<String, Set<String>> callers = new HashMap<>();
+        for (Entry entry : entries) {
+            for (String callee : entry.callees) callers.computeIfAbsent(callee, c -> new HashSet<>()).add(entry.function.name);
+        }
+
+        Set<String> found = new HashSet<>(names);
+        Deque<String> toVisit = new ArrayDeque<>(names);
+
+        while (!toVisit.isEmpty()) {
+            for (String caller : callers.getOrDefault(toVisit.pop(), Set.of())) {
+                if (found.add(caller)) toVisit.push(caller);
+            }
+        }
+
+        return found;
+    }
+}
@@ -0,0 +1,227 @@
+package adsen.helium.parser;
+
+import adsen.helium.error.ExpressionError;
+import adsen.helium.tokeniser.HeliumSource;
+import adsen.helium.tokeniser.PipedTokens;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+
+/**
+ * Tokenises, parses and checks a program with each stage on its own thread, so that each function gets parsed as soon
+ * as its tokens are there, and checked as soon as it's been parsed.
+ * <p>
+ * The tokeniser hands tokens to the parser through {@link PipedTokens}. The parser hands finished functions (or the
+ * error it ran into) to the last stage through a bounded queue, so it can't get too far ahead of it. The last stage
+ * runs on the calling thread, adding each function to the program in file order and then running anything given to
+ * {@link FrontEndPipeline#addStage} on it. Imports get loaded on a thread of their own as soon as they've been read.
+ * <p>
+ * Errors come out the same as if everything was done one step after another. A tokeniser error always wins, then
+ * whichever parser or stage error comes first in the file, then import errors.
+ */
+public class FrontEndPipeline {
+    /**
+     * How many parsed functions can wait for the last stage before the parser has to stop and wait for it
+     */
+    private static final int QUEUE_SIZE = 64;
+
+    /**
+     * Marks the end of the parser's output
+     */
+    private static final Object END = new Object();
+
+    private final HeliumProgram program;
+    private final PipedTokens tokens;
+    private final List<Consumer<HeliumFunction>> stages = new ArrayList<>();
+
+    private boolean tokeniserFailed = false;
+
+    public FrontEndPipeline(HeliumProgram program, HeliumSource source) {
+        this.program = program;
+        this.tokens = new PipedTokens(source, program.symbols);
+    }
+
+    /**
+     * Adds something to run on every function once it's been added to the program, in the order they're in the file
+     */
+    public void addStage(Consumer<HeliumFunction> stage) {
+        stages.add(stage);
+    }
+
+    /**
+     * Whether the error thrown by {@link FrontEndPipeline#run} came from the tokeniser
+     */
+    public boolean tokeniserFailed() {
+        return tokeniserFailed;
+    }
+
+    public void run() {
+        long start = System.nanoTime();
+
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        StringBuilder log = new StringBuilder();
+
+        //Times of each stage, as [start, end, time spent working], relative to the start
+        long[] tokeniserTime = new long[3], parserTime = new long[3], checkTime = new long[3], importTime = new long[3];
+        RuntimeException[] importError = new RuntimeException[1];
+        Thread[] importThread = new Thread[1];
+
+        Thread tokeniserThread = new Thread(() -> {
+            tokeniserTime[0] = System.nanoTime() - start;
+            tokens.run();
+            tokeniserTime[1] = System.nanoTime() - start;
+            tokeniserTime[2] = tokens.tokeniseNanos();
+        }, "Helium tokeniser");
+
+        Thread parserThread = new Thread(() -> {
+            parserTime[0] = System.nanoTime() - start;
+            long waiting = 0;
+
+            Parser parser = new Parser(program, tokens);
+            parser.verboseLog = log;
+
+            try {
+                parser.parseImports();
+
+                importThread[0] = new Thread(() -> {
+                    importTime[0] = System.nanoTime() - start;
+                    try {
+                        parser.loadImports();
+                    } catch (RuntimeException e) {
+                        importError[0] = e;
+                    }
+                    importTime[1] = System.nanoTime() - start;
+                    importTime[2] = importTime[1] - importTime[0];
+                }, "Helium imports");
+                importThread[0].start();
+
+                while (tokens.has(parser.tokenPos)) {
+                    FunctionHeader header = parser.parseHeader();
+                    HeliumFunction function;
+
+                    if (Parser.LAZY) {
+                        int bodyStart = parser.tokenPos;
+                        parser.tokenPos = parser.skipBody(bodyStart);
+                        function = header.toFunction(() -> new Parser(program, tokens).parseFunction(bodyStart));
+                    } else {
+                        function = header.toFunction(parser.parseFunction(parser.tokenPos));
+                    }
+
+                    long putStart = System.nanoTime();
+                    queue.put(function);
+                    waiting += System.nanoTime() - putStart;
+                }
+                queue.put(END);
+
+            } catch (RuntimeException e) {
+                //Not just ExpressionErrors, since anything else would leave the last stage waiting forever
+                putUninterruptibly(queue, e);
+                putUninterruptibly(queue, END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            parserTime[1] = System.nanoTime() - start;
+            parserTime[2] = parserTime[1] - parserTime[0] - waiting - tokens.waitNanos();
+        }, "Helium parser");
+
+        tokeniserThread.start();
+        parserThread.start();
+
+        //Last stage, on this thread
+        checkTime[0] = System.nanoTime() - start;
+        RuntimeException error = null;
+
+        for (Object item = takeUninterruptibly(queue); item != END; item = takeUninterruptibly(queue)) {
+            //Still have to empty the queue after an error, or the parser could get stuck waiting for room
+            if (error != null) continue;
+
+            long itemStart = System.nanoTime();
+
+            if (item instanceof RuntimeException parseError) {
+                error = parseError;
+                continue;
+            }
+
+            try {
+                HeliumFunction function = (HeliumFunction) item;
+                program.addFunction(function);
+                for (Consumer<HeliumFunction> stage : stages) stage.accept(function);
+            } catch (RuntimeException stageError) {
+                error = stageError;
+            }
+
+            checkTime[2] += System.nanoTime() - itemStart;
+        }
+        checkTime[1] = System.nanoTime() - start;
+
+        joinUninterruptibly(tokeniserThread);
+        joinUninterruptibly(parserThread);
+        if (importThread[0] != null) joinUninterruptibly(importThread[0]);
+
+        long total = System.nanoTime() - start;
+
+        if (tokens.error() != null) {
+            //Anything the parser said after this is just because it ran out of tokens
+            tokeniserFailed = true;
+            throw tokens.error();
+        }
+
+        if (VERBOSE_FLAGS.contains("parser")) {
+            System.out.print(log);
+
+            long working = tokeniserTime[2] + parserTime[2] + checkTime[2] + importTime[2];
+            System.out.println("\nPipeline took " + millis(total) + "ms:");
+            System.out.println("    Tokeniser: " + timing(tokeniserTime));
+            System.out.println("    Parser: " + timing(parserTime));
+            System.out.println("    Checks: " + timing(checkTime));
+            System.out.println("    Imports: " + timing(importTime));
+            System.out.println("Stages spent " + millis(working) + "ms working, so " + millis(Math.max(working - total, 0)) + "ms of it overlapped");
+        }
+
+        if (error != null) throw error;
+        if (importError[0] != null) throw importError[0];
+    }
+
+    private static String timing(long[] time) {
+        return millis(time[0]) + "-" + millis(time[1]) + "ms, working for " + millis(time[2]) + "ms";
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1000000;
+    }
+
+    private static void putUninterruptibly(BlockingQueue<Object> queue, Object item) {
+        while (true) {
+            try {
+                queue.put(item);
+                return;
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    private static Object takeUninterruptibly(BlockingQueue<Object> queue) {
+        while (true) {
+            try {
+                return queue.take();
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        while (true) {
+            try {
+                thread.join();
+                return;
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
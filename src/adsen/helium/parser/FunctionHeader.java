@@ -0,0 +1,25 @@
+package adsen.helium.parser;
+
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.tokeniser.Token;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Everything about a function that comes before its body, so the body can be read separately (or on another thread)
+ * and put together with it afterwards
+ */
+record FunctionHeader(Token returnType, Token name, List<Token> signature) {
+
+    HeliumFunction toFunction(List<HeliumStatement> body) {
+        return new HeliumFunction(returnType, name, signature, body);
+    }
+
+    /**
+     * For when the body only gets read once the function is needed
+     */
+    HeliumFunction toFunction(Supplier<List<HeliumStatement>> bodyMaker) {
+        return new HeliumFunction(returnType, name, signature, bodyMaker);
+    }
+}
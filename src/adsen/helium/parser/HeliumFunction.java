@@ -1,17 +1,23 @@
 package adsen.helium.parser;
 
 import adsen.helium.error.ExpressionError;
+import adsen.helium.parser.arena.AstArena;
 import adsen.helium.parser.statement.HeliumStatement;
 import adsen.helium.tokeniser.Token;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class HeliumFunction {
     public final Token returnType;
     public final Token token;
     public final String name;
+    /**
+     * {@link adsen.helium.tokeniser.SymbolTable} id of {@link HeliumFunction#name}
+     */
+    public final int symbol;
     /**
      * This is a list of tokens of the type:
      * [Type, name, Type, name, ...]
@@ -20,13 +26,52 @@ public class HeliumFunction {
      */
     final List<Token> signature;
     public final int argumentCount;
-    final List<HeliumStatement> body;
+    /**
+     * {@code null} until the body is first asked for, if it's made by {@link HeliumFunction#bodyMaker}
+     */
+    private List<HeliumStatement> body;
+    /**
+     * Makes the body, for functions whose bodies are only read when they're first needed. Dropped once it's been used
+     */
+    private Supplier<List<HeliumStatement>> bodyMaker;
+    /**
+     * {@link HeliumFunction#body} flattened, made the first time it's asked for. It's only used for caching and moving
+     * the function, so it's kept next to the body instead of replacing it
+     */
+    private AstArena arena;
+    /**
+     * The body as it was parsed, if it's been replaced by an optimisation pass since and hasn't been flattened yet
+     */
+    private List<HeliumStatement> parsedBody;
 
     public HeliumFunction(Token returnType, Token nameToken, List<Token> signature, List<HeliumStatement> statements) {
+        this(returnType, nameToken, signature);
+        this.body = Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * For a function whose body was stored flattened, like in a {@link ProgramCache}. The body only gets turned back
+     * into statements if it's used, so functions which never get called cost next to nothing
+     */
+    public HeliumFunction(Token returnType, Token nameToken, List<Token> signature, AstArena arena) {
+        this(returnType, nameToken, signature, arena::statements);
+        this.arena = arena;
+    }
+
+    /**
+     * For a function whose body gets made the first time it's needed, like when {@link Parser#LAZY} is on. This can
+     * be from any thread, but it only ever gets made once
+     */
+    public HeliumFunction(Token returnType, Token nameToken, List<Token> signature, Supplier<List<HeliumStatement>> bodyMaker) {
+        this(returnType, nameToken, signature);
+        this.bodyMaker = bodyMaker;
+    }
+
+    private HeliumFunction(Token returnType, Token nameToken, List<Token> signature) {
         this.returnType = returnType;
         this.token = nameToken;
-        this.name = nameToken.value;
-        this.body = Collections.unmodifiableList(statements);
+        this.name = nameToken.value();
+        this.symbol = nameToken.symbol;
 
         if (signature.size() % 2 != 0)
             throw new ExpressionError("Invalid function signature", nameToken);
@@ -35,10 +80,34 @@ public class HeliumFunction {
         this.argumentCount = signature.size() / 2;
     }
 
-    public List<HeliumStatement> getBody() {
+    public synchronized List<HeliumStatement> getBody() {
+        if (body == null) {
+            body = Collections.unmodifiableList(bodyMaker.get());
+            bodyMaker = null;
+        }
         return body;
     }
 
+    /**
+     * The body as it was parsed, flattened. This is what gets cached or moved around, so it's never an optimised body,
+     * since that might depend on other functions which can change
+     */
+    public synchronized AstArena arena() {
+        if (arena == null) {
+            arena = AstArena.of(token.source(), parsedBody != null ? parsedBody : getBody());
+            parsedBody = null;
+        }
+        return arena;
+    }
+
+    /**
+     * Swaps the body for an optimised version of it, which is what gets run from then on
+     */
+    public synchronized void replaceBody(List<HeliumStatement> statements) {
+        if (arena == null && parsedBody == null) parsedBody = getBody();
+        body = Collections.unmodifiableList(statements);
+    }
+
     /**
      * Intended to be used for storing functions in {@link HeliumProgram}
      */
@@ -46,7 +115,7 @@ public class HeliumFunction {
         List<String> typeSignature = new ArrayList<>();
 
         for (int i = 0; i < signature.size(); i += 2) {
-            typeSignature.add(signature.get(i).value);
+            typeSignature.add(signature.get(i).value());
         }
         return typeSignature;
     }
@@ -56,13 +125,13 @@ public class HeliumFunction {
     }
 
     public String asString() {
-        StringBuilder builder = new StringBuilder(returnType.value + " " + name + " (");
+        StringBuilder builder = new StringBuilder(returnType.value() + " " + name + " (");
 
         if (argumentCount > 0)
-            builder.append(signature.get(0).value).append(" ").append(signature.get(1).value);
+            builder.append(signature.get(0).value()).append(" ").append(signature.get(1).value());
 
         for (int i = 1; i < argumentCount; i++) {
-            builder.append(", ").append(signature.get(i * 2).value).append(" ").append(signature.get(i * 2 + 1).value);
+            builder.append(", ").append(signature.get(i * 2).value()).append(" ").append(signature.get(i * 2 + 1).value());
         }
 
         builder.append(')');
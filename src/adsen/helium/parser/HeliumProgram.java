@@ -1,7 +1,9 @@
 package adsen.helium.parser;
 
 import adsen.helium.error.ExpressionError;
+import adsen.helium.parser.expr.NodeFactory;
 import adsen.helium.parser.expr.primitives.NodePrimitive;
+import adsen.helium.tokeniser.SymbolTable;
 import adsen.helium.tokeniser.Token;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -18,6 +20,30 @@ import static adsen.helium.exec.Scope.MAIN_FUNCTION;
  * Tbis class handles taking {@link Parser} objects, and extracting functions that can then be run or turned into generated code
  */
 public class HeliumProgram {
+    /**
+     * Names of everything in this program, shared with the {@link adsen.helium.tokeniser.Tokeniser} that read it
+     */
+    public final SymbolTable symbols;
+
+    /**
+     * Shares expression nodes between every function in this program
+     */
+    public final NodeFactory nodes = new NodeFactory();
+
+    /**
+     * Whether every function has been through the {@link adsen.helium.analysis.TypeChecker}, in which case the
+     * interpreter doesn't have to check types as it goes
+     */
+    private boolean typeChecked = false;
+
+    public HeliumProgram(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Tokens of each import at the top of the file, as they were given to the {@link Parser#IMPORT_HANDLER}
+     */
+    private final List<List<Token>> imports = new ArrayList<>();
 
     /**
      * Stores functions which are overloaded, which require the signature to be distinguished in order to identify them.
@@ -52,7 +78,14 @@ public class HeliumProgram {
     public HeliumFunction getFunction(Token functionNameToken, List<NodePrimitive> argValues) {
         Supplier<List<String>> typeSignatureSupplier = () -> argValues.stream().map(NodePrimitive::getTypeString).toList();
 
-        return getFunction(functionNameToken.value, typeSignatureSupplier, functionNameToken);
+        return getFunction(functionNameToken.value(), typeSignatureSupplier, functionNameToken);
+    }
+
+    /**
+     * The function a call goes to, given the types of its arguments, for when they're known before running it
+     */
+    public HeliumFunction resolveFunction(Token functionNameToken, List<String> typeSignature) {
+        return getFunction(functionNameToken.value(), () -> typeSignature, functionNameToken);
     }
 
     public HeliumFunction mainFunction() {
@@ -108,6 +141,22 @@ public class HeliumProgram {
         signatureFunctions.put(funcTypeSig, function);
     }
 
+    public boolean isTypeChecked() {
+        return typeChecked;
+    }
+
+    public void setTypeChecked(boolean typeChecked) {
+        this.typeChecked = typeChecked;
+    }
+
+    public void addImports(List<List<Token>> imports) {
+        this.imports.addAll(imports);
+    }
+
+    public List<List<Token>> getImports() {
+        return Collections.unmodifiableList(imports);
+    }
+
     /**
      * This works because even if functions have been overloaded, they will still have a {@code null} entry in
      * {@link HeliumProgram#functions}.
@@ -0,0 +1,83 @@
+package adsen.helium.parser;
+
+import adsen.helium.error.ExpressionError;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.tokeniser.TokenSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+import static adsen.helium.tokeniser.TokenType.*;
+
+/**
+ * Parses the bodies of a program's functions on all cores at once.
+ * <p>
+ * Functions can't see inside each other, so once we know where each body starts and ends, they can all be read
+ * separately. Finding that out is cheap, since it's just reading each header and then counting curly brackets until the
+ * body's closing one. Then every body gets its own {@link Parser}, all reading from the same tokens (which never change
+ * once they've been read). Functions get added to the program, and errors get thrown, in the order they're in the file,
+ * so the result is exactly the same as parsing them one after another.
+ * <p>
+ * This needs every token to be there already, so it can't read from a {@link adsen.helium.tokeniser.TokenStream}.
+ */
+public class ParallelParser {
+    private final HeliumProgram program;
+    private final TokenSource tokens;
+
+    public ParallelParser(HeliumProgram program, TokenSource tokens) {
+        this.program = program;
+        this.tokens = tokens;
+    }
+
+    public void parse() {
+        Parser headerParser = new Parser(program, tokens);
+        headerParser.parseImports();
+
+        List<FunctionHeader> headers = new ArrayList<>();
+        List<Integer> bodyStarts = new ArrayList<>();
+        ExpressionError headerError = null;
+
+        while (tokens.has(headerParser.tokenPos)) {
+            try {
+                headers.add(headerParser.parseHeader());
+            } catch (ExpressionError error) {
+                //Any functions before this one can still be read, and might have errors of their own that come first
+                headerError = error;
+                break;
+            }
+            bodyStarts.add(headerParser.tokenPos);
+            headerParser.tokenPos = headerParser.skipBody(headerParser.tokenPos);
+        }
+
+        int count = headers.size();
+        Object[] results = new Object[count]; //Either the body or the error that came out of reading it
+        StringBuilder[] logs = new StringBuilder[count];
+
+        IntStream.range(0, count).parallel().forEach(i -> {
+            Parser parser = new Parser(program, tokens);
+            parser.verboseLog = logs[i] = new StringBuilder();
+
+            try {
+                results[i] = parser.parseFunction(bodyStarts.get(i));
+            } catch (ExpressionError error) {
+                results[i] = error;
+            }
+        });
+
+        for (int i = 0; i < count; i++) {
+            if (VERBOSE_FLAGS.contains("parser")) System.out.print(logs[i]);
+
+            if (results[i] instanceof ExpressionError error) throw error;
+
+            @SuppressWarnings("unchecked")
+            List<HeliumStatement> body = (List<HeliumStatement>) results[i];
+            program.addFunction(headers.get(i).toFunction(body));
+        }
+
+        if (headerError != null) throw headerError;
+
+        headerParser.loadImports();
+    }
+}
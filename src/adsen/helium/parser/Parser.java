@@ -21,14 +21,13 @@ import adsen.helium.parser.statement.aggregate.ScopeStatement;
 import adsen.helium.parser.statement.atomic.StaticDeclareStatement;
 import adsen.helium.parser.statement.aggregate.WhileStatement;
 import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.TokenSource;
+import adsen.helium.tokeniser.TokenType;
 import adsen.helium.tokeniser.Tokeniser;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Stack;
-import java.util.function.Function;
 
 import static adsen.helium.Helium.VERBOSE_FLAGS;
 import static adsen.helium.tokeniser.TokenType.*;
@@ -36,7 +35,7 @@ import static adsen.helium.tokeniser.TokenType.*;
 /**
  * Turns a {@link Tokeniser} from a file into a list of functions
  */
-public class Parser {
+public final class Parser {
 
     /**
      * The import handler for this program.
@@ -50,11 +49,23 @@ public class Parser {
      */
     public static Path ROOT_DIRECTORY;
 
+    /**
+     * Whether to parse expressions with {@link ShuntingYard} instead of {@link PrattParser}. Only really kept around to
+     * compare the two
+     */
+    public static boolean SHUNTING_YARD = false;
+
+    /**
+     * Whether to leave function bodies alone until the function is first used, only finding where they end. Needs every
+     * token to be kept around, so it can't be used with a {@link adsen.helium.tokeniser.TokenStream}
+     */
+    public static boolean LAZY = false;
+
 
     /**
-     * List of tokens to turn into AST
+     * Tokens to turn into AST
      */
-    public final List<Token> tokens;
+    public final TokenSource tokens;
 
     /**
      * The program for which this is parsing. TODO make Parser a component of HeliumProgram, not the other way around
@@ -62,65 +73,134 @@ public class Parser {
     public final HeliumProgram program;
 
     /**
-     * Stores statements by scopes, simplifying scope creation. A nice reminder of an amazing development sidequest
+     * How many scopes deep the statement being read is, for verbose messages
      */
-    private final Stack<ParserScope> parserScopes = new Stack<>();
+    private int scopeDepth = 0;
 
     /**
      * Current position within token list
      */
-    private int tokenPos = 0;
+    int tokenPos = 0;
+
+    private final PrattParser prattParser = new PrattParser(this);
+
+    /**
+     * If this isn't null, verbose messages go here instead of straight to the console, so that a {@link ParallelParser}
+     * can print them in the order the functions are in
+     */
+    StringBuilder verboseLog = null;
 
     public Parser(HeliumProgram program, Tokeniser tokeniser) {
-        this.program = program;
+        this(program, tokeniser.tokens());
         tokeniser.tokenise(); //In case we didn't do it already
-        this.tokens = Collections.unmodifiableList(tokeniser.tokens());
+    }
+
+    /**
+     * For reading from a {@link adsen.helium.tokeniser.TokenStream}, or tokens which have already been read
+     */
+    public Parser(HeliumProgram program, TokenSource tokens) {
+        this.program = program;
+        this.tokens = tokens;
     }
 
     NodeExpr parseExpr() {
-        return parseExpr(false);
+        return parseExpr(SEMICOLON);
     }
 
     /**
-     * Gathers tokens for a possible expression, before sending them off to {@link ShuntingYard#parseExpr} to get
-     * evaluated into a {@link NodeExpr}
-     *
-     * @param inBrackets Whether the expression is enclosed in a pair of brackets (for an if or while statement)
+     * Reads an expression enclosed in brackets (for an if or while statement), leaving {@link Parser#tokenPos} on the
+     * closing bracket
      */
     NodeExpr parseExpr(boolean inBrackets) {
-        List<Token> exprTokens = new ArrayList<>();
+        if (!inBrackets) return parseExpr();
 
-        Token t = peek();
-        int depth = 0;
+        if (peekType() != OPEN_PAREN) throw new ExpressionError("Expected '('", peek());
+        advance();
 
-        if (inBrackets) {
-            if (t.type != OPEN_PAREN) throw new ExpressionError("Expected '('", t);
-        }
+        return parseExpr(CLOSE_PAREN);
+    }
+
+    /**
+     * Reads an expression which should be followed by {@code end}, leaving {@link Parser#tokenPos} on it
+     */
+    private NodeExpr parseExpr(TokenType end) {
+        //This is only acceptable with an empty return statement, which is a case we handle before reaching this point
+        if (peekType() == end) throw new ExpressionError("Tried to parse empty expression", peek());
+
+        int start = tokenPos;
+        NodeExpr expr = SHUNTING_YARD ? parseExprShuntingYard(end) : prattParser.parseExpr();
 
-        for (; hasNext() && peek().isValidExprToken() && !(inBrackets && depth == 1 && t.type == CLOSE_PAREN); t = consume()) {
-            if (t.type == OPEN_PAREN) depth++;
-            if (t.type == CLOSE_PAREN) depth--;
-            exprTokens.add(t);
+        if (!hasNext()) throw new ExpressionError("Reached end of file while reading expression", tokens.getLast());
+
+        if (peekType() != end) {
+            if (end == SEMICOLON) throw missingSemicolon(start);
+            throw new ExpressionError("Expected ')' after expression", peek());
         }
 
-        if (inBrackets) {
-            if (t.type != CLOSE_PAREN) throw new ExpressionError("Expected ')' after expression", t);
+        return expr;
+    }
 
-            // Adding final closed bracket to the expression
-            // Not checking for depth not being 1, since we already know that parentheses are matched by this point
-            if (depth == 1) exprTokens.add(t);
+    /**
+     * Error for an expression which stopped before a ';'. If everything up to the next ';' could have been part of an
+     * expression, then that whole lot is one bad expression, so the error points at the start of it, like it did back
+     * when expressions were gathered up to the ';' before being parsed. Otherwise, it points at whatever's in the way.
+     */
+    private ExpressionError missingSemicolon(int start) {
+        int offset = 0;
+        while (hasNext(offset + 1) && peekType(offset).isValidExprToken()) offset++;
 
-        } else if (t.type != SEMICOLON) throw new ExpressionError("Expected ';' after expression", t);
+        if (peekType(offset) == SEMICOLON) return new ExpressionError("Invalid expression", tokens.token(start));
+        return new ExpressionError("Expected ';' after expression", peek(offset));
+    }
 
-        //This is only acceptable with an empty return statement, which is a case we handle before reaching this point
-        if (exprTokens.isEmpty()) throw new ExpressionError("Tried to parse empty expression", t);
+    /**
+     * Gathers tokens for a possible expression, before sending them off to {@link ShuntingYard#parseExpr} to get
+     * evaluated into a {@link NodeExpr}
+     */
+    private NodeExpr parseExprShuntingYard(TokenType end) {
+        int start = tokenPos;
+        int depth = 0;
+
+        for (TokenType type = peekType(); hasNext() && type.isValidExprToken() && !(depth == 0 && type == end); type = advance()) {
+            if (type == OPEN_PAREN) depth++;
+            if (type == CLOSE_PAREN) depth--;
+        }
+
+        if (!hasNext()) throw new ExpressionError("Reached end of file while reading expression", tokens.getLast());
+
+        if (tokenPos == start) throw new ExpressionError("Tried to parse empty expression", peek());
+        //Checked before the expression itself, so that it's the same error as with the Pratt parser
+        if (end == SEMICOLON && peekType() != SEMICOLON) throw new ExpressionError("Expected ';' after expression", peek());
 
-        return ShuntingYard.parseExpr(exprTokens);
+        return ShuntingYard.parseExpr(tokens, program.nodes, start, tokenPos);
     }
 
     public void parse() {
+        parseImports();
 
-        boolean hasImports = tokens.getFirst().type == IMPORT;
+        while (tokens.has(tokenPos)) {
+            tokens.release(tokenPos); //Nothing looks back past the start of a function
+
+            FunctionHeader header = parseHeader();
+
+            if (LAZY) {
+                int bodyStart = tokenPos;
+                tokenPos = skipBody(bodyStart);
+                program.addFunction(header.toFunction(() -> new Parser(program, tokens).parseFunction(bodyStart)));
+            } else {
+                program.addFunction(header.toFunction(parseFunction(tokenPos)));
+            }
+        }
+
+        loadImports();
+    }
+
+    /**
+     * Reads the imports at the top of the file and hands them to {@link Parser#IMPORT_HANDLER}, finishing on the first
+     * token after them
+     */
+    void parseImports() {
+        boolean hasImports = tokens.has(0) && tokens.type(0) == IMPORT;
 
         boolean importsFinished = false;
 
@@ -129,8 +209,8 @@ public class Parser {
         tokenPos = 0;
 
         if (hasImports) {
-            while (tokenPos < tokens.size() && !importsFinished) {
-                Token t = tokens.get(tokenPos);
+            while (tokens.has(tokenPos) && !importsFinished) {
+                Token t = peek();
                 if (t.type == IMPORT) {
                     List<Token> importLocation = new ArrayList<>();
 
@@ -149,7 +229,7 @@ public class Parser {
                         //If we reached the end, break
                         if (next.type == SEMICOLON) break;
 
-                        if (next.type != BINARY_OPERATOR || !next.value.equals("/")) {
+                        if (next.type != BINARY_OPERATOR || !next.value().equals("/")) {
                             throw new ExpressionError("Improper import format, expected '/' here ", next);
                         }
                     }
@@ -161,376 +241,359 @@ public class Parser {
                 }
             }
 
-            if (tokenPos >= tokens.size()) {
+            if (!tokens.has(tokenPos)) {
                 throw new ExpressionError("Reached end of file without reading any code", tokens.getLast());
             }
             IMPORT_HANDLER.acceptImports(imports);
+            program.addImports(imports);
         }
+    }
 
-        while (tokenPos < tokens.size()) {
-            Token t = tokens.get(tokenPos);
-
-            if (t.isFunctionReturnToken()) {
-
-                Token returnType = t;
-                Token functionName = consume();
-                if (functionName.type != FUNCTION)
-                    throw new ExpressionError("Expected function declaration", functionName);
-
-                consume(); //This is the open parenthesis after the function name
-                List<Token> signature = new ArrayList<>();
-                for (t = consume(); t.type != CLOSE_PAREN; t = consume()) {
-
-                    if (t.type == PRIMITIVE_TYPE || t.type == COMPOUND_TYPE || t.type == CLASS_TYPE) {
-                        signature.add(t);
-                        t = consume();
+    /**
+     * Reads a function's return type, name and signature, finishing on the '{' at the start of its body
+     */
+    FunctionHeader parseHeader() {
+        Token t = peek();
 
-                        if (t.type == VARIABLE) {
-                            signature.add(t);
-                            t = consume();
+        if (!t.isFunctionReturnToken())
+            throw new ExpressionError("Unexpected token: " + t, t);
 
-                            if (t.type == CLOSE_PAREN) break; //Reached the end of the signature
-                            if (t.type != COMMA) throw new ExpressionError("Expected ','", t);
+        Token returnType = t;
+        Token functionName = consume();
+        if (functionName.type != FUNCTION)
+            throw new ExpressionError("Expected function declaration", functionName);
 
-                        } else throw new ExpressionError("Expected variable", t);
-                        //This might have to go, or maybe just change, once classes become a thing
-                    } else throw new ExpressionError("Expected type", t);
+        consume(); //This is the open parenthesis after the function name
+        List<Token> signature = new ArrayList<>();
+        for (t = consume(); t.type != CLOSE_PAREN; t = consume()) {
 
-                }
+            if (t.type == PRIMITIVE_TYPE || t.type == COMPOUND_TYPE || t.type == CLASS_TYPE) {
+                signature.add(t);
+                t = consume();
 
-                Token open_curly = consume();
+                if (t.type == VARIABLE) {
+                    signature.add(t);
+                    t = consume();
 
-                if (open_curly.type != C_OPEN_PAREN)
-                    throw new ExpressionError("Expected '{' after function declaration", open_curly);
+                    if (t.type == CLOSE_PAREN) break; //Reached the end of the signature
+                    if (t.type != COMMA) throw new ExpressionError("Expected ','", t);
 
-                parserScopes.push(new ParserScope());
+                } else throw new ExpressionError("Expected variable", t);
+                //This might have to go, or maybe just change, once classes become a thing
+            } else throw new ExpressionError("Expected type", t);
 
-                HeliumFunction function = new HeliumFunction(returnType, functionName, signature, parseFunction(tokenPos));
+        }
 
-                // Popping the scope we just pushed on so the next function can parse
-                parserScopes.pop();
+        Token open_curly = consume();
 
-                program.addFunction(function);
-            } else
-                throw new ExpressionError("Unexpected token: " + t, t);
+        if (open_curly.type != C_OPEN_PAREN)
+            throw new ExpressionError("Expected '{' after function declaration", open_curly);
 
-        }
+        return new FunctionHeader(returnType, functionName, signature);
+    }
 
+    void loadImports() {
         //TODO figure out better place for these, possibly in HeliumProgram
         IMPORT_HANDLER.loadNativeImportData();
         IMPORT_HANDLER.loadImportData();
     }
 
+    /**
+     * Position just after the '}' closing the body which opens at {@code start}. If it's never closed, that's the end of
+     * the file, and the error comes from parsing the body itself
+     */
+    int skipBody(int start) {
+        int depth = 0;
+        int pos = start;
+
+        for (; tokens.has(pos); pos++) {
+            if (tokens.type(pos) == C_OPEN_PAREN) depth++;
+            else if (tokens.type(pos) == C_CLOSE_PAREN && --depth == 0) return pos + 1;
+        }
+        return pos;
+    }
+    /**
+     * Reads the body of a function, starting from its opening curly bracket and finishing after its closing one
+     */
     List<HeliumStatement> parseFunction(int startPos) {
+        tokenPos = startPos;
+        scopeDepth = 1; //The function itself counts as a scope
+        return parseScope().statements;
+    }
 
-        //Empty case is to ensure we only grab one statement from a function (a scope statement whose contents we steal)
-        for (tokenPos = startPos; hasNext() && parserScopes.firstElement().statements.isEmpty(); tokenPos++) {
-            Token t = peek();
+    /**
+     * Reads the statements between a pair of curly brackets, starting on the '{' and finishing after the '}'
+     */
+    private ScopeStatement parseScope() {
+        advance(); //Consuming '{'
+        scopeDepth++;
 
-            //If we don't need the semicolon at the end, then don't look for it (e.g. in for statement incrementer)
-            boolean needSemi = true; //used for if, else, while, etc.
+        List<HeliumStatement> statements = new ArrayList<>();
 
-            // Consuming token to jump to the next one, since all statements need it
-            Token next = consume();
+        for (TokenType type = peekType(); type != C_CLOSE_PAREN; type = peekType()) {
+            if (type == null) throw new ExpressionError("Didn't close function properly", tokens.getLast());
 
-            HeliumStatement statement = switch (t.type) {
-                case EXIT -> new ExitStatement(t, parseExpr());
+            //Any else that belongs to an if gets read along with it, so this one has nothing to attach to
+            if (type == ELSE && !statements.isEmpty() && statements.getLast() instanceof IfStatement ifStmt && ifStmt.hasElse())
+                throw new ExpressionError("Already added an else to this if statement", peek());
 
-                case RETURN -> { //Return statement
-                    if (peek().type == SEMICOLON)
-                        yield new ReturnStatement(t, null);
+            statements.add(parseStatement());
+        }
 
-                    else yield new ReturnStatement(t, parseExpr());
-                }
+        Token closeToken = peek();
+        advance(); //Consuming '}'
+        scopeDepth--;
 
-                case CONTINUE -> new ContinueStatement(t);
+        return new ScopeStatement(statements, closeToken);
+    }
 
-                case BREAK -> new BreakStatement(t);
+    /**
+     * Reads one whole statement, including any statements inside it, and finishes on the token after it
+     */
+    private HeliumStatement parseStatement() {
+        tokens.release(tokenPos); //Nothing looks back past the start of a statement
 
-                case PRIMITIVE_TYPE -> { //Static declaration
-                    // 'next' holds the name of the identifier
+        Token t = peek();
 
-                    if (next.type != VARIABLE)
-                        throw new ExpressionError("Must have a variable name after '" + t.value + "'", next);
+        HeliumStatement statement = switch (t.type) {
+            case C_OPEN_PAREN -> parseScope();
+            //Message kept from the old parser, this means an if/while/for is missing its statement
+            case C_CLOSE_PAREN -> throw new ExpressionError("Still had statement requests in scope", t);
 
-                    Token declarer = consume(); //Consuming identifier
+            case IF -> parseIf();
+            case ELSE -> throw new ExpressionError("Must have an if preceding else statement", t);
+            case WHILE -> parseWhile();
+            case FOR -> parseFor();
 
-                    if (peek().type != DECLARATION_OPERATION)
-                        throw new ExpressionError("Expected a declaration after '" + next.value + "'", declarer);
+            default -> {
+                HeliumStatement simple = parseSimpleStatement(SEMICOLON);
+                expectSemicolon();
+                yield simple;
+            }
+        };
 
-                    consume(); //Consuming declarer operation
+        if (VERBOSE_FLAGS.contains("parser"))
+            verbose("Formed a statement: " + statement.asString() + " at scope depth: " + scopeDepth + "\n");
 
-                    yield new StaticDeclareStatement(t, new NodeIdentifier(next), declarer, parseExpr());
-                }
-                case LET -> { // Normal declaration
-                    // 'next' holds the name of the identifier
+        return statement;
+    }
 
-                    if (next.type != VARIABLE)
-                        throw new ExpressionError("Must have an identifier after 'let'", next);
+    /**
+     * Reads a statement which doesn't contain other statements, finishing on the token after it
+     *
+     * @param end What should come after the statement, which is a ';' except in a for loop's incrementer
+     */
+    private HeliumStatement parseSimpleStatement(TokenType end) {
+        Token t = peek();
 
-                    Token declarer = consume(); //Consuming identifier
+        // Consuming token to jump to the next one, since all statements need it
+        Token next = consume();
 
-                    if (declarer.type != DECLARATION_OPERATION)
-                        throw new ExpressionError("Expected a declaration after '" + next.value + "'", declarer);
+        return switch (t.type) {
+            case EXIT -> new ExitStatement(t, parseExpr(end));
 
-                    consume(); //Consuming declarer operation
+            case RETURN -> { //Return statement
+                if (peekType() == end)
+                    yield new ReturnStatement(t, null);
 
-                    yield new DeclareStatement(new NodeIdentifier(next), declarer, parseExpr());
-                }
-                case UNARY_OPERATOR -> {
-                    OperatorType opType = Operator.operatorType.get(t.value);
+                else yield new ReturnStatement(t, parseExpr(end));
+            }
 
-                    if (opType != OperatorType.INCREMENT && opType != OperatorType.DECREMENT) {
-                        throw new ExpressionError("Not a statement", t);
-                    }
+            case CONTINUE -> new ContinueStatement(t);
 
-                    // 'next' holds the name of the identifier
+            case BREAK -> new BreakStatement(t);
 
-                    if (next.type != VARIABLE) {
-                        throw new ExpressionError("Expected a variable after " + t.value, next);
-                    }
-                    consume(); //Consuming identifier
+            case PRIMITIVE_TYPE -> { //Static declaration
+                // 'next' holds the name of the identifier
 
-                    yield new IncrementStatement(new NodeIdentifier(next), t, true);
-                }
-                case VARIABLE -> { // Variable assignment
-                    // 'next' holds the name of the declaration operation or incrementer
-
-                    //Could be increment or decrement
-                    //Checking that the next token is a semicolon (single statement) or closed parenthesis (for loop incrementer)
-                    if (next.type == UNARY_OPERATOR && (peek(1).type == SEMICOLON || peek(1).type == CLOSE_PAREN)) {
-                        consume();//Consuming incrementor
-                        yield new IncrementStatement(new NodeIdentifier(t), next, false);
-                    }
+                if (next.type != VARIABLE)
+                    throw new ExpressionError("Must have a variable name after '" + t.value() + "'", next);
 
-                    if (next.type != DECLARATION_OPERATION) //Gonna add option for +=, -=, here eventually
-                        throw new ExpressionError("Expected an assignment after '" + t.value + "'", next);
+                Token declarer = consume(); //Consuming identifier
 
-                    consume(); //Consuming assigner operation
+                if (peekType() != DECLARATION_OPERATION)
+                    throw new ExpressionError("Expected a declaration after '" + next.value() + "'", declarer);
 
-                    yield new AssignStatement(new NodeIdentifier(t), next, parseExpr());
-                }
-                case C_OPEN_PAREN -> { //New scope
-                    tokenPos--; // Counteracting the consume() that we did right before the switch statement since we don't need it
-                    needSemi = false;
+                consume(); //Consuming declarer operation
 
-                    //From now on we will read statements into the new scope
-                    parserScopes.push(new ParserScope());
+                yield new StaticDeclareStatement(t, program.nodes.share(new NodeIdentifier(next)), declarer, parseExpr(end));
+            }
+            case LET -> { // Normal declaration
+                // 'next' holds the name of the identifier
 
-                    yield null;
-                }
+                if (next.type != VARIABLE)
+                    throw new ExpressionError("Must have an identifier after 'let'", next);
 
-                case C_CLOSE_PAREN -> {
-                    tokenPos--; // Counteracting the consume() that we did right before the switch statement since we don't need it
-                    needSemi = false;
-                    ParserScope popped = parserScopes.pop();
-                    if (!popped.statementRequests.isEmpty()) {
-                        throw new ExpressionError("Still had statement requests in scope", t);
-                    }
+                Token declarer = consume(); //Consuming identifier
 
-                    yield new ScopeStatement(popped.statements, t);
-                }
+                if (declarer.type != DECLARATION_OPERATION)
+                    throw new ExpressionError("Expected a declaration after '" + next.value() + "'", declarer);
 
-                case IF -> {
-                    Token ifT = t;
+                consume(); //Consuming declarer operation
 
-                    NodeExpr ifExpr = parseExpr(true);
+                yield new DeclareStatement(program.nodes.share(new NodeIdentifier(next)), declarer, parseExpr(end));
+            }
+            case UNARY_OPERATOR -> {
+                OperatorType opType = Operator.operatorType.get(t.value());
 
-                    needSemi = false; //don't need semicolon after the expression
+                if (opType != OperatorType.INCREMENT && opType != OperatorType.DECREMENT) {
+                    throw new ExpressionError("Not a statement", t);
+                }
 
-                    addRequest((thenStatement) -> new IfStatement(ifT, ifExpr, thenStatement));
+                // 'next' holds the name of the identifier
 
-                    yield null;
+                if (next.type != VARIABLE) {
+                    throw new ExpressionError("Expected a variable after " + t.value(), next);
                 }
-                case ELSE -> {
-                    tokenPos--; // Counteracting the consume() that we did right before the switch statement since we don't need it
-                    if (scope().statements.getLast() instanceof IfStatement ifStmt) {
-                        Token elseToken = t;
-                        addRequest((elseStatement) -> {
-                            ifStmt.addElse(elseToken, elseStatement);
-                            return null;
-                        });
-                        needSemi = false;
-                    } else {
-                        throw new ExpressionError("Must have an if preceding else statement", t);
-                    }
-                    yield null;
-                }
-
-                case WHILE -> {
-                    Token whileT = t;
+                consume(); //Consuming identifier
 
-                    NodeExpr whileCondition = parseExpr(true);
+                yield new IncrementStatement(program.nodes.share(new NodeIdentifier(next)), t, true);
+            }
+            case VARIABLE -> { // Variable assignment
+                // 'next' holds the name of the declaration operation or incrementer
+
+                //Could be increment or decrement
+                //Checking that the next token is a semicolon (single statement) or closed parenthesis (for loop incrementer)
+                if (next.type == UNARY_OPERATOR && (peekType(1) == SEMICOLON || peekType(1) == CLOSE_PAREN)) {
+                    consume();//Consuming incrementor
+                    yield new IncrementStatement(program.nodes.share(new NodeIdentifier(t)), next, false);
+                }
 
-                    needSemi = false; //don't need semicolon after the expression
+                if (next.type != DECLARATION_OPERATION) //Gonna add option for +=, -=, here eventually
+                    throw new ExpressionError("Expected an assignment after '" + t.value() + "'", next);
 
-                    addRequest((executionStatement) -> {
-                        if (executionStatement instanceof ScopeStatement scope) {
-                            scope.setLoop();
-                        }
+                consume(); //Consuming assigner operation
 
-                        return new WhileStatement(whileT, whileCondition, executionStatement);
-                    });
+                yield new AssignStatement(program.nodes.share(new NodeIdentifier(t)), next, parseExpr(end));
+            }
 
-                    yield null;
+            case FUNCTION -> { //Function call
+                if (!SHUNTING_YARD) {
+                    tokenPos--; //Going back to the function name, so the whole call gets read as an expression
+                    yield new FunctionCallStatement(t, prattParser.parseCall().arguments);
                 }
 
-                case FOR -> {
-                    Token forT = t;
-                    t = next;
-                    if (t.type != OPEN_PAREN) throw new ExpressionError("Expected '(' after for", t);
+                yield new FunctionCallStatement(t, parseCallShuntingYard(t, next));
+            }
+            default -> throw new ExpressionError("Unknown statement", t);
+        };
+    }
 
-                    //Todo add proper checks for assigner and incrementer being assignment statements
-                    //LOL can't even remember what this to-do was about, but I'm afraid to remove it
+    private IfStatement parseIf() {
+        Token ifToken = peek();
+        advance();
 
-                    StatementRequest assignerRequest = StatementRequest.from((assigner) -> {
-                        if (!(assigner instanceof AssignStatement || assigner instanceof FunctionCallStatement || assigner instanceof DeclareStatement)) {
-                            throw new ExpressionError("Invalid assigner expression in for statement", assigner.primaryToken());
-                        }
+        NodeExpr condition = parseExpr(true);
+        advance(); //Consuming ')'
 
-                        Token _t = peek();
-                        if (_t.type != SEMICOLON) throw new ExpressionError("Expected ';' after expression", _t);
+        HeliumStatement thenStatement = parseStatement();
 
-                        consume(); //consuming semicolon
+        if (peekType() != ELSE)
+            return new IfStatement(ifToken, condition, thenStatement);
 
-                        NodeExpr forCondition = parseExpr();
+        Token elseToken = peek();
+        advance();
 
-                        return new ForStatement(forT, assigner, forCondition);
-                    });
+        return new IfStatement(ifToken, condition, thenStatement, elseToken, parseStatement());
+    }
 
-                    StatementRequest incrementerRequest = StatementRequest.withoutSemicolon((incrementer) -> {
-                        HeliumStatement stmt;
-                        if ((stmt = scope().statements.getLast()) instanceof ForStatement) {
-                            if (!(incrementer instanceof AssignStatement || incrementer instanceof FunctionCallStatement || incrementer instanceof DeclareStatement)) {
-                                throw new ExpressionError("Invalid incrementer expression in for statement", stmt.primaryToken());
-                            }
-                            ((ForStatement) stmt).addIncrementer(incrementer);
+    private WhileStatement parseWhile() {
+        Token whileToken = peek();
+        advance();
 
-                            return null;
-                        } else {
-                            throw new ExpressionError("Expected for statement", stmt.primaryToken());
-                        }
-                    });
-
-                    StatementRequest executionStatementRequest = StatementRequest.from((execStatement) -> {
-                        HeliumStatement stmt;
-                        if ((stmt = scope().statements.getLast()) instanceof ForStatement) {
-                            if (execStatement instanceof ScopeStatement scope) {
-                                scope.setLoop();
-                            }
-                            ((ForStatement) stmt).addStatement(execStatement);
-                            return null;
-                        } else {
-                            throw new ExpressionError("Expected for statement", stmt.primaryToken());
-                        }
-                    });
+        NodeExpr condition = parseExpr(true);
+        advance(); //Consuming ')'
 
-                    needSemi = false; //don't need semicolon after the expression
+        return new WhileStatement(whileToken, condition, parseLoopBody());
+    }
 
-                    //Push them in reverse order, so assigner gets handled first
-                    addRequest(executionStatementRequest);
-                    addRequest(incrementerRequest);
-                    addRequest(assignerRequest);
+    private ForStatement parseFor() {
+        Token forToken = peek();
+        Token t = consume();
 
-                    yield null;
-                }
+        if (t.type != OPEN_PAREN) throw new ExpressionError("Expected '(' after for", t);
+        advance();
 
-                case FUNCTION -> { //Function call
-                    Token fCallTok = t;
-                    t = next;
+        HeliumStatement assigner = parseSimpleStatement(SEMICOLON);
 
-                    if (t.type != OPEN_PAREN)
-                        throw new ExpressionError("Expected '(' after '" + fCallTok.value + "'", t);
+        if (!(assigner instanceof AssignStatement || assigner instanceof FunctionCallStatement || assigner instanceof DeclareStatement)) {
+            throw new ExpressionError("Invalid assigner expression in for statement", assigner.primaryToken());
+        }
 
-                    int parens = 1;
-                    List<Token> tempExpr = new ArrayList<>();
-                    List<NodeExpr> args = new ArrayList<>();
+        expectSemicolon();
 
+        NodeExpr condition = parseExpr();
+        advance(); //Consuming ';'
 
-                    while (t.type != CLOSE_PAREN) { //Grab tokens into args separated by commas
+        HeliumStatement incrementer = parseSimpleStatement(CLOSE_PAREN);
 
-                        t = consume(); //Consuming the open parenthesis, and subsequent commas
+        if (!(incrementer instanceof AssignStatement || incrementer instanceof FunctionCallStatement || incrementer instanceof DeclareStatement)) {
+            throw new ExpressionError("Invalid incrementer expression in for statement", forToken);
+        }
 
-                        while (!(parens == 1 && (t.type == COMMA || t.type == CLOSE_PAREN))) {
+        if (peekType() != CLOSE_PAREN) throw new ExpressionError("Expected ')' after for loop incrementer", peek());
+        advance();
 
-                            if (t.type == OPEN_PAREN) parens++;
-                            if (t.type == CLOSE_PAREN) parens--;
+        return new ForStatement(forToken, assigner, condition, incrementer, parseLoopBody());
+    }
 
-                            if (parens == 0) throw new ExpressionError("Unexpected ')'", t);
+    /**
+     * Reads the statement run by a loop, marking it as a loop if it's a scope so break and continue can find it
+     */
+    private HeliumStatement parseLoopBody() {
+        HeliumStatement body = parseStatement();
+        return body instanceof ScopeStatement scope ? scope.asLoop() : body;
+    }
 
-                            tempExpr.add(t);
-                            t = consume();
-                        }
-                        // If no tokens have been found for the expression, then this might be a function with 0 args
-                        // But if we already have args, then this is an error
-                        if (tempExpr.isEmpty()) {
-                            if (args.isEmpty() && t.type == CLOSE_PAREN) { //Function with 0 args
-                                break;
-                            } else {
-                                throw new ExpressionError("Expected function argument", t);
-                            }
-                        }
-                        args.add(ShuntingYard.parseExpr(tempExpr));
-                        tempExpr.clear();
-                    }
+    /**
+     * Skips the ';' at the end of a statement, complaining if it isn't there
+     */
+    private void expectSemicolon() {
+        if (peekType() != SEMICOLON) throw new ExpressionError("Must have ';' after statement", peek());
+        advance();
+    }
 
-                    consume(); //Consuming closed parenthesis
+    /**
+     * Collects the arguments of a function call statement as token ranges and gives them to {@link ShuntingYard}.
+     * Finishes after the closing parenthesis
+     */
+    private List<NodeExpr> parseCallShuntingYard(Token fCallTok, Token t) {
+        if (t.type != OPEN_PAREN)
+            throw new ExpressionError("Expected '(' after '" + fCallTok.value() + "'", t);
 
-                    yield new FunctionCallStatement(fCallTok, args);
-                }
-                default -> throw new ExpressionError("Unknown statement", t);
-            };
+        int parens = 1;
+        List<NodeExpr> args = new ArrayList<>();
+        TokenType type = t.type;
 
-            // Must end statements with semicolon
-            if (needSemi && !(hasNext() && peek().type == SEMICOLON) && (!scope().statementRequests.isEmpty() && scope().statementRequests.peek().needSemicolon)) {
-                throw new ExpressionError("Must have ';' after statement", peek());
-            }
+        while (type != CLOSE_PAREN) { //Grab tokens into args separated by commas
 
-            if (statement != null) {
-                if (VERBOSE_FLAGS.contains("parser"))
-                    System.out.println("Formed a statement: " + statement.asString() + " at scope depth: " + parserScopes.size());
+            type = advance(); //Consuming the open parenthesis, and subsequent commas
+            int argStart = tokenPos;
 
-                //If there are no if, while, etc. that want a statement
-                if (scope().statementRequests.isEmpty()) {
-                    if (VERBOSE_FLAGS.contains("parser"))
-                        System.out.println("That was directly added onto the statement stack\n");
-                } else {
-                    statement = scope().statementRequests.pop().apply(statement);
+            while (!(parens == 1 && (type == COMMA || type == CLOSE_PAREN))) {
 
-                    if (VERBOSE_FLAGS.contains("parser"))
-                        System.out.println("That was consumed by a request, producing: " + (statement == null ? scope().statements.getLast() : statement).asString() + "\n");
-                }
+                if (type == OPEN_PAREN) parens++;
+                if (type == CLOSE_PAREN) parens--;
+
+                if (parens == 0) throw new ExpressionError("Unexpected ')'", peek());
 
-                // This being null here means request modified an existing statement instead of producing a new one
-                if (statement != null) {
-                    scope().statements.add(statement);
+                type = advance();
+            }
+            // If no tokens have been found for the expression, then this might be a function with 0 args
+            // But if we already have args, then this is an error
+            if (tokenPos == argStart) {
+                if (args.isEmpty() && type == CLOSE_PAREN) { //Function with 0 args
+                    break;
+                } else {
+                    throw new ExpressionError("Expected function argument", peek());
                 }
             }
+            args.add(ShuntingYard.parseExpr(tokens, program.nodes, argStart, tokenPos));
         }
 
-        //Finishing up the function
+        consume(); //Consuming closed parenthesis
 
-        HeliumStatement functionScope;
-        ParserScope firstScope;
-        if (parserScopes.isEmpty()) {
-            throw new ExpressionError("Empty parser scope, how did we get here?", null);
-        } else if (parserScopes.size() > 1) {
-
-            throw new ExpressionError("Didn't pop scopes correctly", scope().statements.getFirst().primaryToken());
-        } else if ((firstScope = scope()).statements.isEmpty()) {
-
-            throw new ExpressionError("Didn't close function properly", tokens.getLast());
-
-        } else if (firstScope.statements.size() > 1) {
-
-            throw new ExpressionError("Too many statements, impossible to reach this point", null);
-
-        } else if (!((functionScope = firstScope.statements.getFirst()) instanceof ScopeStatement)) {
-            throw new ExpressionError("Incorrect function declaration", functionScope.primaryToken());
-
-        } else {
-            return ((ScopeStatement) functionScope).statements;
-        }
+        return args;
     }
 
     boolean hasNext() {
@@ -538,7 +601,7 @@ public class Parser {
     }
 
     boolean hasNext(int offset) {
-        return tokenPos + offset < tokens.size();
+        return tokens.has(tokenPos + offset);
     }
 
     Token peek() {
@@ -547,51 +610,36 @@ public class Parser {
 
     Token peek(int offset) {
         if (!hasNext(offset)) return null;
-        return tokens.get(tokenPos + offset);
-    }
-
-    Token consume() {
-        tokenPos++;
-        return peek();
-    }
-
-    ParserScope scope() {
-        return parserScopes.peek();
-    }
-
-    void addRequest(StatementRequest request) {
-        scope().statementRequests.push(request);
+        return tokens.token(tokenPos + offset);
     }
 
-    void addRequest(Function<HeliumStatement, HeliumStatement> request) {
-        addRequest(StatementRequest.from(request));
+    /**
+     * Type of the current token, without making a {@link Token} for it
+     */
+    TokenType peekType() {
+        return peekType(0);
     }
-}
-
-class ParserScope {
-    public final List<HeliumStatement> statements = new ArrayList<>();
-    public final Stack<StatementRequest> statementRequests = new Stack<>();
-}
 
-
-class StatementRequest {
-    final Function<HeliumStatement, HeliumStatement> request;
-    final boolean needSemicolon;
-
-    private StatementRequest(boolean needSemicolon, Function<HeliumStatement, HeliumStatement> request) {
-        this.needSemicolon = needSemicolon;
-        this.request = request;
+    TokenType peekType(int offset) {
+        if (!hasNext(offset)) return null;
+        return tokens.type(tokenPos + offset);
     }
 
-    public static StatementRequest from(Function<HeliumStatement, HeliumStatement> request) {
-        return new StatementRequest(true, request);
+    private void verbose(String message) {
+        if (verboseLog == null) System.out.println(message);
+        else verboseLog.append(message).append('\n');
     }
 
-    public static StatementRequest withoutSemicolon(Function<HeliumStatement, HeliumStatement> request) {
-        return new StatementRequest(false, request);
+    Token consume() {
+        tokenPos++;
+        return peek();
     }
 
-    HeliumStatement apply(HeliumStatement statement) {
-        return request.apply(statement);
+    /**
+     * Like {@link Parser#consume()}, but only gives the type of the next token
+     */
+    TokenType advance() {
+        tokenPos++;
+        return peekType();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,160 @@
+package adsen.helium.parser;
+
+import adsen.helium.error.ExpressionError;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeFactory;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.OperatorType;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.expr.primitives.BoolPrimitive;
+import adsen.helium.parser.expr.primitives.CharPrimitive;
+import adsen.helium.parser.expr.primitives.FloatPrimitive;
+import adsen.helium.parser.expr.primitives.IntPrimitive;
+import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.TokenType;
+
+import static adsen.helium.tokeniser.TokenType.*;
+
+/**
+ * Parses expressions by precedence climbing (a Pratt parser), reading straight from the {@link Parser}'s position
+ * instead of collecting the expression's tokens first like {@link ShuntingYard} does.
+ * <p>
+ * Each call to {@link PrattParser#parseExpr} reads as far as the expression goes and leaves the parser on the first token
+ * after it, so whoever called it decides whether that token (';', ')', ',', etc.) is allowed to end an expression.
+ */
+class PrattParser {
+    private final Parser parser;
+
+    PrattParser(Parser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Reads a whole expression
+     */
+    NodeExpr parseExpr() {
+        return parseExpr(0);
+    }
+
+    /**
+     * Reads an expression, stopping at the first binary operator which binds less tightly than {@code minPrecedence}
+     */
+    private NodeExpr parseExpr(int minPrecedence) {
+        NodeExpr left = parsePrefix();
+
+        for (TokenType type = parser.peekType(); type == BINARY_OPERATOR || type == UNARY_OPERATOR; type = parser.peekType()) {
+            OperatorType opType = parser.tokens.operator(parser.tokenPos);
+
+            if (opType.precedence < minPrecedence) break;
+
+            if (type == UNARY_OPERATOR) {
+                //Only postfix operators (x++) can come after a value, anything else means a missing binary operator
+                if (opType != OperatorType.INCREMENT && opType != OperatorType.DECREMENT)
+                    throw new ExpressionError("Expected an operator before '" + opType.value + "'", parser.peek());
+
+                parser.advance();
+                left = share(new UnaryOperator(opType, left));
+                continue;
+            }
+
+            parser.advance();
+
+            //Left to right operators don't let the right side take another operator of the same precedence
+            NodeExpr right = parseExpr(opType.leftToRight ? opType.precedence + 1 : opType.precedence);
+            left = share(new BinaryOperator(left, opType, right));
+        }
+
+        return left;
+    }
+
+    /**
+     * Reads a value, along with any prefix operators in front of it
+     */
+    private NodeExpr parsePrefix() {
+        TokenType type = parser.peekType();
+
+        if (type == null)
+            throw new ExpressionError("Reached end of file while reading expression", parser.tokens.getLast());
+
+        return switch (type) {
+            case INT_LITERAL, HEX_LITERAL -> share(new IntPrimitive(next()));
+            case CHAR_LITERAL -> share(new CharPrimitive(next()));
+            case FLOAT_LITERAL -> share(new FloatPrimitive(next()));
+            case BOOL_LITERAL -> share(new BoolPrimitive(next()));
+            case VARIABLE -> share(new NodeIdentifier(next()));
+            case FUNCTION -> share(parseCall());
+
+            case UNARY_OPERATOR -> {
+                OperatorType opType = parser.tokens.operator(parser.tokenPos);
+                parser.advance();
+
+                //The operand only takes operators which bind tighter than this one, so -x ** 2 is (-x) ** 2
+                yield share(new UnaryOperator(opType, parseExpr(opType.precedence)));
+            }
+
+            case OPEN_PAREN -> {
+                parser.advance();
+                NodeExpr expr = parseExpr(0);
+                expect(CLOSE_PAREN, "Expected ')'");
+                yield expr;
+            }
+
+            default -> throw new ExpressionError("Unexpected token in expression", parser.peek());
+        };
+    }
+
+    /**
+     * Reads a function call, including its arguments and closing parenthesis
+     */
+    FuncCallExpr parseCall() {
+        FuncCallExpr call = new FuncCallExpr(next());
+
+        expect(OPEN_PAREN, "Expected '(' after '" + call.name + "'");
+
+        if (parser.peekType() == CLOSE_PAREN) { //Function with 0 args
+            parser.advance();
+            return call;
+        }
+
+        while (true) {
+            call.appendArgument(parseExpr(0));
+
+            TokenType type = parser.peekType();
+            if (type == CLOSE_PAREN) break;
+            if (type != COMMA) throw new ExpressionError("Expected ',' or ')' after function argument", parser.peek());
+
+            parser.advance();
+        }
+
+        parser.advance(); //Consuming closed parenthesis
+        return call;
+    }
+
+    /**
+     * Hands a finished node to the program's {@link NodeFactory}
+     */
+    private NodeExpr share(NodeExpr node) {
+        return parser.program.nodes.share(node);
+    }
+
+    /**
+     * Gives the current token and moves on to the next one
+     */
+    private Token next() {
+        Token token = parser.peek();
+        parser.advance();
+        return token;
+    }
+
+    private void expect(TokenType type, String message) {
+        if (parser.peekType() != type) {
+            if (!parser.hasNext())
+                throw new ExpressionError("Reached end of file while reading expression", parser.tokens.getLast());
+
+            throw new ExpressionError(message, parser.peek());
+        }
+        parser.advance();
+    }
+}
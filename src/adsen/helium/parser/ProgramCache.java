@@ -0,0 +1,257 @@
+package adsen.helium.parser;
+
+import adsen.helium.Helium;
+import adsen.helium.parser.arena.AstArena;
+import adsen.helium.tokeniser.HeliumSource;
+import adsen.helium.tokeniser.SymbolTable;
+import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.TokenType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static adsen.helium.Helium.VERBOSE_FLAGS;
+
+/**
+ * Keeps parsed programs on disk, so running the same file again doesn't have to tokenise and parse it.
+ * <p>
+ * Each entry is named after the SHA-256 of the source, and holds the program's symbols, imports and functions (with
+ * bodies as {@link AstArena}s). Tokens are only stored as positions in the source, which is fine since the name
+ * guarantees it's the same source. Entries made by a different {@link Helium#VERSION}, or which fail their checksum or
+ * don't make sense when read, are treated as missing, and get overwritten once the file has been parsed again.
+ */
+public class ProgramCache {
+    /**
+     * Name of the directory the cache goes in, next to the main file
+     */
+    public static final String DIRECTORY = ".helium-cache";
+
+    private static final int MAGIC = 0x48654361; //"HeCa"
+    /**
+     * Has to change whenever what gets written here (or by {@link AstArena#write}) changes
+     */
+    private static final int FORMAT = 1;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final Path directory;
+
+    public ProgramCache(Path directory) {
+        this.directory = directory;
+    }
+
+    private Path entry(byte[] hash) {
+        return directory.resolve(HexFormat.of().formatHex(hash) + ".hec");
+    }
+
+    /**
+     * Loads the program for this source, with its own new {@link SymbolTable}, and hands its imports to the
+     * {@link Parser#IMPORT_HANDLER} like {@link Parser#parse()} would. Returns {@code null} if there's no usable entry
+     */
+    public HeliumProgram load(HeliumSource source) {
+        byte[] hash = source.sha256();
+        Path path = entry(hash);
+
+        if (!Files.exists(path)) {
+            if (VERBOSE_FLAGS.contains("parser")) System.out.println("No cached program at " + path + "\n");
+            return null;
+        }
+
+        HeliumProgram program;
+
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+
+            if (bytes.length < Long.BYTES)
+                throw new IOException("Too short");
+
+            //Checksum is the last thing in the file, over everything before it
+            ByteBuffer in = ByteBuffer.wrap(bytes, 0, bytes.length - Long.BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(in.duplicate());
+            if (ByteBuffer.wrap(bytes).getLong(bytes.length - Long.BYTES) != crc.getValue())
+                throw new IOException("Checksum doesn't match");
+
+            program = read(in, source, hash);
+
+        } catch (IOException | RuntimeException e) {
+            //Stale or broken, either way it'll get replaced once we've parsed the file properly
+            if (VERBOSE_FLAGS.contains("parser"))
+                System.out.println("Ignoring cached program at " + path + " (" + e.getMessage() + ")\n");
+            return null;
+        }
+
+        if (VERBOSE_FLAGS.contains("parser"))
+            System.out.println("Loaded program from cache at " + path + "\n");
+
+        //Done out here, since a missing import is the program's fault, not the cache's
+        if (!program.getImports().isEmpty())
+            Parser.IMPORT_HANDLER.acceptImports(program.getImports());
+
+        Parser.IMPORT_HANDLER.loadNativeImportData();
+        Parser.IMPORT_HANDLER.loadImportData();
+
+        return program;
+    }
+
+    /**
+     * Saves a successfully parsed program. Failing to is only worth a verbose message, since the cache is just there
+     * to speed things up
+     */
+    public void store(HeliumSource source, HeliumProgram program) {
+        byte[] hash = source.sha256();
+        Path path = entry(hash);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            write(new DataOutputStream(bytes), source, hash, program);
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            new DataOutputStream(bytes).writeLong(crc.getValue());
+
+            //Written next to the entry and then moved over it, so a run reading it never sees half a file
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            if (VERBOSE_FLAGS.contains("parser"))
+                System.out.println("\nCached program at " + path);
+
+        } catch (IOException e) {
+            if (VERBOSE_FLAGS.contains("parser"))
+                System.out.println("\nCould not cache program at " + path + " due to: " + e.getMessage());
+        }
+    }
+
+    private static void write(DataOutput out, HeliumSource source, byte[] hash, HeliumProgram program) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        writeString(out, Helium.VERSION);
+        out.writeInt(source.length());
+        out.write(hash);
+
+        SymbolTable symbols = program.symbols;
+        out.writeInt(symbols.size());
+        for (int id = 0; id < symbols.size(); id++) writeString(out, symbols.name(id));
+
+        List<List<Token>> imports = program.getImports();
+        out.writeInt(imports.size());
+        for (List<Token> importTokens : imports) writeTokens(out, source, importTokens);
+
+        List<HeliumFunction> functions = new ArrayList<>(program.getFunctions());
+        out.writeInt(functions.size());
+        for (HeliumFunction function : functions) {
+            writeToken(out, source, function.returnType);
+            writeToken(out, source, function.token);
+            writeTokens(out, source, function.getSignature());
+            function.arena().write(out);
+        }
+    }
+
+    private static HeliumProgram read(ByteBuffer in, HeliumSource source, byte[] hash) throws IOException {
+        if (in.getInt() != MAGIC) throw new IOException("Not a cache entry");
+        if (in.getInt() != FORMAT) throw new IOException("Old cache format");
+        if (!readString(in).equals(Helium.VERSION)) throw new IOException("Made by a different compiler version");
+        if (in.getInt() != source.length()) throw new IOException("Source has changed");
+
+        byte[] storedHash = new byte[hash.length];
+        in.get(storedHash);
+        if (!Arrays.equals(storedHash, hash)) throw new IOException("Source has changed");
+
+        //A new table hands out ids in order, so every id written in the entry stays the same
+        SymbolTable symbols = new SymbolTable();
+        int symbolCount = in.getInt();
+        for (int id = 0; id < symbolCount; id++) {
+            if (symbols.intern(readString(in)) != id) throw new IOException("Duplicate symbol");
+        }
+
+        HeliumProgram program = new HeliumProgram(symbols);
+
+        int importCount = in.getInt();
+        List<List<Token>> imports = new ArrayList<>(importCount);
+        for (int i = 0; i < importCount; i++) imports.add(readTokens(in, source, symbols));
+        program.addImports(imports);
+
+        int functionCount = in.getInt();
+        for (int i = 0; i < functionCount; i++) {
+            Token returnType = readToken(in, source, symbols);
+            Token name = readToken(in, source, symbols);
+            List<Token> signature = readTokens(in, source, symbols);
+
+            program.addFunction(new HeliumFunction(returnType, name, signature, AstArena.read(in, source).shareWith(program.nodes)));
+        }
+
+        return program;
+    }
+
+    private static void writeTokens(DataOutput out, HeliumSource source, List<Token> tokens) throws IOException {
+        out.writeInt(tokens.size());
+        for (Token token : tokens) writeToken(out, source, token);
+    }
+
+    private static List<Token> readTokens(ByteBuffer in, HeliumSource source, SymbolTable symbols) {
+        int count = in.getInt();
+        List<Token> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) tokens.add(readToken(in, source, symbols));
+        return tokens;
+    }
+
+    /**
+     * Writes a token as its position in the source, or as its value if it didn't come from there
+     */
+    private static void writeToken(DataOutput out, HeliumSource source, Token token) throws IOException {
+        out.writeByte(token.type.ordinal());
+        out.writeInt(token.symbol);
+
+        boolean fromSource = token.source() == source;
+        out.writeBoolean(fromSource);
+
+        if (fromSource) {
+            out.writeInt(token.pos);
+            out.writeInt(token.length);
+        } else {
+            writeString(out, token.value());
+        }
+    }
+
+    private static Token readToken(ByteBuffer in, HeliumSource source, SymbolTable symbols) {
+        TokenType type = TOKEN_TYPES[in.get()];
+        int symbol = in.getInt();
+
+        Token token = in.get() != 0
+                ? new Token(source, type, in.getInt(), in.getInt())
+                : new Token(readString(in), type);
+
+        if (symbol != SymbolTable.NONE) {
+            token.symbol = symbol;
+            token.setValue(symbols.name(symbol));
+        }
+        return token;
+    }
+
+    private static void writeString(DataOutput out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
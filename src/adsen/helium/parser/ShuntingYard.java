@@ -3,6 +3,7 @@ package adsen.helium.parser;
 import adsen.helium.error.ExpressionError;
 import adsen.helium.parser.expr.FuncCallExpr;
 import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeFactory;
 import adsen.helium.parser.expr.NodeIdentifier;
 import adsen.helium.parser.expr.operator.BinaryOperator;
 import adsen.helium.parser.expr.operator.Operator;
@@ -13,7 +14,8 @@ import adsen.helium.parser.expr.primitives.CharPrimitive;
 import adsen.helium.parser.expr.primitives.FloatPrimitive;
 import adsen.helium.parser.expr.primitives.IntPrimitive;
 import adsen.helium.tokeniser.Token;
-import java.util.List;
+import adsen.helium.tokeniser.TokenSource;
+import adsen.helium.tokeniser.TokenType;
 import java.util.Stack;
 
 import static adsen.helium.tokeniser.TokenType.BINARY_OPERATOR;
@@ -30,21 +32,22 @@ import static adsen.helium.tokeniser.TokenType.UNARY_OPERATOR;
 public class ShuntingYard {
 
     /**
-     * Tries to read an expression from token list.
+     * Tries to read an expression from the tokens between {@code from} (inclusive) and {@code to} (exclusive), handing
+     * every node it makes to {@code nodes}.
      */
-    static NodeExpr parseExpr(List<Token> exprTokens) {
+    static NodeExpr parseExpr(TokenSource tokens, NodeFactory nodes, int from, int to) {
         Token t;
         NodeExpr expr;
 
-        if (exprTokens.size() == 1) { //Shortcut for short expressions
-            t = exprTokens.getFirst();
+        if (to - from == 1) { //Shortcut for short expressions
+            t = tokens.token(from);
             return switch (t.type) {
-                case INT_LITERAL, HEX_LITERAL -> new IntPrimitive(t);
-                case CHAR_LITERAL -> new CharPrimitive(t);
-                case FLOAT_LITERAL -> new FloatPrimitive(t);
-                case BOOL_LITERAL -> new BoolPrimitive(t);
+                case INT_LITERAL, HEX_LITERAL -> nodes.share(new IntPrimitive(t));
+                case CHAR_LITERAL -> nodes.share(new CharPrimitive(t));
+                case FLOAT_LITERAL -> nodes.share(new FloatPrimitive(t));
+                case BOOL_LITERAL -> nodes.share(new BoolPrimitive(t));
                 //case STR_LITERAL -> new String Object Type; gonna implement this as built-in complex type
-                case VARIABLE -> new NodeIdentifier(t);
+                case VARIABLE -> nodes.share(new NodeIdentifier(t));
 
                 default -> throw new ExpressionError("Unexpected token in expression", t);
             };
@@ -58,64 +61,73 @@ public class ShuntingYard {
         // well-documented, with no steps skipped, so that I can come back to it later and understand how it works
 
         //List<NodeExpr> postfix = new ArrayList<>(); //Might not be necessary, but keeping it anyway in case bugs occur
-        Stack<Token> operatorStack = new Stack<>();
+        //Holds indices of tokens in the buffer
+        Stack<Integer> operatorStack = new Stack<>();
+
+        //Argument counts of the functions in the operator stack, in the same order they appear there
+        Stack<Integer> functionArgs = new Stack<>();
 
         Stack<NodeExpr> astStack = new Stack<>();
 
         Runnable processOperator = () -> {
             Operator lastOp;
-            Token opTok = operatorStack.pop();
+            int opIndex = operatorStack.pop();
+
+            if (tokens.type(opIndex) == FUNCTION)
+                throw new ExpressionError("Found a function token in the operator stack, it should have been dealt with already", tokens.token(opIndex));
 
-            if (opTok.type == FUNCTION)
-                throw new ExpressionError("Found a function token in the operator stack, it should have been dealt with already", opTok);
+            if (tokens.type(opIndex) == OPEN_PAREN)
+                throw new ExpressionError("Mismatched parentheses", tokens.token(opIndex));
 
-            OperatorType opType = Operator.operatorType.get(opTok.value);
+            OperatorType opType = tokens.operator(opIndex);
             if (astStack.size() < opType.args)
-                throw new ExpressionError("Too few arguments for operator '" + opTok.value + "'", opTok);
-            //todo handle not leftToRight operators
+                throw new ExpressionError("Too few arguments for operator '" + opType.value + "'", tokens.token(opIndex));
             if (opType.type == UNARY_OPERATOR) {
                 NodeExpr arg = astStack.pop();
-                lastOp = new UnaryOperator(opType, arg);
+                lastOp = (Operator) nodes.share(new UnaryOperator(opType, arg));
             } else if (opType.type == BINARY_OPERATOR) {
 
                 NodeExpr rightArg = astStack.pop();
                 NodeExpr leftArg = astStack.pop();
 
-                lastOp = new BinaryOperator(leftArg, opType, rightArg);
+                lastOp = (Operator) nodes.share(new BinaryOperator(leftArg, opType, rightArg));
             } else
-                throw new ExpressionError("Don't know how we got here, found unknown operator type", opTok);
+                throw new ExpressionError("Don't know how we got here, found unknown operator type", tokens.token(opIndex));
 
             //postfix.add(lastOp);
             astStack.push(lastOp);
         };
 
-        for (int i = 0; i < exprTokens.size(); i++) {
-            Token exprToken = exprTokens.get(i);
+        for (int i = from; i < to; i++) {
+            TokenType type = tokens.type(i);
 
-            NodeExpr temp = switch (exprToken.type) {
-                case INT_LITERAL, HEX_LITERAL -> new IntPrimitive(exprToken);
-                case CHAR_LITERAL -> new CharPrimitive(exprToken);
-                case FLOAT_LITERAL -> new FloatPrimitive(exprToken);
-                case BOOL_LITERAL -> new BoolPrimitive(exprToken);
-                case VARIABLE -> new NodeIdentifier(exprToken);
+            NodeExpr temp = switch (type) {
+                case INT_LITERAL, HEX_LITERAL -> nodes.share(new IntPrimitive(tokens.token(i)));
+                case CHAR_LITERAL -> nodes.share(new CharPrimitive(tokens.token(i)));
+                case FLOAT_LITERAL -> nodes.share(new FloatPrimitive(tokens.token(i)));
+                case BOOL_LITERAL -> nodes.share(new BoolPrimitive(tokens.token(i)));
+                case VARIABLE -> nodes.share(new NodeIdentifier(tokens.token(i)));
                 default -> null;
             };
 
             if (temp != null) { //If we hit a simple type, then that's it
                 //postfix.add(temp);
                 astStack.push(temp);
-            } else if (exprToken.type == BINARY_OPERATOR || exprToken.type == UNARY_OPERATOR) {
+            } else if (type == BINARY_OPERATOR || type == UNARY_OPERATOR) {
                 //If we hit an operator, first figure out what kind of operator it is
-                OperatorType opType = Operator.operatorType.get(exprToken.value);
+                OperatorType opType = tokens.operator(i);
 
-                //Then, we process all the operators currently in the operator stack with a precedence lower than this one
-                while (!operatorStack.isEmpty() && operatorStack.peek().type != OPEN_PAREN && operatorStack.peek().type != FUNCTION && Operator.operatorType.get(operatorStack.peek().value).precedence >= opType.precedence) {
+                //Then, we process all the operators currently in the operator stack which bind at least as tightly as this one
+                //Prefix operators don't have a left operand for those to take, so they skip this (e.g. the - in !-x)
+                //Right to left operators leave ones with the same precedence, so 2 ** 3 ** 2 is 2 ** (3 ** 2)
+                boolean prefix = type == UNARY_OPERATOR && opType != OperatorType.INCREMENT && opType != OperatorType.DECREMENT;
+                while (!prefix && !operatorStack.isEmpty() && tokens.type(operatorStack.peek()) != OPEN_PAREN && tokens.type(operatorStack.peek()) != FUNCTION && bindsFirst(tokens.operator(operatorStack.peek()), opType)) {
                     processOperator.run();
                 }
 
                 //Finally, we push this operator onto the stack
-                operatorStack.push(exprToken);
-            } else if (exprToken.type == FUNCTION) {
+                operatorStack.push(i);
+            } else if (type == FUNCTION) {
                 //Calculate argcount for the function
                 int args = 0;
                 int parens = 1;//We already count the ( after the function name
@@ -124,23 +136,23 @@ public class ShuntingYard {
                 // parentheses would have been caught by now, so there is at least a closed parenthesis after that
                 //So we can safely query the token at (i+2)
 
-                Token tok = exprTokens.get(i + 2);
+                TokenType tok = tokens.type(i + 2);
 
                 //If the very next token is a closed parenthesis, this is a 0-argument function
-                if (tok.type != CLOSE_PAREN) {
+                if (tok != CLOSE_PAREN) {
                     args = 1; //We know there's at least one argument
 
                     //We start at i+3 because we were previously at i+2.
                     /*
                     The condition for the for loop is to see if we reach the matching closed parenthesis for the
                      opening parenthesis of the function, which also means that checking that we haven't reached the
-                     end of exprTokens is unnecessary, since we can only get to this point if the function is opened
+                     end of the expression is unnecessary, since we can only get to this point if the function is opened
                      and closed properly. But having it doesn't hurt.
                      */
 
-                    for (int j = i + 3; !(parens == 0 && tok.type == CLOSE_PAREN) && j < exprTokens.size(); j++) {
-                        tok = exprTokens.get(j);
-                        switch (tok.type) {
+                    for (int j = i + 3; !(parens == 0 && tok == CLOSE_PAREN) && j < to; j++) {
+                        tok = tokens.type(j);
+                        switch (tok) {
                             case OPEN_PAREN -> parens++;
                             case CLOSE_PAREN -> parens--;
                             case COMMA -> {
@@ -151,45 +163,43 @@ public class ShuntingYard {
                     }
                 }
 
-                //Encoding number of arguments in name of token so it can be safely extracted later when building AST stack
-                exprToken.value += " " + args;
+                //Keeping the number of arguments so it can be safely extracted later when building AST stack
+                functionArgs.push(args);
 
-                operatorStack.push(exprToken);
-            } else if (exprToken.type == OPEN_PAREN) {
-                operatorStack.push(exprToken);
-            } else if (exprToken.type == COMMA) {
+                operatorStack.push(i);
+            } else if (type == OPEN_PAREN) {
+                operatorStack.push(i);
+            } else if (type == COMMA) {
 
                 //If we hit a comma, process all operators until the last open parenthesis
                 //This looks weird, but what it does is essentially every time we have completed an argument for a
                 // function, we push it onto the AST stack so it can be handled later when the function comes along to
                 // pick up its arguments, meaning every comma will always just see its argument and the opening parenthesis
                 // in the operator stack
-                while (!operatorStack.isEmpty() && operatorStack.peek().type != OPEN_PAREN) {
+                while (!operatorStack.isEmpty() && tokens.type(operatorStack.peek()) != OPEN_PAREN) {
                     processOperator.run();
                 }
 
-            } else if (exprToken.type == CLOSE_PAREN) {
-                if (operatorStack.empty()) throw new ExpressionError("Mismatched parentheses, but how?", exprToken);
+            } else if (type == CLOSE_PAREN) {
+                if (operatorStack.empty()) throw new ExpressionError("Mismatched parentheses, but how?", tokens.token(i));
 
-                while (operatorStack.peek().type != OPEN_PAREN) {
+                while (tokens.type(operatorStack.peek()) != OPEN_PAREN) {
                     processOperator.run();
                 }
                 operatorStack.pop(); //Popping the corresponding '(', which will be there due to while loop
 
                 //Dealing with functions
-                if (!operatorStack.isEmpty() && operatorStack.peek().type == FUNCTION) {
-                    Token funTok = operatorStack.pop();
-                    //Extracting argcount information from function token
-                    String[] splitValue = funTok.value.split(" ");
-                    funTok.value = splitValue[0];
-                    int args = Integer.parseInt(splitValue[1]);
+                if (!operatorStack.isEmpty() && tokens.type(operatorStack.peek()) == FUNCTION) {
+                    Token funTok = tokens.token(operatorStack.pop());
+                    //Extracting argcount information for this function
+                    int args = functionArgs.pop();
                     FuncCallExpr func = new FuncCallExpr(funTok);
                     //postfix.add(func);
                     //Popping function arguments from stack into function node expression
                     for (int j = 0; j < args; j++) {
                         func.addArgument(astStack.pop());
                     }
-                    astStack.push(func);
+                    astStack.push(nodes.share(func));
                 }
             }
         }
@@ -207,10 +217,18 @@ public class ShuntingYard {
         */
 
         if (astStack.size() > 1) //todo error messages which allow to get the whole expression code block
-            throw new ExpressionError("Invalid expression", exprTokens.getFirst());
+            throw new ExpressionError("Invalid expression", tokens.token(from));
 
         expr = astStack.firstElement();
 
         return expr;
     }
+
+    /**
+     * Whether an operator already on the stack has to be applied before {@code next} gets pushed, which is the same way
+     * {@link PrattParser} groups them
+     */
+    private static boolean bindsFirst(OperatorType onStack, OperatorType next) {
+        return next.leftToRight ? onStack.precedence >= next.precedence : onStack.precedence > next.precedence;
+    }
 }
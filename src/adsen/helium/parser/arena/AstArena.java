@@ -0,0 +1,544 @@
+package adsen.helium.parser.arena;
+
+import adsen.helium.error.ExpressionError;
+import adsen.helium.parser.expr.FuncCallExpr;
+import adsen.helium.parser.expr.NodeDummy;
+import adsen.helium.parser.expr.NodeExpr;
+import adsen.helium.parser.expr.NodeFactory;
+import adsen.helium.parser.expr.NodeIdentifier;
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.OperatorType;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.expr.primitives.BoolPrimitive;
+import adsen.helium.parser.expr.primitives.CharPrimitive;
+import adsen.helium.parser.expr.primitives.FloatPrimitive;
+import adsen.helium.parser.expr.primitives.IntPrimitive;
+import adsen.helium.parser.statement.HeliumStatement;
+import adsen.helium.parser.statement.aggregate.ForStatement;
+import adsen.helium.parser.statement.aggregate.IfStatement;
+import adsen.helium.parser.statement.aggregate.ScopeStatement;
+import adsen.helium.parser.statement.aggregate.WhileStatement;
+import adsen.helium.parser.statement.atomic.AssignStatement;
+import adsen.helium.parser.statement.atomic.BreakStatement;
+import adsen.helium.parser.statement.atomic.ContinueStatement;
+import adsen.helium.parser.statement.atomic.DeclareStatement;
+import adsen.helium.parser.statement.atomic.ExitStatement;
+import adsen.helium.parser.statement.atomic.FunctionCallStatement;
+import adsen.helium.parser.statement.atomic.IncrementStatement;
+import adsen.helium.parser.statement.atomic.ReturnStatement;
+import adsen.helium.parser.statement.atomic.StaticDeclareStatement;
+import adsen.helium.tokeniser.HeliumSource;
+import adsen.helium.tokeniser.Token;
+import adsen.helium.tokeniser.TokenType;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static adsen.helium.parser.arena.NodeKind.*;
+
+/**
+ * A function body stored as parallel arrays, the same way {@link adsen.helium.tokeniser.TokenBuffer} stores tokens,
+ * instead of as a tree of statement and expression objects each holding their own {@link Token}s.
+ * <p>
+ * Every node is an index. It has a {@link NodeKind}, an int operand (operator, symbol, literal pool index, flags,
+ * depending on the kind), a slice of the shared child list, and the position of its token in the source. Literal values
+ * live in a pool of longs, and the few strings that can't be sliced out of the source (made up tokens, scope names)
+ * in a string pool. Children always come before their parents, so the {@link AstArena#root()} is the last node.
+ * <p>
+ * This is a storage format, not something the compiler works on. Plain arrays can be written out and moved as they are,
+ * so it's what {@link adsen.helium.parser.ProgramCache} writes and what {@link adsen.helium.parser.CompilationDatabase}
+ * shifts around when code above a function changes. Everything else uses the tree, which {@link AstArena#statements()}
+ * turns it back into.
+ */
+public class AstArena {
+    /**
+     * Index given for children which have been left out
+     */
+    public static final int NO_NODE = -1;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final OperatorType[] OPERATORS = OperatorType.values();
+
+    /**
+     * The source the tokens are slices of. Can be {@code null}, in which case every token goes in the string pool
+     */
+    public final HeliumSource source;
+
+    private byte[] kinds;
+    private int[] operands;
+    private int[] childStarts;
+    private int[] childCounts;
+    /**
+     * {@link TokenType} ordinal of each node's token, or -1 if it doesn't have one
+     */
+    private byte[] tokenTypes;
+    /**
+     * Start of each node's token in the source, or -1 if it's not from the source, in which case
+     * {@link AstArena#tokenLengths} has the index of its value in the string pool instead
+     */
+    private int[] tokenStarts;
+    private int[] tokenLengths;
+    private int size = 0;
+
+    private int[] children;
+    private int childCount = 0;
+
+    private long[] literals;
+    private int literalCount = 0;
+
+    private final List<String> strings = new ArrayList<>();
+    /**
+     * Only used while adding nodes, so that repeated strings (mostly empty scope names) are only stored once
+     */
+    private Map<String, Integer> stringIds = new HashMap<>();
+
+    private int root = NO_NODE;
+
+    /**
+     * What expression nodes get shared with when turning this back into a tree
+     */
+    private NodeFactory nodes = new NodeFactory();
+
+    private AstArena(HeliumSource source, int capacity) {
+        this.source = source;
+        capacity = Math.max(capacity, 16);
+        kinds = new byte[capacity];
+        operands = new int[capacity];
+        childStarts = new int[capacity];
+        childCounts = new int[capacity];
+        tokenTypes = new byte[capacity];
+        tokenStarts = new int[capacity];
+        tokenLengths = new int[capacity];
+        children = new int[capacity];
+        literals = new long[capacity / 4];
+    }
+
+    /**
+     * Flattens the body of a function
+     */
+    public static AstArena of(HeliumSource source, List<HeliumStatement> body) {
+        AstArena arena = new AstArena(source, body.size() * 8);
+
+        arena.root = arena.node(BODY, null, 0, arena.encodeAll(body));
+        arena.trim();
+
+        return arena;
+    }
+
+    /**
+     * Writes the arena out as it's stored (big endian, like {@link DataOutput} always is), for {@link AstArena#read} to
+     * load back. Child starts aren't written, since children are stored in node order and so they can be worked out
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(childCount);
+        out.writeInt(literalCount);
+        out.writeInt(strings.size());
+        out.writeInt(root);
+
+        out.write(kinds, 0, size);
+        out.write(tokenTypes, 0, size);
+        writeInts(out, operands, size);
+        writeInts(out, childCounts, size);
+        writeInts(out, tokenStarts, size);
+        writeInts(out, tokenLengths, size);
+        writeInts(out, children, childCount);
+
+        for (int i = 0; i < literalCount; i++) out.writeLong(literals[i]);
+
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * The same arena, for the same code found {@code delta} bytes further on in {@code source}. Used when a function
+     * hasn't changed but the code in front of it has, so it can be moved instead of parsed again
+     */
+    public AstArena moveTo(HeliumSource source, int delta) {
+        AstArena moved = new AstArena(source, 0);
+
+        //Nothing changes these once the arena is made, so they can be shared with this one
+        moved.kinds = kinds;
+        moved.operands = operands;
+        moved.childStarts = childStarts;
+        moved.childCounts = childCounts;
+        moved.tokenTypes = tokenTypes;
+        moved.tokenLengths = tokenLengths;
+        moved.children = children;
+        moved.literals = literals;
+        moved.strings.addAll(strings);
+        moved.stringIds = null;
+        moved.size = size;
+        moved.childCount = childCount;
+        moved.literalCount = literalCount;
+        moved.root = root;
+
+        moved.tokenStarts = new int[size];
+        for (int node = 0; node < size; node++) {
+            //Tokens in the string pool didn't come from the source, so they don't move
+            moved.tokenStarts[node] = tokenStarts[node] < 0 ? tokenStarts[node] : tokenStarts[node] + delta;
+        }
+
+        return moved;
+    }
+
+    /**
+     * Makes {@link AstArena#statements()} share expression nodes with the rest of a program, instead of just within
+     * this arena
+     */
+    public AstArena shareWith(NodeFactory nodes) {
+        this.nodes = nodes;
+        return this;
+    }
+
+    /**
+     * Reads an arena written by {@link AstArena#write}, leaving the buffer just after it. The source must be the same
+     * one it was flattened from, since tokens are only stored as positions in it
+     */
+    public static AstArena read(ByteBuffer in, HeliumSource source) {
+        AstArena arena = new AstArena(source, 0);
+
+        int size = arena.size = in.getInt();
+        int childCount = arena.childCount = in.getInt();
+        int literalCount = arena.literalCount = in.getInt();
+        int stringCount = in.getInt();
+        arena.root = in.getInt();
+
+        in.get(arena.kinds = new byte[size]);
+        in.get(arena.tokenTypes = new byte[size]);
+        arena.operands = readInts(in, size);
+        arena.childCounts = readInts(in, size);
+        arena.tokenStarts = readInts(in, size);
+        arena.tokenLengths = readInts(in, size);
+        arena.children = readInts(in, childCount);
+
+        arena.childStarts = new int[size];
+        for (int node = 0, start = 0; node < size; start += arena.childCounts[node++]) {
+            arena.childStarts[node] = start;
+        }
+
+        arena.literals = new long[literalCount];
+        in.asLongBuffer().get(arena.literals);
+        in.position(in.position() + literalCount * Long.BYTES);
+
+        for (int i = 0; i < stringCount; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            arena.strings.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        arena.stringIds = null;
+
+        return arena;
+    }
+
+    private static void writeInts(DataOutput out, int[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) out.writeInt(values[i]);
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    //Accessors
+
+    /**
+     * The {@link NodeKind#BODY} node holding the function's statements
+     */
+    public int root() {
+        return root;
+    }
+
+    /**
+     * Number of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    public NodeKind kind(int node) {
+        return NodeKind.of(kinds[node]);
+    }
+
+    /**
+     * The {@code i}th child of a node, which can be {@link AstArena#NO_NODE} if it was left out
+     */
+    public int child(int node, int i) {
+        return children[childStarts[node] + i];
+    }
+
+    /**
+     * The operator of a {@link NodeKind#UNARY} or {@link NodeKind#BINARY} node
+     */
+    public OperatorType operator(int node) {
+        return OPERATORS[operands[node]];
+    }
+
+    public long intValue(int node) {
+        return literals[operands[node]];
+    }
+
+    public double floatValue(int node) {
+        return Double.longBitsToDouble(literals[operands[node]]);
+    }
+
+    public char charValue(int node) {
+        return (char) literals[operands[node]];
+    }
+
+    public boolean boolValue(int node) {
+        return literals[operands[node]] != 0;
+    }
+
+    /**
+     * Whether a {@link NodeKind#SCOPE} is the body of a loop
+     */
+    public boolean isLoop(int node) {
+        return (operands[node] & 1) != 0;
+    }
+
+    /**
+     * The name of a {@link NodeKind#SCOPE}, or the info of a {@link NodeKind#DUMMY}
+     */
+    public String string(int node) {
+        return strings.get(kinds[node] == SCOPE.ordinal() ? operands[node] >>> 1 : operands[node]);
+    }
+
+    /**
+     * Makes a {@link Token} for the node's token, or returns {@code null} if it doesn't have one
+     */
+    public Token token(int node) {
+        if (tokenTypes[node] < 0) return null;
+
+        TokenType type = TOKEN_TYPES[tokenTypes[node]];
+        Token token = tokenStarts[node] < 0
+                ? new Token(strings.get(tokenLengths[node]), type)
+                : new Token(source, type, tokenStarts[node], tokenLengths[node]);
+
+        NodeKind kind = kind(node);
+        if (kind == IDENTIFIER || kind == CALL || kind == CALL_STATEMENT)
+            token.symbol = operands[node];
+
+        return token;
+    }
+
+    //Turning it back into a tree
+
+    /**
+     * The function's statements as a tree, the way the {@link adsen.helium.parser.Parser} made them
+     */
+    public List<HeliumStatement> statements() {
+        return statements(root);
+    }
+
+    private List<HeliumStatement> statements(int node) {
+        List<HeliumStatement> statements = new ArrayList<>(childCounts[node]);
+
+        for (int i = 0; i < childCounts[node]; i++) {
+            statements.add(statement(child(node, i)));
+        }
+        return statements;
+    }
+
+    public HeliumStatement statement(int node) {
+        Token token = token(node);
+
+        return switch (kind(node)) {
+            case SCOPE -> {
+                ScopeStatement scope = new ScopeStatement(statements(node), string(node), token);
+                yield isLoop(node) ? scope.asLoop() : scope;
+            }
+            case DECLARE -> new DeclareStatement(identifier(child(node, 0)), token, expr(child(node, 1)));
+            case STATIC_DECLARE ->
+                    new StaticDeclareStatement(token(child(node, 2)), identifier(child(node, 0)), token, expr(child(node, 1)));
+            case ASSIGN -> new AssignStatement(identifier(child(node, 0)), token, expr(child(node, 1)));
+            case INCREMENT -> new IncrementStatement(identifier(child(node, 0)), token, operands[node] != 0);
+            case IF -> childCounts[node] == 2
+                    ? new IfStatement(token, expr(child(node, 0)), statement(child(node, 1)))
+                    : new IfStatement(token, expr(child(node, 0)), statement(child(node, 1)), token(child(node, 2)), statement(child(node, 3)));
+            case WHILE -> new WhileStatement(token, expr(child(node, 0)), statement(child(node, 1)));
+            case FOR ->
+                    new ForStatement(token, statement(child(node, 0)), expr(child(node, 1)), statement(child(node, 2)), statement(child(node, 3)));
+            case CALL_STATEMENT -> {
+                List<NodeExpr> args = new ArrayList<>(childCounts[node]);
+                for (int i = 0; i < childCounts[node]; i++) args.add(expr(child(node, i)));
+                yield new FunctionCallStatement(token, args);
+            }
+            case RETURN -> new ReturnStatement(token, childCounts[node] == 0 ? null : expr(child(node, 0)));
+            case EXIT -> new ExitStatement(token, expr(child(node, 0)));
+            case BREAK -> new BreakStatement(token);
+            case CONTINUE -> new ContinueStatement(token);
+            default -> throw new ExpressionError("Expected a statement, found " + kind(node), token);
+        };
+    }
+
+    public NodeExpr expr(int node) {
+        return nodes.share(switch (kind(node)) {
+            case INT -> new IntPrimitive(token(node), intValue(node));
+            case FLOAT -> new FloatPrimitive(token(node), floatValue(node));
+            case CHAR -> new CharPrimitive(token(node), charValue(node));
+            case BOOL -> new BoolPrimitive(token(node), boolValue(node));
+            case IDENTIFIER -> identifier(node);
+            case UNARY -> new UnaryOperator(operator(node), expr(child(node, 0)));
+            case BINARY -> new BinaryOperator(expr(child(node, 0)), operator(node), expr(child(node, 1)));
+            case CALL -> {
+                FuncCallExpr call = new FuncCallExpr(token(node));
+                for (int i = 0; i < childCounts[node]; i++) call.appendArgument(expr(child(node, i)));
+                yield call;
+            }
+            case DUMMY -> new NodeDummy(token(node), string(node));
+            default -> throw new ExpressionError("Expected an expression, found " + kind(node), token(node));
+        });
+    }
+
+    private NodeIdentifier identifier(int node) {
+        return nodes.share(new NodeIdentifier(token(node)));
+    }
+
+    //Flattening a tree
+
+    private int[] encodeAll(List<? extends HeliumStatement> statements) {
+        int[] ids = new int[statements.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = encode(statements.get(i));
+        return ids;
+    }
+
+    private int encode(HeliumStatement statement) {
+        //Subclasses have to come before the classes they extend
+        return switch (statement) {
+            case ScopeStatement scope ->
+                    node(SCOPE, scope.token, addString(scope.name) << 1 | (scope.isLoop() ? 1 : 0), encodeAll(scope.statements));
+            case StaticDeclareStatement declare ->
+                    node(STATIC_DECLARE, declare.primaryToken(), 0, encode(declare.identifier()), encode(declare.expr()), node(TOKEN, declare.valueType, 0));
+            case DeclareStatement declare ->
+                    node(DECLARE, declare.primaryToken(), 0, encode(declare.identifier()), encode(declare.expr()));
+            case IncrementStatement increment ->
+                    node(INCREMENT, increment.primaryToken(), increment.isPre ? 1 : 0, encode(increment.identifier()));
+            case AssignStatement assign ->
+                    node(ASSIGN, assign.primaryToken(), 0, encode(assign.identifier()), encode(assign.expr()));
+            case IfStatement ifStmt -> ifStmt.hasElse()
+                    ? node(IF, ifStmt.token, 0, encode(ifStmt.getCondition()), encode(ifStmt.thenStatement()), node(TOKEN, ifStmt.elseToken(), 0), encode(ifStmt.elseStatement()))
+                    : node(IF, ifStmt.token, 0, encode(ifStmt.getCondition()), encode(ifStmt.thenStatement()));
+            case WhileStatement whileStmt ->
+                    node(WHILE, whileStmt.token, 0, encode(whileStmt.condition()), encode(whileStmt.statement()));
+            case ForStatement forStmt ->
+                    node(FOR, forStmt.token, 0, encode(forStmt.getAssigner()), encode(forStmt.condition()), encode(forStmt.getIncrementer()), encode(forStmt.statement()));
+            case FunctionCallStatement call -> node(CALL_STATEMENT, call.name, call.name.symbol, encodeExprs(call.args));
+            case ReturnStatement ret ->
+                    ret.empty ? node(RETURN, ret.token, 0) : node(RETURN, ret.token, 0, encode(ret.expr()));
+            case ExitStatement exit -> node(EXIT, exit.token, 0, encode(exit.expr()));
+            case BreakStatement breakStmt -> node(BREAK, breakStmt.token, 0);
+            case ContinueStatement continueStmt -> node(CONTINUE, continueStmt.token, 0);
+            default ->
+                    throw new ExpressionError("Don't know how to flatten a " + statement.typeString() + " statement", statement.primaryToken());
+        };
+    }
+
+    private int[] encodeExprs(List<NodeExpr> exprs) {
+        int[] ids = new int[exprs.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = encode(exprs.get(i));
+        return ids;
+    }
+
+    private int encode(NodeExpr expr) {
+        return switch (expr) {
+            case IntPrimitive intP -> node(INT, intP.getToken(), literal(intP.getValue()));
+            case FloatPrimitive floatP ->
+                    node(FLOAT, floatP.getToken(), literal(Double.doubleToRawLongBits(floatP.getValue())));
+            case CharPrimitive charP -> node(CHAR, charP.getToken(), literal(charP.getValue()));
+            case BoolPrimitive boolP -> node(BOOL, boolP.getToken(), literal(boolP.getValue() ? 1 : 0));
+            case NodeIdentifier ident -> node(IDENTIFIER, ident.token, ident.symbol);
+            case UnaryOperator unOp -> node(UNARY, null, unOp.type().ordinal(), encode(unOp.operand()));
+            case BinaryOperator binOp ->
+                    node(BINARY, null, binOp.type().ordinal(), encode(binOp.left()), encode(binOp.right()));
+            case FuncCallExpr call -> node(CALL, call.token, call.symbol, encodeExprs(call.arguments));
+            case NodeDummy dummy -> node(DUMMY, dummy.token, addString(dummy.info));
+            default -> throw new ExpressionError("Don't know how to flatten expression " + expr.asString(), null);
+        };
+    }
+
+    private int node(NodeKind kind, Token token, int operand, int... nodeChildren) {
+        if (size == kinds.length) grow();
+
+        int node = size++;
+        kinds[node] = (byte) kind.ordinal();
+        operands[node] = operand;
+
+        if (childCount + nodeChildren.length > children.length)
+            children = Arrays.copyOf(children, Math.max(children.length * 2, childCount + nodeChildren.length));
+
+        System.arraycopy(nodeChildren, 0, children, childCount, nodeChildren.length);
+        childStarts[node] = childCount;
+        childCounts[node] = nodeChildren.length;
+        childCount += nodeChildren.length;
+
+        if (token == null) {
+            tokenTypes[node] = -1;
+        } else {
+            tokenTypes[node] = (byte) token.type.ordinal();
+
+            if (source != null && token.source() == source) {
+                tokenStarts[node] = token.pos;
+                tokenLengths[node] = token.length;
+            } else { //Made up, or from somewhere else, so there's nothing to slice it out of later
+                tokenStarts[node] = -1;
+                tokenLengths[node] = addString(token.value());
+            }
+        }
+
+        return node;
+    }
+
+    private int literal(long value) {
+        if (literalCount == literals.length) literals = Arrays.copyOf(literals, Math.max(literalCount * 2, 16));
+
+        literals[literalCount] = value;
+        return literalCount++;
+    }
+
+    private int addString(String value) {
+        return stringIds.computeIfAbsent(value, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        operands = Arrays.copyOf(operands, capacity);
+        childStarts = Arrays.copyOf(childStarts, capacity);
+        childCounts = Arrays.copyOf(childCounts, capacity);
+        tokenTypes = Arrays.copyOf(tokenTypes, capacity);
+        tokenStarts = Arrays.copyOf(tokenStarts, capacity);
+        tokenLengths = Arrays.copyOf(tokenLengths, capacity);
+    }
+
+    /**
+     * Cuts the arrays down to what's used, once nothing else is going to be added
+     */
+    private void trim() {
+        kinds = Arrays.copyOf(kinds, size);
+        operands = Arrays.copyOf(operands, size);
+        childStarts = Arrays.copyOf(childStarts, size);
+        childCounts = Arrays.copyOf(childCounts, size);
+        tokenTypes = Arrays.copyOf(tokenTypes, size);
+        tokenStarts = Arrays.copyOf(tokenStarts, size);
+        tokenLengths = Arrays.copyOf(tokenLengths, size);
+        children = Arrays.copyOf(children, childCount);
+        literals = Arrays.copyOf(literals, literalCount);
+        stringIds = null;
+    }
+}
@@ -0,0 +1,111 @@
+package adsen.helium.parser.arena;
+
+/**
+ * What a node in an {@link AstArena} is. Each kind's comment says what its token, operand and children are, in order.
+ * Children which can be left out are {@link AstArena#NO_NODE}
+ */
+public enum NodeKind {
+    //Statements
+    /**
+     * Token: closing '}'. Operand: index of its name in the string pool, shifted left by one, with the lowest bit set if
+     * it's the body of a loop. Children: the statements in it
+     */
+    SCOPE,
+    /**
+     * The statements of a function, with no token or operand
+     */
+    BODY,
+    /**
+     * Token: '='. Children: identifier, expression
+     */
+    DECLARE,
+    /**
+     * Token: '='. Children: identifier, expression, {@link NodeKind#TOKEN} holding the type
+     */
+    STATIC_DECLARE,
+    /**
+     * Token: '='. Children: identifier, expression
+     */
+    ASSIGN,
+    /**
+     * Token: '++' or '--'. Operand: 1 if it comes before the identifier. Children: identifier
+     */
+    INCREMENT,
+    /**
+     * Token: 'if'. Children: condition, then statement, and then if there's an else, a {@link NodeKind#TOKEN} holding the
+     * 'else', and the else statement
+     */
+    IF,
+    /**
+     * Token: 'while'. Children: condition, statement
+     */
+    WHILE,
+    /**
+     * Token: 'for'. Children: assigner, condition, incrementer, statement
+     */
+    FOR,
+    /**
+     * Token: function name. Operand: symbol. Children: arguments
+     */
+    CALL_STATEMENT,
+    /**
+     * Token: 'return'. Children: the expression, if there is one
+     */
+    RETURN,
+    /**
+     * Token: 'exit'. Children: expression
+     */
+    EXIT,
+    /**
+     * Token: 'break'
+     */
+    BREAK,
+    /**
+     * Token: 'continue'
+     */
+    CONTINUE,
+
+    //Expressions
+    /**
+     * Token: the literal. Operand: index in the literal pool
+     */
+    INT,
+    FLOAT,
+    CHAR,
+    BOOL,
+    /**
+     * Token: the name. Operand: symbol
+     */
+    IDENTIFIER,
+    /**
+     * Operand: {@link adsen.helium.parser.expr.operator.OperatorType} ordinal. Children: operand
+     */
+    UNARY,
+    /**
+     * Operand: {@link adsen.helium.parser.expr.operator.OperatorType} ordinal. Children: left, right
+     */
+    BINARY,
+    /**
+     * Token: function name. Operand: symbol. Children: arguments
+     */
+    CALL,
+    /**
+     * Token: whatever it was made with. Operand: index of its info in the string pool
+     */
+    DUMMY,
+
+    /**
+     * Not a node by itself, just a token that another node needs besides its main one
+     */
+    TOKEN;
+
+    private static final NodeKind[] KINDS = values();
+
+    static NodeKind of(int ordinal) {
+        return KINDS[ordinal];
+    }
+
+    public boolean isExpression() {
+        return ordinal() >= INT.ordinal() && ordinal() <= DUMMY.ordinal();
+    }
+}
@@ -1,5 +1,6 @@
 package adsen.helium.parser.expr;
 
+import adsen.helium.parser.HeliumFunction;
 import adsen.helium.tokeniser.Token;
 
 import java.util.ArrayList;
@@ -12,23 +13,61 @@ import java.util.stream.Collectors;
 public class FuncCallExpr implements NodeExpr {
     public final Token token;
     public final String name;
+    /**
+     * {@link adsen.helium.tokeniser.SymbolTable} id of {@link FuncCallExpr#name}
+     */
+    public final int symbol;
     private int argCount;
     public final List<NodeExpr> arguments = new ArrayList<>();
+    /**
+     * The function this calls, if it was worked out from the types of the arguments before running
+     */
+    private HeliumFunction target;
+    private boolean bound = false;
 
     public FuncCallExpr(Token token) {
         this.token = token;
-        this.name = token.value;
+        this.name = token.value();
+        this.symbol = token.symbol;
     }
 
+    /**
+     * Adds an argument in front of the others, since {@link adsen.helium.parser.ShuntingYard} gets them backwards
+     */
     public void addArgument(NodeExpr arg) {
         arguments.addFirst(arg);
         argCount = arguments.size();
     }
 
+    /**
+     * Adds an argument after the others, for parsers which read them in order
+     */
+    public void appendArgument(NodeExpr arg) {
+        arguments.add(arg);
+        argCount = arguments.size();
+    }
+
     public int getArgCount() {
         return argCount;
     }
 
+    /**
+     * Sets the function this calls. A call that's been shared by a {@link NodeFactory} might be bound more than once,
+     * and if that's to different functions (since its arguments are variables with different types in different places)
+     * then it's left unbound, and the function has to be looked up each time
+     */
+    public void bind(HeliumFunction function) {
+        target = !bound || target == function ? function : null;
+        bound = true;
+    }
+
+    /**
+     * The function this calls, or {@code null} if it has to be looked up from the arguments' types
+     */
+    public HeliumFunction target() {
+        return target;
+    }
+
     @Override
     public String asString() {
         return "( " + name + "(" + arguments.stream().map(NodeExpr::asString).collect(Collectors.joining(", ")) + ") )";
@@ -24,6 +24,6 @@ public class NodeDummy implements NodeExpr {
 
     @Override
     public String asString() {
-        return "(dummy: " + token.value + (info.isEmpty() ? "" : " info: " + info)+")";
+        return "(dummy: " + token.value() + (info.isEmpty() ? "" : " info: " + info)+")";
     }
 }
@@ -0,0 +1,92 @@
+package adsen.helium.parser.expr;
+
+import adsen.helium.parser.expr.operator.BinaryOperator;
+import adsen.helium.parser.expr.operator.UnaryOperator;
+import adsen.helium.parser.expr.primitives.BoolPrimitive;
+import adsen.helium.parser.expr.primitives.CharPrimitive;
+import adsen.helium.parser.expr.primitives.FloatPrimitive;
+import adsen.helium.parser.expr.primitives.IntPrimitive;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hash-conses expression nodes, so that every {@code 1}, every {@code n} and every {@code n - 1} in a program is the
+ * same object (as long as {@link NodeFactory#SHARE} is on).
+ * <p>
+ * Parsers build each node as usual and then hand it to {@link NodeFactory#share}, which gives back the first node that
+ * was ever built with the same structure. Children are shared before their parents, so two nodes have the same
+ * structure exactly when they have the same operator (or value, or name) and the very same child objects, which makes
+ * the lookup one hash of a few references instead of a walk over the whole subtree. It also means that later passes
+ * can spot repeated subexpressions with {@code ==}.
+ * <p>
+ * Nodes can be shared because nothing changes them once they've been parsed (the interpreter copies values before
+ * changing them). The one thing that is lost is the position of each occurrence, since a shared node only has the
+ * token of the first one, so errors about a literal or variable point at wherever it first appeared.
+ */
+public class NodeFactory {
+    /**
+     * Whether to share nodes at all. When it's off, {@link NodeFactory#share} gives back whatever it was given
+     */
+    public static boolean SHARE = false;
+
+    private final Map<Key, NodeExpr> nodes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger made = new AtomicInteger();
+    private final AtomicInteger shared = new AtomicInteger();
+
+    /**
+     * Structure of a node, with its children compared by identity
+     */
+    private record Key(Object kind, Object first, Object second) {
+    }
+
+    /**
+     * Gives back the node with the same structure as this one, which is this one if it's the first of its kind. The
+     * node's children must already have been shared
+     */
+    public NodeExpr share(NodeExpr node) {
+        if (!SHARE) return node;
+
+        Key key = switch (node) {
+            case IntPrimitive intP -> new Key(IntPrimitive.class, intP.getValue(), null);
+            //By bits, so that 0.0 and -0.0 stay apart
+            case FloatPrimitive floatP -> new Key(FloatPrimitive.class, Double.doubleToLongBits(floatP.getValue()), null);
+            case CharPrimitive charP -> new Key(CharPrimitive.class, charP.getValue(), null);
+            case BoolPrimitive boolP -> new Key(BoolPrimitive.class, boolP.getValue(), null);
+            case NodeIdentifier ident -> new Key(NodeIdentifier.class, ident.name, null);
+            //Unary and binary operators never have the same OperatorType, so they can't get mixed up
+            case UnaryOperator unOp -> new Key(unOp.type(), unOp.operand(), null);
+            case BinaryOperator binOp -> new Key(binOp.type(), binOp.left(), binOp.right());
+            case FuncCallExpr call -> new Key(FuncCallExpr.class, call.name, List.copyOf(call.arguments));
+            default -> null; //Anything else is left alone
+        };
+
+        if (key == null) return node;
+
+        made.incrementAndGet();
+        NodeExpr existing = nodes.putIfAbsent(key, node);
+
+        if (existing == null) return node;
+
+        shared.incrementAndGet();
+        return existing;
+    }
+
+    /**
+     * Shares an identifier, which is the same as {@link NodeFactory#share} but without needing a cast
+     */
+    public NodeIdentifier share(NodeIdentifier identifier) {
+        return (NodeIdentifier) share((NodeExpr) identifier);
+    }
+
+    /**
+     * How many nodes have been given to {@link NodeFactory#share}, and how many of those were replaced by a node that
+     * was already there, for verbose messages
+     */
+    public String stats() {
+        return "Shared " + shared.get() + " out of " + made.get() + " expression nodes, leaving " + nodes.size();
+    }
+}
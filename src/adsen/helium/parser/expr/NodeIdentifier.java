@@ -7,13 +7,18 @@ import adsen.helium.tokeniser.TokenType;
 public class NodeIdentifier implements NodeExpr {
     public final Token token;
     String name;
+    /**
+     * {@link adsen.helium.tokeniser.SymbolTable} id of {@link NodeIdentifier#name}
+     */
+    public final int symbol;
 
     public NodeIdentifier(Token token) {
         if (token.type != TokenType.IDENTIFIER && token.type!=TokenType.VARIABLE) {
             throw new ExpressionError("How did we get here? Tried to create an identifier node with non-identifier token", token);
         }
         this.token = token;
-        this.name = token.value;
+        this.name = token.value();
+        this.symbol = token.symbol;
     }
 
     @Override
@@ -16,7 +16,7 @@ public class BinaryOperator implements Operator {
     }
 
     public BinaryOperator(NodeExpr left, Token operator, NodeExpr right) {
-        this(left, Operator.operatorType.get(operator.value), right);
+        this(left, Operator.operatorType.get(operator.value()), right);
     }
 
     public NodeExpr left() {
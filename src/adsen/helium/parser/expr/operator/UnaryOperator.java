@@ -14,7 +14,7 @@ public class UnaryOperator implements Operator {
     }
 
     public UnaryOperator(Token operator, NodeExpr operand) {
-        this(Operator.operatorType.get(operator.value), operand);
+        this(Operator.operatorType.get(operator.value()), operand);
     }
 
     public NodeExpr operand() {
@@ -13,9 +13,17 @@ public final class BoolPrimitive extends NodePrimitive {
         this.value = value;
     }
 
+    /**
+     * For when the value has already been read from the token
+     */
+    public BoolPrimitive(Token token, boolean value) {
+        super(token);
+        this.value = value;
+    }
+
     public BoolPrimitive(Token token) {
         super(token);
-        this.value = Boolean.parseBoolean(token.value);
+        this.value = Boolean.parseBoolean(token.value());
     }
 
     public static BoolPrimitive of(boolean value) {
@@ -45,7 +53,7 @@ public final class BoolPrimitive extends NodePrimitive {
     }
 
     public String asString() {
-        token.value = String.valueOf(value);
+        token.setValue(String.valueOf(value));
         return super.asString();
     }
 }
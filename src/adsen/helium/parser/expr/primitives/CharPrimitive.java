@@ -13,9 +13,17 @@ public final class CharPrimitive extends NodePrimitive {
         this.value = value;
     }
 
+    /**
+     * For when the value has already been read from the token
+     */
+    public CharPrimitive(Token token, char value) {
+        super(token);
+        this.value = value;
+    }
+
     public CharPrimitive(Token token) {
         super(token);
-        this.value = token.value.charAt(0);
+        this.value = token.value().charAt(0);
     }
 
     @Override
@@ -41,7 +49,7 @@ public final class CharPrimitive extends NodePrimitive {
     }
 
     public String asString() {
-        token.value = String.valueOf(value);
+        token.setValue(String.valueOf(value));
         return super.asString();
     }
 }
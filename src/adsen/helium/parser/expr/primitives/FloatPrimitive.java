@@ -13,9 +13,17 @@ public final class FloatPrimitive extends NodePrimitive {
         this.value = value;
     }
 
+    /**
+     * For when the value has already been read from the token
+     */
+    public FloatPrimitive(Token token, double value) {
+        super(token);
+        this.value = value;
+    }
+
     public FloatPrimitive(Token token) {
         super(token);
-        this.value = Double.parseDouble(token.value);
+        this.value = Double.parseDouble(token.value());
     }
 
     @Override
@@ -41,7 +49,7 @@ public final class FloatPrimitive extends NodePrimitive {
     }
 
     public String asString() {
-        token.value = String.valueOf(value);
+        token.setValue(String.valueOf(value));
         return super.asString();
     }
 }
@@ -13,12 +13,20 @@ public final class IntPrimitive extends NodePrimitive {
         this.value = value;
     }
 
+    /**
+     * For when the value has already been read from the token
+     */
+    public IntPrimitive(Token token, long value) {
+        super(token);
+        this.value = value;
+    }
+
     public IntPrimitive(Token token) {
         super(token);
         if (token.type == TokenType.INT_LITERAL)
-            this.value = Long.parseLong(token.value);
+            this.value = Long.parseLong(token.value());
         else {//Else it's hexadecimal
-            this.value = Long.parseLong(token.value.substring(2), 16);
+            this.value = Long.parseLong(token.value().substring(2), 16);
         }
     }
 
@@ -45,7 +53,7 @@ public final class IntPrimitive extends NodePrimitive {
     }
 
     public String asString() {
-        token.value = String.valueOf(value);
+        token.setValue(String.valueOf(value));
         return super.asString();
     }
 }
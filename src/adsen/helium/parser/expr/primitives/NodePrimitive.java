@@ -20,6 +20,6 @@ public abstract sealed class NodePrimitive implements NodeExpr permits IntPrimit
 
     @Override
     public String asString() {
-        return token.value;
+        return token.value();
     }
 }
@@ -1,6 +1,5 @@
 package adsen.helium.parser.statement.aggregate;
 
-import adsen.helium.error.ExpressionError;
 import adsen.helium.parser.expr.NodeExpr;
 import adsen.helium.parser.statement.HeliumStatement;
 import adsen.helium.tokeniser.Token;
@@ -8,20 +7,17 @@ import adsen.helium.tokeniser.Token;
 public class ForStatement extends HeliumStatement.AggregateStatement {
     public final Token token;
 
-    HeliumStatement assigner;
-    NodeExpr loopCondition;
-    HeliumStatement incrementer;
-    HeliumStatement executionStatement;
-    /**
-     * Ever since new parsing method, this is needed to keep track of the status of the for loop, since the assigner,
-     * incrementer and statement are added separately
-     */
-    ForCreationStatus status = ForCreationStatus.ASSIGNER;
+    final HeliumStatement assigner;
+    final NodeExpr loopCondition;
+    final HeliumStatement incrementer;
+    final HeliumStatement executionStatement;
 
-    public ForStatement(Token token, HeliumStatement assignment, NodeExpr condition) {
+    public ForStatement(Token token, HeliumStatement assignment, NodeExpr condition, HeliumStatement incrementer, HeliumStatement statement) {
         this.token = token;
         this.assigner = assignment;
         this.loopCondition = condition;
+        this.incrementer = incrementer;
+        this.executionStatement = statement;
     }
 
     public NodeExpr condition() {
@@ -42,15 +38,7 @@ public class ForStatement extends HeliumStatement.AggregateStatement {
 
     @Override
     public String asString() {
-        return switch (status) {
-            case COMPLETED ->
-                    "for (" + assigner.asString() + "; " + loopCondition.asString() + "; " + incrementer.asString() + "):\n" + executionStatement.asString();
-
-            case INCREMENTER ->
-                    "for (" + assigner.asString() + "; " + loopCondition.asString() + "; " + incrementer.asString() + "):\n null";
-
-            case ASSIGNER -> "for (" + assigner.asString() + "; " + loopCondition.asString() + "; null):\n null";
-        };
+        return "for (" + assigner.asString() + "; " + loopCondition.asString() + "; " + incrementer.asString() + "):\n" + executionStatement.asString();
     }
 
     @Override
@@ -63,24 +51,6 @@ public class ForStatement extends HeliumStatement.AggregateStatement {
         return token;
     }
 
-    public void addIncrementer(HeliumStatement increment) {
-        if (status == ForCreationStatus.ASSIGNER) {
-            incrementer = increment;
-            status = ForCreationStatus.INCREMENTER;
-        } else {
-            throw new ExpressionError("Incorrect for loop formation, found incrementer in the wrong place", token);
-        }
-    }
-
-    public void addStatement(HeliumStatement statement) {
-        if (status == ForCreationStatus.INCREMENTER) {
-            executionStatement = statement;
-            status = ForCreationStatus.COMPLETED;
-        } else {
-            throw new ExpressionError("Incorrect for loop formation, found statement in the wrong place", token);
-        }
-    }
-
     @Override
     public int length() {
         // Assignment and incrementer should be of length 1
@@ -88,9 +58,3 @@ public class ForStatement extends HeliumStatement.AggregateStatement {
     }
 
 }
-
-enum ForCreationStatus {
-    ASSIGNER,
-    INCREMENTER,
-    COMPLETED
-}
\ No newline at end of file
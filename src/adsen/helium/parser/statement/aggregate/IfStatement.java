@@ -1,25 +1,27 @@
 package adsen.helium.parser.statement.aggregate;
 
-import adsen.helium.error.ExpressionError;
 import adsen.helium.parser.expr.NodeExpr;
 import adsen.helium.parser.statement.HeliumStatement;
 import adsen.helium.tokeniser.Token;
 
 public class IfStatement extends HeliumStatement.AggregateStatement {
     public final Token token;
-    NodeExpr condition;
-    HeliumStatement thenStatement;
-
-    Token elseToken = null;
-    HeliumStatement elseStatement = null;
-
-    IfCreationStatus status = IfCreationStatus.IF;
+    final NodeExpr condition;
+    final HeliumStatement thenStatement;
 
+    final Token elseToken;
+    final HeliumStatement elseStatement;
 
     public IfStatement(Token token, NodeExpr condition, HeliumStatement statement) {
+        this(token, condition, statement, null, null);
+    }
+
+    public IfStatement(Token token, NodeExpr condition, HeliumStatement statement, Token elseToken, HeliumStatement elseStatement) {
         this.token = token;
         this.condition = condition;
         this.thenStatement = statement;
+        this.elseToken = elseToken;
+        this.elseStatement = elseStatement;
     }
 
     public NodeExpr getCondition() {
@@ -34,8 +36,12 @@ public class IfStatement extends HeliumStatement.AggregateStatement {
         return this.elseStatement;
     }
 
+    public Token elseToken() {
+        return this.elseToken;
+    }
+
     public boolean hasElse() {
-        return status == IfCreationStatus.ELSE;
+        return elseStatement != null;
     }
 
     @Override
@@ -53,27 +59,12 @@ public class IfStatement extends HeliumStatement.AggregateStatement {
         return token;
     }
 
-    public void addElse(Token elseToken, HeliumStatement elseStatement) {
-        if (status == IfCreationStatus.IF) {
-            this.elseToken = elseToken;
-            this.elseStatement = elseStatement;
-            this.status = IfCreationStatus.ELSE;
-        } else {
-            throw new ExpressionError("Already added an else to this if statement", elseToken);
-        }
-    }
-
     @Override
     public int length() {
-        if (status == IfCreationStatus.IF) {
+        if (!hasElse()) {
             return 1 + thenStatement.length();
         } else {
             return 1 + thenStatement.length() + elseStatement.length();
         }
     }
 }
-
-enum IfCreationStatus {
-    IF,
-    ELSE
-}
\ No newline at end of file
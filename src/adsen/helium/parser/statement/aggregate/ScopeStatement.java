@@ -9,7 +9,7 @@ import java.util.List;
  */
 public class ScopeStatement extends HeliumStatement.AggregateStatement {
     public final List<HeliumStatement> statements;
-    private boolean isLoop = false;
+    private final boolean isLoop;
     public final String name; //If applicable
     public final Token token;
 
@@ -18,13 +18,21 @@ public class ScopeStatement extends HeliumStatement.AggregateStatement {
     }
 
     public ScopeStatement(List<HeliumStatement> statements, String name, Token closeToken) {
+        this(statements, name, closeToken, false);
+    }
+
+    private ScopeStatement(List<HeliumStatement> statements, String name, Token closeToken, boolean isLoop) {
         this.statements = statements;
         this.name = name;
         this.token = closeToken;
+        this.isLoop = isLoop;
     }
 
-    public void setLoop() {
-        this.isLoop = true;
+    /**
+     * The same scope, but as the body of a loop, so break and continue stop there
+     */
+    public ScopeStatement asLoop() {
+        return new ScopeStatement(statements, name, token, true);
     }
 
     public boolean isLoop() {
@@ -6,8 +6,8 @@ import adsen.helium.tokeniser.Token;
 
 public class WhileStatement extends HeliumStatement.AggregateStatement {
     public final Token token;
-    NodeExpr loopCondition;
-    HeliumStatement executionStatement;
+    final NodeExpr loopCondition;
+    final HeliumStatement executionStatement;
 
     public WhileStatement(Token token, NodeExpr condition, HeliumStatement statement) {
         this.token = token;
@@ -26,7 +26,7 @@ public class AssignStatement extends AtomicStatement {
 
     @Override
     public String asString() {
-        return String.join(" ", identifier.asString(), declarer.value, expression.asString());
+        return String.join(" ", identifier.asString(), declarer.value(), expression.asString());
     }
 
     @Override
@@ -11,7 +11,7 @@ public class BreakStatement extends AtomicStatement {
 
     @Override
     public String asString() {
-        return token.value;
+        return token.value();
     }
 
     @Override
@@ -11,7 +11,7 @@ public class ContinueStatement extends AtomicStatement {
 
     @Override
     public String asString() {
-        return token.value;
+        return token.value();
     }
 
     @Override
@@ -26,7 +26,7 @@ public class DeclareStatement extends AtomicStatement {
 
     @Override
     public String asString() {
-        return String.join(" ", "let", identifier.asString(), declarer.value, expression.asString());
+        return String.join(" ", "let", identifier.asString(), declarer.value(), expression.asString());
     }
 
     @Override
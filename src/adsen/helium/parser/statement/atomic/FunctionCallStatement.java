@@ -1,5 +1,6 @@
 package adsen.helium.parser.statement.atomic;
 
+import adsen.helium.parser.HeliumFunction;
 import adsen.helium.parser.expr.NodeExpr;
 import adsen.helium.parser.statement.HeliumStatement.AtomicStatement;
 import adsen.helium.tokeniser.Token;
@@ -11,12 +12,27 @@ public class FunctionCallStatement extends AtomicStatement {
 
     public final Token name;
     public final List<NodeExpr> args;
+    /**
+     * The function this calls, if it was worked out from the types of the arguments before running
+     */
+    private HeliumFunction target;
 
     public FunctionCallStatement(Token token, List<NodeExpr> args) {
         this.name = token;
         this.args = args;
     }
 
+    public void bind(HeliumFunction function) {
+        target = function;
+    }
+
+    /**
+     * The function this calls, or {@code null} if it has to be looked up from the arguments' types
+     */
+    public HeliumFunction target() {
+        return target;
+    }
+
     @Override
     public String asString() {
         String argStr = "(";
@@ -29,7 +45,7 @@ public class FunctionCallStatement extends AtomicStatement {
 
         argStr = argStr.concat(")");
 
-        return name.value + argStr;
+        return name.value() + argStr;
     }
 
     @Override
@@ -20,7 +20,7 @@ public class IncrementStatement extends AssignStatement {
     public IncrementStatement(NodeIdentifier identifier, Token declarer, boolean before) {
         super(identifier, declarer, null);
         this.isPre = before;
-        incrementor = Operator.operatorType.get(declarer.value);
+        incrementor = Operator.operatorType.get(declarer.value());
 
         if (incrementor != OperatorType.INCREMENT && incrementor != OperatorType.DECREMENT) {
             throw new ExpressionError("Must increment with ++ or decrement with --", declarer);
@@ -30,7 +30,7 @@ public class IncrementStatement extends AssignStatement {
 
     @Override
     public String asString() {
-        return isPre ? declarer.value + identifier.asString() : identifier.asString() + declarer.value;
+        return isPre ? declarer.value() + identifier.asString() : identifier.asString() + declarer.value();
     }
 
     @Override
@@ -17,7 +17,7 @@ public class StaticDeclareStatement extends DeclareStatement {
 
     @Override
     public String asString() {
-        return String.join(" ", valueType.value, identifier.asString(), declarer.value, expression.asString());
+        return String.join(" ", valueType.value(), identifier.asString(), declarer.value(), expression.asString());
     }
 
     @Override
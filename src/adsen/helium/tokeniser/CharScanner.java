@@ -0,0 +1,161 @@
+package adsen.helium.tokeniser;
+
+/**
+ * Character classification and scanning for the {@link Tokeniser}.
+ * <p>
+ * ASCII classes come from a 256-entry table instead of {@code Character.isX} calls, and the long runs (whitespace,
+ * identifiers and comments) get scanned in tight loops over the source's bytes. Anything outside of ASCII takes a slower
+ * path, which decodes the whole UTF-8 character and asks {@link Character} about it, so that it's classed the same way
+ * as when the tokeniser worked on decoded {@code String}s.
+ * <p>
+ * There's no bulk scanning. Testing 8 bytes at a time by reading {@code long}s was measured and was a bit slower than
+ * these loops, and so was testing 16 to 64 bytes at a time with the incubating Vector API, which also needs
+ * {@code --add-modules jdk.incubator.vector} to build and run. The JIT already does well with these loops, and most
+ * runs are too short for either to make up for the setup.
+ */
+public final class CharScanner {
+    public static final int WHITESPACE = 1;
+    public static final int LETTER = 1 << 1;
+    public static final int DIGIT = 1 << 2;
+    public static final int HEX_DIGIT = 1 << 3;
+    /**
+     * Characters which can't be part of an operator, so the operator branch of the tokeniser stops on them
+     */
+    public static final int OPERATOR_END = 1 << 4;
+
+    public static final int IDENTIFIER_PART = LETTER | DIGIT;
+
+    private static final byte[] CLASSES = new byte[256];
+
+    static {
+        for (int c = 0; c < 256; c++) {
+            int classes = 0;
+
+            if (c == ' ' || ('\t' <= c && c <= '\r') || (0x1C <= c && c <= 0x1F)) //Same as Character.isWhitespace in ASCII
+                classes |= WHITESPACE;
+
+            //Non-ASCII bytes aren't in any class here, they get looked at with classesAt instead
+            if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || c == '_')
+                classes |= LETTER;
+
+            if ('0' <= c && c <= '9')
+                classes |= DIGIT;
+
+            if (('0' <= c && c <= '9') || ('a' <= c && c <= 'f') || ('A' <= c && c <= 'F') || c == 'x' || c == 'X')
+                classes |= HEX_DIGIT;
+
+            if ((classes & (WHITESPACE | LETTER | DIGIT)) != 0 || "'\";.,()[]{}".indexOf(c) >= 0)
+                classes |= OPERATOR_END;
+
+            CLASSES[c] = (byte) classes;
+        }
+    }
+
+    private CharScanner() {
+    }
+
+    /**
+     * Whether a character (as returned by {@link Tokeniser#peek()}) is in any of the given classes. The end of input
+     * character isn't in any class
+     */
+    public static boolean is(char c, int classes) {
+        return c < 256 && (CLASSES[c] & classes) != 0;
+    }
+
+    /**
+     * Whether the character starting at {@code pos} is in any of the given classes, including non-ASCII ones
+     */
+    public static boolean is(HeliumSource source, int pos, int classes) {
+        return (classesAt(source, pos) & classes) != 0;
+    }
+
+    /**
+     * The classes of the character starting at {@code pos}. Non-ASCII whitespace and letters are classed like
+     * {@link Character#isWhitespace} and {@link Character#isLetter} say, and other non-ASCII letters or digits (which
+     * {@link Character#isLetterOrDigit} allows in identifiers) only count as {@link CharScanner#DIGIT}, since numbers
+     * still have to be ASCII. Anything else, including bytes that aren't valid UTF-8, isn't in any class, so the
+     * tokeniser reports it as an unknown symbol.
+     */
+    public static int classesAt(HeliumSource source, int pos) {
+        int lead = source.byteAt(pos) & 0xFF;
+        if (lead < 0x80) return CLASSES[lead];
+
+        int codePoint = codePointAt(source, pos);
+        if (codePoint < 0) return 0;
+
+        if (Character.isWhitespace(codePoint)) return WHITESPACE | OPERATOR_END;
+        if (Character.isLetter(codePoint)) return LETTER | OPERATOR_END;
+        if (Character.isLetterOrDigit(codePoint)) return DIGIT | OPERATOR_END;
+        return 0;
+    }
+
+    /**
+     * How many bytes the UTF-8 character starting at {@code pos} takes up, which is 1 for a byte that doesn't start
+     * one (or one cut off by the end of the source), so it can still be stepped over
+     */
+    public static int width(HeliumSource source, int pos) {
+        int lead = source.byteAt(pos) & 0xFF;
+        int width = (lead & 0xE0) == 0xC0 ? 2 : (lead & 0xF0) == 0xE0 ? 3 : (lead & 0xF8) == 0xF0 ? 4 : 1;
+
+        return pos + width > source.length() ? 1 : width;
+    }
+
+    /**
+     * Decodes the UTF-8 character starting at {@code pos}, or returns -1 if it isn't a valid one
+     */
+    private static int codePointAt(HeliumSource source, int pos) {
+        int width = width(source, pos);
+        if (width == 1) return -1;
+
+        int codePoint = source.byteAt(pos) & (0xFF >> (width + 1));
+        for (int i = 1; i < width; i++) {
+            int next = source.byteAt(pos + i) & 0xFF;
+            if ((next & 0xC0) != 0x80) return -1;
+
+            codePoint = codePoint << 6 | next & 0x3F;
+        }
+        return codePoint;
+    }
+
+    /**
+     * Returns the position of the first non-whitespace character at or after {@code pos}
+     */
+    public static int skipWhitespace(HeliumSource source, int pos) {
+        return scan(source, pos, WHITESPACE);
+    }
+
+    /**
+     * Returns the position just after the end of the identifier (letters, digits and '_') starting at or before
+     * {@code pos}
+     */
+    public static int scanIdentifier(HeliumSource source, int pos) {
+        return scan(source, pos, IDENTIFIER_PART);
+    }
+
+    /**
+     * Returns the position of the first character at or after {@code pos} which isn't in any of the given classes, only
+     * decoding characters which aren't ASCII
+     */
+    private static int scan(HeliumSource source, int pos, int classes) {
+        int length = source.length();
+
+        while (pos < length) {
+            int b = source.byteAt(pos) & 0xFF;
+
+            if ((CLASSES[b] & classes) != 0) pos++;
+            else if (b >= 0x80 && is(source, pos, classes)) pos += width(source, pos);
+            else break;
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the position of the first {@code target} byte at or after {@code pos}, or the length of the source if
+     * there aren't any
+     */
+    public static int find(HeliumSource source, int pos, char target) {
+        int length = source.length();
+        while (pos < length && source.byteAt(pos) != (byte) target) pos++;
+        return pos;
+    }
+}
@@ -0,0 +1,159 @@
+package adsen.helium.tokeniser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The code of a Helium file, kept as UTF-8 bytes.
+ * <p>
+ * Files get memory-mapped instead of read into a {@link String}, so the {@link Tokeniser} can scan the bytes directly,
+ * and only identifiers and literals ever get decoded (see {@link Token#value()}).
+ */
+public final class HeliumSource {
+    /**
+     * Name of the file this came from, used in messages
+     */
+    public final String name;
+
+    private final ByteBuffer bytes;
+
+    /**
+     * Position at which each line starts, built once per file so tokens don't need to carry their own line and column
+     */
+    private final int[] lineStarts;
+
+    private HeliumSource(String name, ByteBuffer bytes) {
+        this.name = name;
+        this.bytes = bytes;
+
+        int length = bytes.limit();
+        int lines = 1;
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(i) == '\n') lines++;
+        }
+
+        lineStarts = new int[lines];
+        for (int i = 0, line = 1; i < length; i++) {
+            if (bytes.get(i) == '\n') lineStarts[line++] = i + 1;
+        }
+    }
+
+    /**
+     * Memory-maps a file. The mapping stays valid after the channel is closed
+     */
+    public static HeliumSource map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File is too large (" + size + " bytes)");
+
+            return new HeliumSource(path.toString(), channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Reads a file into memory instead of mapping it, for when the file might change while we're still using it (since
+     * a mapping would change along with it)
+     */
+    public static HeliumSource read(Path path) throws IOException {
+        return new HeliumSource(path.toString(), ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    /**
+     * For code which didn't come from a file
+     */
+    public static HeliumSource of(String name, String code) {
+        return new HeliumSource(name, ByteBuffer.wrap(code.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Length in bytes
+     */
+    public int length() {
+        return bytes.limit();
+    }
+
+    public byte byteAt(int pos) {
+        return bytes.get(pos);
+    }
+
+    /**
+     * Decodes {@code length} bytes starting at {@code start}
+     */
+    public String decode(int start, int length) {
+        byte[] slice = new byte[length];
+        bytes.get(start, slice);
+        return new String(slice, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the whole file. Avoid this for big files, it's what this class is meant to get around
+     */
+    public String asString() {
+        return decode(0, length());
+    }
+
+    /**
+     * SHA-256 of the file's bytes, for telling whether it's changed since it was last read
+     */
+    public byte[] sha256() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes.duplicate().clear());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform has SHA-256", e);
+        }
+    }
+
+    /**
+     * 64 bit FNV-1a hash of {@code length} bytes starting at {@code start}. Not meant to be secure, just to quickly tell
+     * apart bits of code
+     */
+    public long hash(int start, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < start + length; i++) {
+            hash ^= bytes.get(i) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Whether {@code length} bytes starting at {@code start} are the same as the ones at {@code otherStart} in
+     * {@code other}
+     */
+    public boolean regionMatches(int start, HeliumSource other, int otherStart, int length) {
+        if (start + length > length() || otherStart + length > other.length()) return false;
+
+        return bytes.slice(start, length).equals(other.bytes.slice(otherStart, length));
+    }
+
+    /**
+     * Line number (starting from 0) of a position in the file
+     */
+    public int lineOf(int pos) {
+        int line = Arrays.binarySearch(lineStarts, pos);
+        return line >= 0 ? line : -line - 2;
+    }
+
+    /**
+     * Column number (starting from 0) of a position in the file, counted in characters rather than bytes
+     */
+    public int columnOf(int pos) {
+        int column = 0;
+        for (int i = lineStarts[lineOf(pos)]; i < pos; i++) {
+            if ((bytes.get(i) & 0xC0) != 0x80) column++; //Not counting UTF-8 continuation bytes
+        }
+        return column;
+    }
+}
@@ -7,10 +7,15 @@ import adsen.helium.parser.expr.primitives.FloatPrimitive;
 import adsen.helium.parser.expr.primitives.IntPrimitive;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static adsen.helium.tokeniser.TokenType.*;
 
+/**
+ * Keywords and operators of the language. The maps are the list of them, and the tokeniser matches against
+ * {@link SliceTable}s built from them, so it doesn't have to decode every word it comes across
+ */
 public class Keywords {
     public static Map<String, TokenType> tokeniserKeywords = new HashMap<>() {{
         put("true", BOOL_LITERAL);
@@ -39,7 +44,41 @@ public class Keywords {
 
     public static Map<String, TokenType> operatorTokens = new HashMap<>();
 
+    private static final SliceTable<TokenType> keywordTable;
+    private static final SliceTable<OperatorType> operatorTable;
+
     static {
         OperatorType.noop();
+
+        keywordTable = new SliceTable<>(tokeniserKeywords);
+
+        //Not from Operator.operatorType, since we could be in the middle of OperatorType filling it
+        Map<String, OperatorType> operators = new LinkedHashMap<>();
+        for (OperatorType op : OperatorType.values()) {
+            //Unary + and - are spelled the same as binary ones in code, the tokeniser sorts them out later
+            if (op != OperatorType.POSITIVE && op != OperatorType.NEGATIVE)
+                operators.put(op.value, op);
+        }
+        operatorTable = new SliceTable<>(operators);
+    }
+
+    /**
+     * Keyword type of the word spanning {@code length} bytes from {@code start}, or {@code null} if it's just an
+     * identifier
+     */
+    public static TokenType keyword(HeliumSource source, int start, int length) {
+        return keywordTable.get(source, start, length);
+    }
+
+    /**
+     * Longest operator starting at {@code start} which fits within {@code maxLength} bytes, or {@code null} if none do.
+     * This way something like {@code !-x} gets split into {@code !} and {@code -} without needing whitespace
+     */
+    public static OperatorType operator(HeliumSource source, int start, int maxLength) {
+        for (int length = Math.min(maxLength, operatorTable.maxLength); length > 0; length--) {
+            OperatorType op = operatorTable.get(source, start, length);
+            if (op != null) return op;
+        }
+        return null;
     }
 }
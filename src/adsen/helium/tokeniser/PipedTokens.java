@@ -0,0 +1,171 @@
+package adsen.helium.tokeniser;
+
+import adsen.helium.error.ExpressionError;
+import adsen.helium.parser.expr.operator.OperatorType;
+
+/**
+ * Tokens which are made on one thread (by {@link PipedTokens#run}) while another thread reads them.
+ * <p>
+ * The tokeniser works on its own {@link TokenBuffer}, and every {@link PipedTokens#CHUNK} tokens it hands out a
+ * {@link TokenBuffer#snapshot} of the tokens which are done so far. Readers only ever look at the latest snapshot, and
+ * wait in {@link PipedTokens#has} if they've caught up with it, so they never see a token that's still being
+ * classified. Unlike a {@link TokenStream}, every token is kept, so this can be read from anywhere once it's done.
+ */
+public class PipedTokens implements TokenSource {
+    /**
+     * How many tokens to make before handing them over. Smaller means the reader can start sooner, but has to wait more
+     * often
+     */
+    private static final int CHUNK = 16384;
+
+    private final Tokeniser tokeniser;
+    private final TokenBuffer tokens;
+
+    private volatile TokenBuffer published;
+    private volatile boolean finished = false;
+    private volatile ExpressionError error;
+
+    private final Object lock = new Object();
+
+    /**
+     * How long readers spent waiting for tokens, and how long the tokeniser took, for timings
+     */
+    private long waitNanos = 0;
+    private long tokeniseNanos = 0;
+
+    public PipedTokens(HeliumSource input, SymbolTable symbols) {
+        tokeniser = new Tokeniser(input, symbols);
+        tokens = tokeniser.tokens();
+        published = tokens.snapshot(0);
+    }
+
+    /**
+     * Tokenises the whole input, handing out tokens as it goes. Meant to be run on its own thread, and any error ends
+     * up in {@link PipedTokens#error()} instead of being thrown
+     */
+    public void run() {
+        long start = System.nanoTime();
+
+        try {
+            //The last token might still get reclassified once the one after it is read, so it doesn't get handed out
+            for (int index = CHUNK; tokeniser.fill(index); index += CHUNK) publish(tokens.size() - 1);
+        } catch (ExpressionError e) {
+            error = e;
+        } finally {
+            tokeniseNanos = System.nanoTime() - start;
+            publish(tokens.size());
+
+            synchronized (lock) {
+                finished = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void publish(int count) {
+        synchronized (lock) {
+            published = tokens.snapshot(count);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * The error the tokeniser ran into, if it's finished and ran into one
+     */
+    public ExpressionError error() {
+        return error;
+    }
+
+    public long tokeniseNanos() {
+        return tokeniseNanos;
+    }
+
+    public synchronized long waitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * Waits until the tokeniser is done
+     */
+    private void awaitFinished() {
+        awaitToken(Integer.MAX_VALUE);
+    }
+
+    private void awaitToken(int i) {
+        if (finished || i < published.size()) return;
+
+        long start = System.nanoTime();
+
+        synchronized (lock) {
+            while (!finished && i >= published.size()) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for tokens", e);
+                }
+            }
+        }
+
+        synchronized (this) {
+            waitNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public HeliumSource source() {
+        return tokens.source;
+    }
+
+    @Override
+    public boolean has(int i) {
+        awaitToken(i);
+        return published.has(i);
+    }
+
+    @Override
+    public TokenType type(int i) {
+        return published.type(i);
+    }
+
+    @Override
+    public int start(int i) {
+        return published.start(i);
+    }
+
+    @Override
+    public int length(int i) {
+        return published.length(i);
+    }
+
+    @Override
+    public OperatorType operator(int i) {
+        return published.operator(i);
+    }
+
+    @Override
+    public int symbol(int i) {
+        return published.symbol(i);
+    }
+
+    @Override
+    public Token token(int i) {
+        return published.token(i);
+    }
+
+    /**
+     * The last token of the whole file, so this waits for the tokeniser to finish
+     */
+    @Override
+    public Token getLast() {
+        awaitFinished();
+        return published.getLast();
+    }
+
+    /**
+     * Does nothing, every token gets kept
+     */
+    @Override
+    public void release(int index) {
+    }
+}
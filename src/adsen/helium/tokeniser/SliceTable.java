@@ -0,0 +1,94 @@
+package adsen.helium.tokeniser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Fixed set of words which can be looked up straight from a slice of a {@link HeliumSource}, without making a
+ * {@link String} out of it first.
+ * <p>
+ * The hash seed and table size are searched for when the table is built, so that no two words land in the same slot
+ * (a perfect hash). A lookup is then one hash over the slice's bytes and one comparison against the single word that
+ * could be there.
+ */
+final class SliceTable<T> {
+    private final byte[][] words;
+    private final Object[] values;
+    private final int seed;
+    private final int mask;
+    /**
+     * Length of the longest word, so callers know how far ahead it's worth looking
+     */
+    final int maxLength;
+
+    SliceTable(Map<String, T> entries) {
+        byte[][] keys = new byte[entries.size()][];
+        Object[] vals = new Object[entries.size()];
+        int i = 0, longest = 0;
+        for (Map.Entry<String, T> entry : entries.entrySet()) {
+            keys[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            vals[i++] = entry.getValue();
+            longest = Math.max(longest, keys[i - 1].length);
+        }
+        maxLength = longest;
+
+        //Try seeds for the smallest table that fits, then give it more room if none work
+        for (int size = Integer.highestOneBit(Math.max(keys.length, 1) * 2 - 1) << 1; ; size <<= 1) {
+            for (int s = 1; s < 1 << 12; s++) {
+                byte[][] table = placeAll(keys, s, size - 1);
+                if (table == null) continue;
+
+                words = table;
+                values = new Object[size];
+                for (int k = 0; k < keys.length; k++) values[hash(keys[k], s, size - 1)] = vals[k];
+                seed = s;
+                mask = size - 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Puts every key into its slot, or returns {@code null} if two of them collide
+     */
+    private static byte[][] placeAll(byte[][] keys, int seed, int mask) {
+        byte[][] table = new byte[mask + 1][];
+        for (byte[] key : keys) {
+            int slot = hash(key, seed, mask);
+            if (table[slot] != null) return null;
+            table[slot] = key;
+        }
+        return table;
+    }
+
+    private static int hash(byte[] key, int seed, int mask) {
+        int h = seed;
+        for (byte b : key) h = h * 31 + b;
+        return mix(h, key.length) & mask;
+    }
+
+    private static int mix(int h, int length) {
+        h ^= length * 0x9E3779B9;
+        return h ^ (h >>> 15) ^ (h >>> 7);
+    }
+
+    /**
+     * Value for the word spanning {@code length} bytes from {@code start}, or {@code null} if it isn't one of them
+     */
+    @SuppressWarnings("unchecked")
+    T get(HeliumSource source, int start, int length) {
+        if (length > maxLength) return null;
+
+        int h = seed;
+        for (int i = start; i < start + length; i++) h = h * 31 + source.byteAt(i);
+        int slot = mix(h, length) & mask;
+
+        byte[] word = words[slot];
+        if (word == null || word.length != length) return null;
+
+        for (int i = 0; i < length; i++) {
+            if (word[i] != source.byteAt(start + i)) return null;
+        }
+        return (T) values[slot];
+    }
+}
@@ -0,0 +1,133 @@
+package adsen.helium.tokeniser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns every identifier in a compilation, giving each distinct name a dense int id (0, 1, 2, ...).
+ * <p>
+ * The {@link Tokeniser} interns straight from the source bytes, so a name only gets decoded into a {@link String} the
+ * first time it's seen. After that, everything which carries a name (identifiers, function calls, functions) also
+ * carries its id, so later stages can index arrays by id instead of hashing strings.
+ */
+public class SymbolTable {
+    /**
+     * Id given to things which don't have a symbol, like literals or tokens made up by the interpreter
+     */
+    public static final int NONE = -1;
+
+    private byte[][] bytes = new byte[64][];
+    private String[] names = new String[64];
+    private int size = 0;
+
+    /**
+     * Open addressing table of id + 1, with 0 meaning empty. Always at most half full
+     */
+    private int[] slots = new int[128];
+
+    /**
+     * Id of the name spanning {@code length} bytes from {@code start}, adding it if it's new
+     */
+    public synchronized int intern(HeliumSource source, int start, int length) {
+        int mask = slots.length - 1;
+        int slot = hash(source, start, length) & mask;
+
+        for (int id; (id = slots[slot] - 1) != NONE; slot = (slot + 1) & mask) {
+            if (matches(bytes[id], source, start, length)) return id;
+        }
+
+        byte[] name = new byte[length];
+        for (int i = 0; i < length; i++) name[i] = source.byteAt(start + i);
+        return add(name, slot);
+    }
+
+    /**
+     * Id of a name which didn't come straight from source, adding it if it's new
+     */
+    public synchronized int intern(String name) {
+        int id = find(name);
+        if (id != NONE) return id;
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int mask = slots.length - 1;
+        int slot = hash(nameBytes) & mask;
+        while (slots[slot] != 0) slot = (slot + 1) & mask;
+
+        return add(nameBytes, slot);
+    }
+
+    /**
+     * Id of a name, or {@link SymbolTable#NONE} if it's never been interned
+     */
+    public synchronized int find(String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int mask = slots.length - 1;
+
+        for (int slot = hash(nameBytes) & mask, id; (id = slots[slot] - 1) != NONE; slot = (slot + 1) & mask) {
+            if (Arrays.equals(bytes[id], nameBytes)) return id;
+        }
+        return NONE;
+    }
+
+    /**
+     * The name with this id. Always the same {@link String} instance for the same id
+     */
+    public synchronized String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Number of distinct names, so arrays indexed by id need to be this long
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private int add(byte[] name, int slot) {
+        if (size == names.length) {
+            bytes = Arrays.copyOf(bytes, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+
+        int id = size++;
+        bytes[id] = name;
+        names[id] = new String(name, StandardCharsets.UTF_8);
+        slots[slot] = id + 1;
+
+        if (size * 2 > slots.length) rehash();
+
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+
+        for (int id = 0; id < size; id++) {
+            int slot = hash(bytes[id]) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static boolean matches(byte[] name, HeliumSource source, int start, int length) {
+        if (name.length != length) return false;
+
+        for (int i = 0; i < length; i++) {
+            if (name[i] != source.byteAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static int hash(HeliumSource source, int start, int length) {
+        int h = 0;
+        for (int i = start; i < start + length; i++) h = h * 31 + source.byteAt(i);
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(byte[] name) {
+        int h = 0;
+        for (byte b : name) h = h * 31 + b;
+        return h ^ (h >>> 16);
+    }
+}
@@ -2,76 +2,126 @@ package adsen.helium.tokeniser;
 
 import static adsen.helium.tokeniser.TokenType.VARIABLE;
 
+/**
+ * A token is a view of a slice of a {@link HeliumSource}, given by {@link Token#pos} and {@link Token#length}.
+ * <p>
+ * The string value only gets made when it's asked for in {@link Token#value()}, and then it's kept around
+ */
 public class Token {
-    public String value = "";
+    /**
+     * The source this token is a slice of, or {@code null} for tokens made up outside the tokeniser
+     */
+    private final HeliumSource source;
     public TokenType type;
 
-    public int linepos;
-    public int colpos;
-    public int pos;
+    /**
+     * Position of the first byte of the token within the source
+     */
+    public final int pos;
+    /**
+     * Number of bytes of source this token spans
+     */
+    public final int length;
 
-    public void append(String s) {
-        value += s;
-    }
+    /**
+     * {@link SymbolTable} id if this is an identifier from the tokeniser, {@link SymbolTable#NONE} otherwise
+     */
+    public int symbol = SymbolTable.NONE;
 
-    public void append(char c) {
-        value += c;
-    }
+    /**
+     * Cached string value, {@code null} until someone asks for it
+     */
+    private String value;
 
     /**
-     * Empty constructor used when tokenising
+     * Constructor used when tokenising
      */
-    public Token() {}
+    public Token(HeliumSource source, TokenType type, int pos, int length) {
+        this.source = source;
+        this.type = type;
+        this.pos = pos;
+        this.length = length;
+    }
 
     /**
      * Constructor used for interpreter
      */
     public Token(String value, TokenType type) {
-        this.value = value;
+        this.source = null;
         this.type = type;
-        this.colpos = -1;
-        this.linepos = -1;
+        this.pos = -1;
+        this.length = value.length();
+        this.value = value;
+    }
+
+    /**
+     * Decodes the token's slice of the source the first time it's called. Char and string literals get their quotes
+     * stripped and their escape characters turned into the real thing
+     */
+    public String value() {
+        if (value == null) {
+            value = switch (type) {
+                case CHAR_LITERAL, STR_LITERAL -> Tokeniser.unescape(source.decode(pos + 1, length - 2));
+                case null, default -> source.decode(pos, length);
+            };
+        }
+        return value;
+    }
+
+    /**
+     * The source this token is a slice of, or {@code null} if it was made up outside the tokeniser
+     */
+    public HeliumSource source() {
+        return source;
+    }
+
+    /**
+     * Overrides the value of the token, for when it no longer matches the source (e.g. unary operators)
+     */
+    public void setValue(String value) {
+        this.value = value;
     }
 
+    /**
+     * Line of the token within the source, starting from 0. Tokens made outside the tokeniser give -1
+     */
+    public int linepos() {
+        return source == null ? -1 : source.lineOf(pos);
+    }
+
+    /**
+     * Column of the token within its line, starting from 0. Tokens made outside the tokeniser give -1
+     */
+    public int colpos() {
+        return source == null ? -1 : source.columnOf(pos);
+    }
 
     /**
      * Can the token be processed on its own to give a value
      */
     public boolean isValueToken(){
-        return switch (type){
-            case VARIABLE, IDENTIFIER, BOOL_LITERAL, INT_LITERAL, FLOAT_LITERAL, CHAR_LITERAL, STR_LITERAL -> true;
-            default -> false;
-        };
+        return type.isValueToken();
     }
 
     /**
      * Can the token be part of an expression.
-     * Preparing for shunting yard.
-     * TODO make sure this is correct, cos I have a feeling it isn't
      */
     public boolean isValidExprToken(){
-        return switch (type) {
-            case LET, EXIT, IF, ELSE, SEMICOLON, C_OPEN_PAREN, C_CLOSE_PAREN, WHILE, FOR, CONTINUE, VOID, BREAK, IMPORT ->
-                    false; //Simpler to go by exclusion, it seems
-            default -> true;
-        };
+        return type.isValidExprToken();
     }
 
     public boolean isFunctionReturnToken(){
-        return switch (type){
-            case VOID, PRIMITIVE_TYPE, COMPOUND_TYPE, CLASS_TYPE -> true;
-            default -> false;
-        };
+        return type.isFunctionReturnToken();
     }
 
     /**
      * Can the token be part of an import string. Imports could contain keywords, including import
      */
     public boolean isValidImportToken() {
-        return type == VARIABLE || Keywords.tokeniserKeywords.containsKey(value);
+        return type == VARIABLE || Keywords.tokeniserKeywords.containsKey(value());
     }
 
     public String toString() {
-        return type + ": " + value;
+        return type + ": " + value();
     }
 }
@@ -0,0 +1,196 @@
+package adsen.helium.tokeniser;
+
+import adsen.helium.parser.expr.operator.OperatorType;
+
+import java.util.Arrays;
+
+/**
+ * Stores the tokens of a file as parallel arrays (type, start and length), instead of one {@link Token} object per
+ * token. Everything is accessed by index, and {@link Token} objects only get made by {@link TokenBuffer#token(int)}
+ * when something actually needs to hold onto one (AST nodes, error messages, etc.)
+ * <p>
+ * When used by a {@link TokenStream}, only a window of the file's tokens is kept, starting at {@link TokenBuffer#offset}.
+ * Indices still count from the start of the file.
+ */
+public class TokenBuffer implements TokenSource {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final OperatorType[] OPERATORS = OperatorType.values();
+
+    /**
+     * The source the tokens are slices of
+     */
+    public final HeliumSource source;
+    /**
+     * Where identifier names are interned
+     */
+    public final SymbolTable symbols;
+
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    /**
+     * {@link OperatorType} ordinal plus one for operator tokens, and 0 for everything else.
+     * Kept separately since unary + and - have the same text as their binary versions
+     */
+    private byte[] operators;
+    /**
+     * {@link SymbolTable} id for identifier tokens, and {@link SymbolTable#NONE} for everything else
+     */
+    private int[] symbolIds;
+
+    /**
+     * Number of tokens in the arrays
+     */
+    private int count = 0;
+    /**
+     * Index in the file of the first token in the arrays, which is only ever not 0 in a {@link TokenStream}
+     */
+    private int offset = 0;
+
+    TokenBuffer(HeliumSource source, SymbolTable symbols, int capacity) {
+        this.source = source;
+        this.symbols = symbols;
+        capacity = Math.max(capacity, 16);
+        types = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        operators = new byte[capacity];
+        symbolIds = new int[capacity];
+    }
+
+    /**
+     * The first {@code count} tokens of this buffer, sharing its arrays. Tokens added to this buffer afterwards don't
+     * show up in the copy, and the copy still works if this one moves to bigger arrays. Used by {@link PipedTokens}
+     */
+    TokenBuffer snapshot(int count) {
+        TokenBuffer copy = new TokenBuffer(source, symbols, 0);
+        copy.types = types;
+        copy.starts = starts;
+        copy.lengths = lengths;
+        copy.operators = operators;
+        copy.symbolIds = symbolIds;
+        copy.count = count - offset;
+        copy.offset = offset;
+        return copy;
+    }
+
+    void add(TokenType type, int start, int length, OperatorType operator, int symbol) {
+        if (count == types.length) {
+            int capacity = count + (count >> 1);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            operators = Arrays.copyOf(operators, capacity);
+            symbolIds = Arrays.copyOf(symbolIds, capacity);
+        }
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        operators[count] = (byte) (operator == null ? 0 : operator.ordinal() + 1);
+        symbolIds[count] = symbol;
+        count++;
+    }
+
+    void setType(int i, TokenType type) {
+        types[i - offset] = (byte) type.ordinal();
+    }
+
+    void setOperator(int i, OperatorType operator) {
+        operators[i - offset] = (byte) (operator.ordinal() + 1);
+    }
+
+    /**
+     * Drops the tokens before {@code index}. This only moves the remaining tokens back once at least half the arrays
+     * are free, so it costs about as much as adding the tokens did
+     */
+    void discard(int index) {
+        int dropped = index - offset;
+        if (dropped <= 0 || dropped < types.length / 2) return;
+
+        count -= dropped;
+        System.arraycopy(types, dropped, types, 0, count);
+        System.arraycopy(starts, dropped, starts, 0, count);
+        System.arraycopy(lengths, dropped, lengths, 0, count);
+        System.arraycopy(operators, dropped, operators, 0, count);
+        System.arraycopy(symbolIds, dropped, symbolIds, 0, count);
+        offset = index;
+    }
+
+    /**
+     * Number of tokens read from the file so far, including any that have been discarded
+     */
+    public int size() {
+        return offset + count;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public HeliumSource source() {
+        return source;
+    }
+
+    @Override
+    public boolean has(int i) {
+        return i < size();
+    }
+
+    @Override
+    public TokenType type(int i) {
+        return TYPES[types[i - offset]];
+    }
+
+    @Override
+    public int start(int i) {
+        return starts[i - offset];
+    }
+
+    @Override
+    public int length(int i) {
+        return lengths[i - offset];
+    }
+
+    @Override
+    public OperatorType operator(int i) {
+        byte operator = operators[i - offset];
+        return operator == 0 ? null : OPERATORS[operator - 1];
+    }
+
+    @Override
+    public int symbol(int i) {
+        return symbolIds[i - offset];
+    }
+
+    @Override
+    public Token token(int i) {
+        Token token = new Token(source, type(i), start(i), length(i));
+
+        //Identifiers share the interned name instead of decoding their own
+        int symbol = symbol(i);
+        if (symbol != SymbolTable.NONE) {
+            token.symbol = symbol;
+            token.setValue(symbols.name(symbol));
+        }
+
+        //Unary + and - aren't spelled the way their operators are
+        OperatorType operator = operator(i);
+        if (operator == OperatorType.POSITIVE || operator == OperatorType.NEGATIVE)
+            token.setValue(operator.value);
+
+        return token;
+    }
+
+    @Override
+    public Token getLast() {
+        return token(size() - 1);
+    }
+
+    /**
+     * Does nothing, since the whole point of a {@link TokenBuffer} is to have every token
+     */
+    @Override
+    public void release(int index) {
+    }
+}
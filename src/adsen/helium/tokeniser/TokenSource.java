@@ -0,0 +1,58 @@
+package adsen.helium.tokeniser;
+
+import adsen.helium.parser.expr.operator.OperatorType;
+
+/**
+ * Tokens accessed by their index in the file, which is what the parser reads from.
+ * <p>
+ * A {@link TokenBuffer} has every token of the file already, while a {@link TokenStream} tokenises as the parser asks
+ * for more, and forgets tokens once they have been {@link TokenSource#release released}. Either way, indices always
+ * count from the start of the file.
+ */
+public interface TokenSource {
+    /**
+     * The source the tokens are slices of
+     */
+    HeliumSource source();
+
+    /**
+     * Whether there is a token at index {@code i}. This must be checked before looking at a token that hasn't been
+     * looked at before, since it's what makes a {@link TokenStream} read that far
+     */
+    boolean has(int i);
+
+    TokenType type(int i);
+
+    int start(int i);
+
+    int length(int i);
+
+    /**
+     * The operator this token represents, or {@code null} if it isn't one
+     */
+    OperatorType operator(int i);
+
+    /**
+     * {@link SymbolTable} id of the name this token is, or {@link SymbolTable#NONE} if it isn't an identifier
+     */
+    int symbol(int i);
+
+    /**
+     * Makes a {@link Token} for the token at index {@code i}
+     */
+    Token token(int i);
+
+    default String value(int i) {
+        return token(i).value();
+    }
+
+    /**
+     * The last token read so far, which is the last token in the file once {@link TokenSource#has} has returned false
+     */
+    Token getLast();
+
+    /**
+     * Tells the source that tokens before {@code index} won't be looked at again, so it can drop them
+     */
+    void release(int index);
+}
@@ -0,0 +1,85 @@
+package adsen.helium.tokeniser;
+
+import adsen.helium.parser.expr.operator.OperatorType;
+
+/**
+ * Tokenises as the parser asks for tokens, instead of doing the whole file up front.
+ * <p>
+ * Tokens are classified as they are read (which needs one token of lookahead), so parsing can start as soon as the
+ * first couple of tokens are in. Tokens before the last {@link TokenStream#release} get dropped, so the memory used only
+ * depends on how far ahead the parser looks, not on the size of the file.
+ */
+public class TokenStream implements TokenSource {
+    /**
+     * Tokens to start with room for, the window grows if the parser holds onto more than this
+     */
+    private static final int WINDOW = 256;
+
+    private final Tokeniser tokeniser;
+    private final TokenBuffer window;
+
+    /**
+     * Lowest index the parser still wants
+     */
+    private int released = 0;
+
+    public TokenStream(HeliumSource input, SymbolTable symbols) {
+        tokeniser = new Tokeniser(input, symbols, WINDOW);
+        window = tokeniser.tokens();
+    }
+
+    @Override
+    public HeliumSource source() {
+        return window.source;
+    }
+
+    @Override
+    public boolean has(int i) {
+        return i < window.size() - 1 ? i >= 0 : tokeniser.fill(i);
+    }
+
+    @Override
+    public TokenType type(int i) {
+        return window.type(i);
+    }
+
+    @Override
+    public int start(int i) {
+        return window.start(i);
+    }
+
+    @Override
+    public int length(int i) {
+        return window.length(i);
+    }
+
+    @Override
+    public OperatorType operator(int i) {
+        return window.operator(i);
+    }
+
+    @Override
+    public int symbol(int i) {
+        return window.symbol(i);
+    }
+
+    @Override
+    public Token token(int i) {
+        return window.token(i);
+    }
+
+    @Override
+    public Token getLast() {
+        return window.getLast();
+    }
+
+    /**
+     * Lets go of tokens before {@code index}. The token just before the newest one is always kept, since the
+     * tokeniser still needs it to classify the newest one
+     */
+    @Override
+    public void release(int index) {
+        released = Math.max(released, Math.min(index, window.size() - 2));
+        window.discard(released);
+    }
+}
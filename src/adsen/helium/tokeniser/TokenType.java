@@ -37,6 +37,35 @@ public enum TokenType {
     DECLARATION_OPERATION, BINARY_OPERATOR, UNARY_OPERATOR,
 
     //Keywords
-    LET, EXIT, IF, ELSE, WHILE, FOR, RETURN, CONTINUE, BREAK, IMPORT
+    LET, EXIT, IF, ELSE, WHILE, FOR, RETURN, CONTINUE, BREAK, IMPORT;
 
+    /**
+     * Can the token be processed on its own to give a value
+     */
+    public boolean isValueToken() {
+        return switch (this) {
+            case VARIABLE, IDENTIFIER, BOOL_LITERAL, INT_LITERAL, FLOAT_LITERAL, CHAR_LITERAL, STR_LITERAL -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Can the token be part of an expression.
+     * Preparing for shunting yard.
+     * TODO make sure this is correct, cos I have a feeling it isn't
+     */
+    public boolean isValidExprToken() {
+        return switch (this) {
+            case LET, EXIT, IF, ELSE, SEMICOLON, C_OPEN_PAREN, C_CLOSE_PAREN, WHILE, FOR, CONTINUE, VOID, BREAK, IMPORT ->
+                    false; //Simpler to go by exclusion, it seems
+            default -> true;
+        };
+    }
+
+    public boolean isFunctionReturnToken() {
+        return switch (this) {
+            case VOID, PRIMITIVE_TYPE, COMPOUND_TYPE, CLASS_TYPE -> true;
+            default -> false;
+        };
+    }
 }
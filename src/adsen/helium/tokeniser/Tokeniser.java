@@ -1,91 +1,118 @@
 package adsen.helium.tokeniser;
 
 import adsen.helium.error.ExpressionError;
-import adsen.helium.parser.expr.operator.Operator;
 import adsen.helium.parser.expr.operator.OperatorType;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Stack;
 
-import static adsen.helium.tokeniser.Keywords.operatorTokens;
+import static adsen.helium.tokeniser.CharScanner.*;
 import static adsen.helium.tokeniser.TokenType.*;
-import static adsen.helium.tokeniser.Keywords.tokeniserKeywords;
 
 /**
- * Turns code string into list of tokens
+ * Turns code into list of tokens.
+ * <p>
+ * This works on the UTF-8 bytes of the {@link HeliumSource} directly, only decoding characters outside of ASCII to find
+ * out what they are (see {@link CharScanner}), and nothing else gets decoded until someone asks for a token's value.
  */
-public class Tokeniser {
+public final class Tokeniser {
     /**
-     * Code string
+     * Code to tokenise
      */
-    public final String input;
+    public final HeliumSource input;
     /**
-     * Overall position within input string
+     * Overall position within input
      */
     private int pos;
+
+
     /**
-     * Line position within input string
+     * @param symbols Where to intern identifiers, shared by everything in the same compilation
      */
-    private int linepos;
+    public Tokeniser(HeliumSource input, SymbolTable symbols) {
+        //Rough guess at how many tokens there will be, it'll grow if there's more
+        this(input, symbols, input.length() / 4);
+    }
+
     /**
-     * Column position within input string
+     * @param capacity How many tokens to make room for at the start
      */
-    private int colpos;
+    Tokeniser(HeliumSource input, SymbolTable symbols, int capacity) {
+        this.input = input;
+        pos = 0;
+        tokens = new TokenBuffer(input, symbols, capacity);
+    }
 
+    public Tokeniser(HeliumSource input) {
+        this(input, new SymbolTable());
+    }
 
     public Tokeniser(String input) {
-        this.input = input;
-        pos = 0;
-        linepos = 0;
-        colpos = 0;
+        this(HeliumSource.of("<input>", input));
     }
 
     /**
-     * List of valid tokens generated from a string input
+     * Valid tokens generated from a string input
      */
-    private final List<Token> tokens = new ArrayList<>();
+    private final TokenBuffer tokens;
+
+    /**
+     * To keep track of matching parentheses. It also gets done automatically later on the parser,
+     * but this allows to catch errors earlier on, and I'm proud of this code.
+     * <p>
+     * Keeps the type and position of each open paren rather than its index, since a {@link TokenStream} may have
+     * dropped the token itself by the time it gets closed
+     */
+    private final Stack<Token> parens = new Stack<>();
+
+    /**
+     * Whether we've reached the end of the input
+     */
+    private boolean finished = false;
 
     /**
      * Create list of tokens
      */
     public void tokenise() {
-        if (!tokens.isEmpty()) return;
+        while (!finished) scanToken();
+    }
 
-        // To keep track of matching parentheses. It also gets done automatically later on the parser,
-        // but this allows to catch errors earlier on, and I'm proud of this code
-        Stack<Token> parens = new Stack<>();
+    /**
+     * Tokenises until the token at {@code index} is available and classified (which needs the token after it too),
+     * or the input runs out. Used by {@link TokenStream}
+     *
+     * @return whether there is a token at {@code index}
+     */
+    boolean fill(int index) {
+        while (!finished && tokens.size() <= index + 1) scanToken();
+        return index < tokens.size();
+    }
 
-        for (pos = 0; hasNext(); pos++) {
+    /**
+     * Reads the next token into {@link Tokeniser#tokens}, and classifies the one before it now that it has a token
+     * on either side
+     */
+    private void scanToken() {
+        for (; hasNext(); pos++) {
             char c = peek();
-            Token token = new Token();
+            TokenType type = null;
+            OperatorType operator = null;
+            int symbol = SymbolTable.NONE;
 
             //Skipping over whitespace
-            while (hasNext() && Character.isWhitespace(c)) {
-                if (c == '\n') {
-                    colpos = 0;
-                    linepos++;
-                } else {
-                    colpos++;
-                }
-                pos++;
-                c = peek();
-            }
+            pos = CharScanner.skipWhitespace(input, pos);
+            c = peek();
 
-            token.pos = this.pos;
-            token.colpos = colpos;
-            token.linepos = linepos;
+            //Tokens are made at the end, once we know where they stop
+            int start = this.pos;
 
             // Int literal, Float literal (even .456), Hex literal (0xab3c)
-            if (isDigit(c) || (c == '.' && isDigit(peek(1)))) {
+            if (CharScanner.is(c, DIGIT) || (c == '.' && CharScanner.is(peek(1), DIGIT))) {
                 boolean isFloat = false;
                 boolean isHex = c == '0' && hasNext() && peek(1) == 'x';
 
                 // While there are more characters to read,
                 // and the next character is a hex digit, decimal point, or regular digit
-                while (hasNext() && (isHex && isHexDigit(c) || !isFloat && c == '.' || isDigit(c))) {
-                    token.append(c);
-
+                while (hasNext() && (isHex && CharScanner.is(c, HEX_DIGIT) || !isFloat && c == '.' || CharScanner.is(c, DIGIT))) {
                     if (c == '.') {
                         isFloat = true;
                     }
@@ -94,210 +121,221 @@ public class Tokeniser {
                 }
                 //Backtracking since the while loop shoots one character further than necessary
                 pos--;
-                colpos--;
 
-                token.type = isHex ? HEX_LITERAL : (isFloat ? FLOAT_LITERAL : INT_LITERAL);
+                type = isHex ? HEX_LITERAL : (isFloat ? FLOAT_LITERAL : INT_LITERAL);
 
             } else if (c == '\'' || c == '"') {//Char or Str literal
                 boolean isStr = c == '"';
-                token.type = isStr ? STR_LITERAL : CHAR_LITERAL;
+                type = isStr ? STR_LITERAL : CHAR_LITERAL;
 
                 boolean reachedEnd = false;
+                //Counting characters as we go, since escapes make the slice longer than the actual value
+                int chars = 0;
 
                 //Basically just grabbing all the characters that follow until the closure of the string or char
+                //The value itself gets worked out from the slice later on, in valueOf()
                 while (!reachedEnd && hasNext()) {
                     c = consume();
-                    if (c == '\n') {
-                        //Incrementing line number after a newline
-                        colpos = 0;
-                        linepos++;
-                    }
 
                     //Check for end of literal
                     if (isStr && c == '"' || !isStr && c == '\'') {
                         reachedEnd = true;
 
-                    } else if (c == '\\') { //Checking for and handling escape characters
+                    } else if (c == '\\') { //Checking for escape characters
                         c = consume();
 
-                        token.append(switch (c) { //Flexing new Java syntax
-                            case 'n' -> '\n';
-                            case 't' -> '\t';
-                            case '\\' -> '\\';
-                            case '"' -> '"'; //Allow to escape " in characters (so '\"') even tho it's unnecessary
-                            case '\'' -> '\''; //And same deal with "\'" in strings
-                            default -> {
-                                token.append("\\" + c);
-                                throw new ExpressionError("Invalid escape 'character '\\" + c + "'", token);
-                            }
-                        });
-
-                    } else { //If it's not an escape character, then it's safe to add
-                        token.append(c);
+                        if (unescape(c) == 0)
+                            throw new ExpressionError("Invalid escape 'character '\\" + c + "'", literalToken(type, start, pos - 1, "\\" + c));
+
+                        chars++;
+                    } else if (!isContinuationByte(c)) { //Multi-byte characters only count once
+                        chars++;
                     }
                 }
 
                 if (!isStr) { //Checking if char is too short or too long
-                    if (token.value.isEmpty()) { //Copied error messages from Java
-                        token.append("''");
-                        throw new ExpressionError("Empty character literal", token);
-                    } else if (token.value.length() != 1) {
-                        throw new ExpressionError("Too many characters in character literal", token);
+                    if (chars == 0) { //Copied error messages from Java
+                        throw new ExpressionError("Empty character literal", literalToken(type, start, start + 1, "''"));
+                    } else if (chars != 1) {
+                        throw new ExpressionError("Too many characters in character literal", literalToken(type, start, reachedEnd ? pos : pos + 1, ""));
                     }
                 }
                 if (!hasNext())
-                    throw new ExpressionError("Did not terminate " + (isStr ? "string" : "char"), token);
+                    throw new ExpressionError("Did not terminate " + (isStr ? "string" : "char"), literalToken(type, start, reachedEnd ? pos : pos + 1, ""));
 
-            } else if (Character.isLetter(c) || c == '_') {//Identifiers, Bools, Keywords, basically any word
+            } else if (hasNext() && CharScanner.is(input, pos, LETTER)) {//Identifiers, Bools, Keywords, basically any word
 
-                while (hasNext() && (Character.isLetterOrDigit(c) || c == '_')) {
-                    token.append(c);
-
-                    c = consume();
-                }
-                pos--; //Because the last consume() overshoots by one
-                colpos--;
+                pos = CharScanner.scanIdentifier(input, pos) - 1; //Since pos should be on the last character of the token
 
                 // If we haven't already mapped a token type (so 'true', 'false', 'int', 'exit', etc.)
                 // then it's an identifier, i.e. a function or variable name (so far)
-                token.type = tokeniserKeywords.getOrDefault(token.value, IDENTIFIER);
+                type = Keywords.keyword(input, start, pos - start + 1);
+                if (type == null) {
+                    type = IDENTIFIER;
+                    symbol = tokens.symbols.intern(input, start, pos - start + 1);
+                }
 
             } else if (c == '/' && (peek(1) == '/' || peek(1) == '*')) {
                 //Checking for comments
 
                 c = consume();
                 if (c == '/') { //Line comment, consume until end of line
-                    while (c != '\n') {
-                        c = consume();
-                    }
-                    //Incrementing the line after the end of the comment
-                    colpos = 0;
-                    linepos++;
+                    pos = CharScanner.find(input, pos, '\n');
                 } else if (c == '*') { //Block comment, consume until '*/'
                     boolean commentFinished = false;
 
                     do {
                         c = consume();
-                        if (c == '\n') {
-                            //Incrementing the line after the end of the line
-                            colpos = 0;
-                            linepos++;
-                        }
                         if (c == '*' && peek(1) == '/') commentFinished = true;
 
                     } while (hasNext(1) && !commentFinished);
 
-                    if (!commentFinished) throw new ExpressionError("Unclosed block comment", token);
+                    if (!commentFinished) {
+                        Token token = new Token(input, null, start, 2);
+                        token.setValue("/*");
+                        throw new ExpressionError("Unclosed block comment", token);
+                    }
 
                     consume(); //Consume the / at the end of the block comment
                 }
 
             } else if (c == ';') { //Grabbing special characters that have their own tokens
-                token.type = SEMICOLON;
-                token.append(c);
+                type = SEMICOLON;
             } else if (c == ',') {
-                token.type = COMMA;
-                token.append(c);
+                type = COMMA;
             } else if (c == '(') { //Open parentheses get pushed onto the stack
-                token.type = OPEN_PAREN;
-                token.append(c);
-                parens.push(token);
+                type = OPEN_PAREN;
             } else if (c == '[') {
-                token.type = SQ_OPEN_PAREN;
-                token.append(c);
-                parens.push(token);
+                type = SQ_OPEN_PAREN;
             } else if (c == '{') {
-                token.type = C_OPEN_PAREN;
-                token.append(c);
-                parens.push(token);
+                type = C_OPEN_PAREN;
             } else if (c == ')') { //Closed parentheses pop off the stack, and if they don't match, we've got a problem
-                token.type = CLOSE_PAREN;
-                token.append(c);
-                if (parens.empty() || parens.pop().type != OPEN_PAREN) {
-                    throw new ExpressionError("Mismatched parentheses", token);
-                }
+                type = CLOSE_PAREN;
             } else if (c == ']') {
-                token.type = SQ_CLOSE_PAREN;
-                token.append(c);
-                if (parens.empty() || parens.pop().type != SQ_OPEN_PAREN) {
-                    throw new ExpressionError("Mismatched parentheses", token);
-                }
+                type = SQ_CLOSE_PAREN;
             } else if (c == '}') {
-                token.type = C_CLOSE_PAREN;
-                token.append(c);
-                if (parens.empty() || parens.pop().type != C_OPEN_PAREN) {
-                    throw new ExpressionError("Mismatched parentheses", token);
-                }
+                type = C_CLOSE_PAREN;
             } else { //Grabbing operators and maybe syntactic sugar later on
 
-                while (hasNext() && !(Character.isWhitespace(c) || Character.isLetterOrDigit(c) || c == '_' || c == '\'' || c == ';' || c == '.' || c == '"' || c == ',' || c == '(' || c == ')' || c == '[' || c == ']' || c == '{' || c == '}')) {
+                while (hasNext() && !CharScanner.is(input, pos, OPERATOR_END)) {
                     //Just grab everything until the next parenthesis, comma, whitespace, char, number, string, or identifier
-                    token.append(c);
-                    c = consume();
+                    //Whole characters at a time, so an unknown non-ASCII one doesn't get cut in half
+                    pos += CharScanner.width(input, pos);
                 }
                 pos--; //Overshooting by one again
-                colpos--;
 
-                if (operatorTokens.containsKey(token.value)) {
-                    token.type = operatorTokens.get(token.value);
-                } else if (!token.value.isEmpty()) { //In case we ran into a comment or something that leaves an incomplete token
-                    throw new ExpressionError("Unknown symbol", token);
+                if (pos >= start) { //In case we ran into a comment or something that leaves an incomplete token
+                    //Only take the longest operator at the start, whatever's left over gets picked up next time round
+                    operator = Keywords.operator(input, start, pos - start + 1);
+
+                    if (operator == null)
+                        throw new ExpressionError("Unknown symbol", new Token(input, null, start, pos - start + 1));
+
+                    type = operator.type;
+                    pos = start + operator.value.length() - 1;
                 }
             }
 
-            colpos++; //to make sure column number advances correctly
+            if (type == null) //Skipping over final whitespaces and comments in file
+                continue;
 
-            if (token.type != null) //Skipping over final whitespaces and comments in file
-                tokens.add(token);
+            tokens.add(type, start, pos - start + 1, operator, symbol);
+
+            switch (type) {
+                case OPEN_PAREN, SQ_OPEN_PAREN, C_OPEN_PAREN -> parens.push(tokens.getLast());
+                case CLOSE_PAREN, SQ_CLOSE_PAREN, C_CLOSE_PAREN -> {
+                    TokenType opener = type == CLOSE_PAREN ? OPEN_PAREN : type == SQ_CLOSE_PAREN ? SQ_OPEN_PAREN : C_OPEN_PAREN;
+
+                    if (parens.empty() || parens.pop().type != opener) {
+                        throw new ExpressionError("Mismatched parentheses", tokens.getLast());
+                    }
+                }
+            }
+
+            classify(tokens.size() - 2);
+            pos++; //Since we're leaving the loop before it gets to do this
+            return;
         }
 
+        finished = true;
+
         if (!parens.empty())
             throw new ExpressionError("Mismatched parentheses", parens.getFirst());
-
-        postProcessTokens();
     }
 
     /**
-     * Additional optimisations to tokenisation once we have a list of valid tokens
+     * Additional optimisations to tokenisation, done to each token once the ones either side of it are known.
+     * The first and last tokens have nothing on one side, so they get left as they are
      */
-    private void postProcessTokens() {
-        //Postprocessing from second to penultimate token, so we can always have previous and next tokens available
-        for (int i = 1; i < tokens.size() - 1; i++) {
-            Token previous = tokens.get(i - 1);
-            Token current = tokens.get(i);
-            Token next = tokens.get(i + 1);
-
-            if (current.type == BINARY_OPERATOR) {
-                OperatorType opType = Operator.operatorType.get(current.value);
-
-                //This is possibly a unary token
-                //This implementation will require updating once new language features like [] and . are added
-                if (!previous.isValueToken() && previous.type != CLOSE_PAREN && previous.type != UNARY_OPERATOR) {
-                    if (opType == OperatorType.SUM) {
-                        current.value = "u+";
-                        current.type = UNARY_OPERATOR;
-                    }
-                    if (opType == OperatorType.DIFFERENCE) {
-                        current.value = "u-";
-                        current.type = UNARY_OPERATOR;
-                    }
+    private void classify(int i) {
+        if (i < 1) return;
+
+        TokenType previous = tokens.type(i - 1);
+        TokenType current = tokens.type(i);
+        TokenType next = tokens.type(i + 1);
+
+        if (current == BINARY_OPERATOR) {
+            OperatorType opType = tokens.operator(i);
+
+            //This is possibly a unary token
+            //This implementation will require updating once new language features like [] and . are added
+            //Postfix ++ and -- end a value, but prefix operators like ! and unary - don't
+            boolean afterPostfix = tokens.operator(i - 1) == OperatorType.INCREMENT || tokens.operator(i - 1) == OperatorType.DECREMENT;
+            if (!previous.isValueToken() && previous != CLOSE_PAREN && !afterPostfix) {
+                if (opType == OperatorType.SUM) {
+                    tokens.setOperator(i, OperatorType.POSITIVE);
+                    tokens.setType(i, UNARY_OPERATOR);
                 }
-            } else if (current.type == IDENTIFIER) {
-                //Making identifiers more specific (Gonna add class names here eventually)
-                if (next.type == OPEN_PAREN) {
-                    current.type = FUNCTION;
-                } else {
-                    current.type = VARIABLE;
+                if (opType == OperatorType.DIFFERENCE) {
+                    tokens.setOperator(i, OperatorType.NEGATIVE);
+                    tokens.setType(i, UNARY_OPERATOR);
                 }
             }
+        } else if (current == IDENTIFIER) {
+            //Making identifiers more specific (Gonna add class names here eventually)
+            if (next == OPEN_PAREN) {
+                tokens.setType(i, FUNCTION);
+            } else {
+                tokens.setType(i, VARIABLE);
+            }
         }
     }
 
 
-    public List<Token> tokens() {
+    public TokenBuffer tokens() {
         return tokens;
     }
 
+    /**
+     * Token for error messages about a char or string literal, covering the input from {@code start} up to the current
+     * position. Its value is what's inside the quotes up to {@code contentEnd}, with the escapes turned into the real
+     * thing, followed by {@code suffix}
+     */
+    private Token literalToken(TokenType type, int start, int contentEnd, String suffix) {
+        int end = Math.min(pos + 1, input.length());
+        contentEnd = Math.min(contentEnd, input.length());
+
+        Token token = new Token(input, type, start, end - start);
+        token.setValue(unescape(input.decode(start + 1, contentEnd - start - 1)) + suffix);
+        return token;
+    }
+
+    /**
+     * Turns the escape characters in the contents of a char or string literal into the real thing. They have already
+     * been checked by the time a token's value gets asked for, so this doesn't need to throw errors
+     */
+    static String unescape(String literal) {
+        if (literal.indexOf('\\') < 0) return literal;
+
+        StringBuilder value = new StringBuilder(literal.length());
+
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            value.append(c == '\\' ? unescape(literal.charAt(++i)) : c);
+        }
+        return value.toString();
+    }
+
     boolean hasNext() {
         return hasNext(0);
     }
@@ -306,10 +344,13 @@ public class Tokeniser {
         return pos + offset < input.length();
     }
 
+    /**
+     * Returns the byte at an offset from the current position as a char, or {@code (char) -1} past the end of input
+     */
     char peek(int offset) {
         if (!hasNext(offset)) return (char) -1;
 
-        return input.charAt(pos + offset);
+        return (char) (input.byteAt(pos + offset) & 0xFF);
     }
 
     /**
@@ -324,15 +365,27 @@ public class Tokeniser {
      */
     char consume() {
         pos++;
-        colpos++;
         return peek();
     }
 
-    static boolean isDigit(char c) {
-        return Character.isDigit(c);
+    /**
+     * Turns the character after a '\\' into the character it stands for, or 0 if it isn't a valid escape
+     */
+    static char unescape(char c) {
+        return switch (c) { //Flexing new Java syntax
+            case 'n' -> '\n';
+            case 't' -> '\t';
+            case '\\' -> '\\';
+            case '"' -> '"'; //Allow to escape " in characters (so '\"') even tho it's unnecessary
+            case '\'' -> '\''; //And same deal with "\'" in strings
+            default -> 0;
+        };
     }
 
-    static boolean isHexDigit(char c) {
-        return ('0' <= c && c <= '9') || ('a' <= c && c <= 'f') || ('A' <= c && c <= 'F') || c == 'x' || c == 'X';
+    /**
+     * The bytes after the first one in a multi-byte UTF-8 character
+     */
+    static boolean isContinuationByte(char c) {
+        return (c & 0xC0) == 0x80 && c <= 0xFF;
     }
 }